@@ -0,0 +1,29 @@
+package com.example.migrator.gradle;
+
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+
+/**
+ * <pre>
+ * entityMigrator {
+ *     jdbcUrl = 'jdbc:postgresql://localhost/app'
+ *     user = 'app'
+ *     password = providers.environmentVariable('DB_PASSWORD')
+ * }
+ * </pre>
+ */
+public abstract class EntityMigratorExtension {
+
+    public abstract Property<String> getJdbcUrl();
+
+    public abstract Property<String> getUser();
+
+    /** Handed to the CLI through its environment, never on the command line. */
+    public abstract Property<String> getPassword();
+
+    /** Compiled entity classes to scan; defaults to build/classes/java/main. */
+    public abstract DirectoryProperty getClassesDir();
+
+    /** Writes the entity index while compiling (annotation processor); defaults to true. */
+    public abstract Property<Boolean> getEntityIndex();
+}
@@ -0,0 +1,97 @@
+package com.example.migrator.gradle;
+
+import com.example.migrator.processor.EntityIndexProcessor;
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.tasks.JavaExec;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the headless migrator CLI against the module's compiled classes:
+ * {@code entitySchemaDiff} fails the build when the database differs from the entities,
+ * {@code migrateEntities} applies what the diff can fix (missing columns).
+ * The CLI runs in its own JVM from the {@code entityMigrator} configuration, so none of its
+ * dependencies end up on the build classpath. Unless the build declares its own, that configuration holds
+ * {@code com.example:entity-migrator-cli} of the plugin's version (published by {@code :app:publish}).
+ * The plugin's own jar goes on the annotation processor path, so compiling the module also writes the
+ * entity index the scanner reads instead of parsing class files ({@code entityMigrator { entityIndex = false }}
+ * turns it off).
+ */
+public class EntityMigratorPlugin implements Plugin<Project> {
+
+    public static final String EXTENSION_NAME = "entityMigrator";
+    public static final String CONFIGURATION_NAME = "entityMigrator";
+    private static final String MAIN_CLASS = "com.example.migrator.cli.MigratorCli";
+    private static final String CLI_MODULE = "com.example:entity-migrator-cli";
+    private static final String PASSWORD_ENV = "MIGRATOR_DB_PASSWORD";
+
+    @Override
+    public void apply(Project project) {
+        project.getPluginManager().apply(JavaPlugin.class);
+        EntityMigratorExtension extension = project.getExtensions().create(EXTENSION_NAME, EntityMigratorExtension.class);
+        extension.getClassesDir().convention(project.getLayout().getBuildDirectory().dir("classes/java/main"));
+        extension.getEntityIndex().convention(true);
+
+        project.getConfigurations().named(JavaPlugin.ANNOTATION_PROCESSOR_CONFIGURATION_NAME).configure(c -> c.withDependencies(deps -> {
+            if (extension.getEntityIndex().get()) {
+                deps.add(project.getDependencies().create(project.files(processorJar())));
+            }
+        }));
+
+        Configuration cli = project.getConfigurations().create(CONFIGURATION_NAME, c -> {
+            c.setCanBeConsumed(false);
+            c.setDescription("Classpath of the entity migrator CLI");
+            c.defaultDependencies(deps -> deps.add(project.getDependencies().create(CLI_MODULE + ":" + cliVersion())));
+        });
+
+        register(project, "entitySchemaDiff", "diff", "Compares the compiled entities with the database schema", extension, cli);
+        register(project, "migrateEntities", "apply", "Adds the columns the compiled entities are missing in the database", extension, cli);
+    }
+
+    /** The version in the plugin jar's manifest; any version when the plugin runs from its own classes. */
+    private static String cliVersion() {
+        String version = EntityMigratorPlugin.class.getPackage().getImplementationVersion();
+        return version != null ? version : "+";
+    }
+
+    private static File processorJar() {
+        try {
+            return new File(EntityIndexProcessor.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("cannot locate the entity index processor", e);
+        }
+    }
+
+    private static void register(Project project, String name, String command, String description,
+                                 EntityMigratorExtension extension, Configuration cli) {
+        project.getTasks().register(name, JavaExec.class, task -> {
+            task.setGroup("database");
+            task.setDescription(description);
+            task.dependsOn(JavaPlugin.CLASSES_TASK_NAME);
+            task.setClasspath(cli);
+            task.getMainClass().set(MAIN_CLASS);
+            task.jvmArgs("-XX:TieredStopAtLevel=1", "-Xshare:auto");
+            task.getArgumentProviders().add(() -> {
+                List<String> args = new ArrayList<>(List.of(command,
+                        "--classes", extension.getClassesDir().get().getAsFile().getAbsolutePath(),
+                        "--url", extension.getJdbcUrl().get()));
+                if (extension.getUser().isPresent()) {
+                    args.add("--user");
+                    args.add(extension.getUser().get());
+                }
+                return args;
+            });
+            task.doFirst(t -> {
+                if (extension.getPassword().isPresent()) {
+                    ((JavaExec) t).environment(PASSWORD_ENV, extension.getPassword().get());
+                }
+            });
+        });
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.migrator.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes the module's entity index ({@value #LOCATION}) while it compiles, so the migrator reads
+ * tables, columns, types and primary keys from one small resource instead of walking and parsing every
+ * class file. Works on annotation names only: neither jakarta nor javax persistence has to be on the
+ * processor path.
+ * <p>
+ * Tab separated lines, one {@code E} line per entity followed by its {@code F} lines:
+ * <pre>
+ * entity-migrator-index 1
+ * E  classFile  qualifiedName  className  tableName
+ * F  fieldName  type  columnName  0|1
+ * </pre>
+ * Values follow the scanner's class file reader: every declared field, erased simple type names,
+ * {@code @Column(name)} else the field name, {@code @Table(name)} else the lower-cased class name.
+ */
+@SupportedAnnotationTypes({"jakarta.persistence.Entity", "javax.persistence.Entity"})
+public class EntityIndexProcessor extends AbstractProcessor {
+
+    public static final String LOCATION = "META-INF/entity-migrator/entities.idx";
+    static final String HEADER = "entity-migrator-index 1";
+
+    private static final Set<String> TABLE = Set.of("jakarta.persistence.Table", "javax.persistence.Table");
+    private static final Set<String> COLUMN = Set.of("jakarta.persistence.Column", "javax.persistence.Column");
+    private static final Set<String> ID = Set.of("jakarta.persistence.Id", "javax.persistence.Id");
+
+    // qualified name -> E and F lines; sorted so the resource is the same for the same sources
+    private final Map<String, String> entities = new TreeMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        for (TypeElement annotation : annotations) {
+            for (TypeElement type : ElementFilter.typesIn(round.getElementsAnnotatedWith(annotation))) {
+                entities.put(type.getQualifiedName().toString(), describe(type));
+            }
+        }
+        if (round.processingOver() && !entities.isEmpty()) {
+            write();
+        }
+        return false;
+    }
+
+    private String describe(TypeElement type) {
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String className = type.getSimpleName().toString();
+        String tableName = annotationName(type, TABLE);
+        StringBuilder out = new StringBuilder();
+        line(out, "E", binaryName.replace('.', '/') + ".class", binaryName,
+                className, tableName != null ? tableName : className.toLowerCase());
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            String column = annotationName(field, COLUMN);
+            line(out, "F", field.getSimpleName().toString(), simpleTypeName(field.asType()),
+                    column != null ? column : field.getSimpleName().toString(), hasAnnotation(field, ID) ? "1" : "0");
+        }
+        return out.toString();
+    }
+
+    private void write() {
+        try {
+            FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", LOCATION);
+            try (Writer w = new OutputStreamWriter(resource.openOutputStream(), StandardCharsets.UTF_8)) {
+                w.write(HEADER);
+                w.write('\n');
+                for (String lines : entities.values()) w.write(lines);
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "entity index not written, the migrator will scan class files instead: " + e.getMessage());
+        }
+    }
+
+    private static void line(StringBuilder out, String tag, String... values) {
+        out.append(tag);
+        for (String v : values) out.append('\t').append(v);
+        out.append('\n');
+    }
+
+    /** Non-empty {@code name} of the first matching annotation, else null. */
+    private static String annotationName(Element element, Set<String> types) {
+        for (AnnotationMirror a : element.getAnnotationMirrors()) {
+            if (!types.contains(((TypeElement) a.getAnnotationType().asElement()).getQualifiedName().toString())) continue;
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e : a.getElementValues().entrySet()) {
+                if (e.getKey().getSimpleName().contentEquals("name") && e.getValue().getValue() instanceof String s && !s.isEmpty()) {
+                    return s;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasAnnotation(Element element, Set<String> types) {
+        for (AnnotationMirror a : element.getAnnotationMirrors()) {
+            if (types.contains(((TypeElement) a.getAnnotationType().asElement()).getQualifiedName().toString())) return true;
+        }
+        return false;
+    }
+
+    private String simpleTypeName(TypeMirror type) {
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        if (erased instanceof ArrayType array) return simpleTypeName(array.getComponentType()) + "[]";
+        if (erased instanceof DeclaredType declared) return declared.asElement().getSimpleName().toString();
+        return erased.getKind().isPrimitive() ? erased.getKind().name().toLowerCase() : erased.toString();
+    }
+}
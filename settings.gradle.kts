@@ -1 +0,0 @@
-rootProject.name = "entity-schema-migrator-gui"
@@ -0,0 +1,68 @@
+package com.example.migrator.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EntityScannerService#scanAll()} over a synthetic project, cold (no index, every class file
+ * parsed) and warm (index hit on every file). The modules/entities params give the scaling curve.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EntityScanBenchmark {
+
+    @Param({"1", "4"})
+    int modules;
+
+    @Param({"50", "500"})
+    int entities;
+
+    @Param({"10"})
+    int fields;
+
+    @Param({"false", "true"})
+    boolean parallel;
+
+    private SyntheticProject project;
+    private Path indexFile;
+    private EntityScannerService warm;
+    private EntityScannerService cold;
+
+    @Setup(Level.Trial)
+    public void createProject() throws IOException {
+        project = SyntheticProject.create(modules, entities, fields);
+        indexFile = project.root.resolve("entity-scan.idx");
+        System.setProperty("scan.source.root", project.root.toString());
+        System.setProperty("scan.index.file", indexFile.toString());
+        System.setProperty("scan.parallel", Boolean.toString(parallel));
+        warm = new EntityScannerService();
+        warm.scanAll();
+    }
+
+    @Setup(Level.Invocation)
+    public void dropIndex() throws IOException {
+        Files.deleteIfExists(indexFile);
+        cold = new EntityScannerService();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteProject() throws IOException {
+        project.close();
+    }
+
+    @Benchmark
+    public Map<String, Object> coldScan() throws IOException {
+        return cold.scanAll();
+    }
+
+    @Benchmark
+    public Map<String, Object> warmScan() throws IOException {
+        return warm.scanAll();
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.migrator.service;
+
+import com.example.migrator.dialect.Dialect;
+import com.example.migrator.dialect.Dialects;
+import com.example.migrator.dto.ColumnChange;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQL generation on its own ({@link Dialect#alterTable}, per dialect, one call per table) and {@link SchemaMigrationService#applyChanges}
+ * end to end against an in-memory H2 database with {@code tables} × {@code columns} renames.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SchemaMigrationBenchmark {
+
+    @Param({"1", "10"})
+    int tables;
+
+    @Param({"10"})
+    int columns;
+
+    @Param({"postgresql", "mysql", "h2"})
+    String database;
+
+    private List<ColumnChange> changes;
+    private Map<String, List<ColumnChange>> changesByTable;
+    private Dialect dialect;
+    private JdbcDataSource dataSource;
+    private SchemaMigrationService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        changes = new ArrayList<>();
+        for (int t = 0; t < tables; t++) {
+            for (int c = 0; c < columns; c++) {
+                changes.add(new ColumnChange("T" + t, "C" + c, "R" + c, "VARCHAR(200)", false));
+            }
+        }
+        changesByTable = new LinkedHashMap<>();
+        for (ColumnChange c : changes) {
+            changesByTable.computeIfAbsent(c.getTable(), k -> new ArrayList<>()).add(c);
+        }
+        dialect = Dialects.forProduct(database);
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1");
+    }
+
+    @Setup(Level.Invocation)
+    public void createTables() throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("DROP ALL OBJECTS");
+            for (int t = 0; t < tables; t++) {
+                StringBuilder ddl = new StringBuilder("CREATE TABLE \"T" + t + "\" (\"ID\" BIGINT PRIMARY KEY");
+                for (int c = 0; c < columns; c++) {
+                    ddl.append(", \"C").append(c).append("\" VARCHAR(100)");
+                }
+                st.execute(ddl.append(')').toString());
+            }
+        }
+        // fresh service: the schema snapshot must not outlive the tables it describes
+        service = new SchemaMigrationService(dataSource);
+    }
+
+    @Benchmark
+    public int alterTable() {
+        int n = 0;
+        for (Map.Entry<String, List<ColumnChange>> e : changesByTable.entrySet()) {
+            n += dialect.alterTable(e.getKey(), e.getValue()).size();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public Map<String, String> applyChanges() {
+        return service.applyChanges(changes);
+    }
+}
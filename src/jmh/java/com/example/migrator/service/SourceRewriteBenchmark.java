@@ -0,0 +1,71 @@
+package com.example.migrator.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SourceModifierService} renaming one column per entity, for one entity ({@code applyEntityChanges})
+ * and for all of them in one bulk rewrite, with a warm AST cache and with a cold one.
+ * Every invocation flips the column name, so each run really rewrites the files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SourceRewriteBenchmark {
+
+    @Param({"10", "100"})
+    int entities;
+
+    @Param({"10", "50"})
+    int fields;
+
+    @Param({"true", "false"})
+    boolean cached;
+
+    private SyntheticProject project;
+    private EntitySourceCache cache;
+    private int flip;
+
+    @Setup(Level.Trial)
+    public void createProject() throws IOException {
+        project = SyntheticProject.create(1, entities, fields);
+        cache = new EntitySourceCache();
+    }
+
+    @Setup(Level.Invocation)
+    public void nextName() {
+        flip++;
+        if (!cached) cache = new EntitySourceCache();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteProject() throws IOException {
+        project.close();
+    }
+
+    private SourceModifierService service() {
+        return new SourceModifierService(cache, project.sourceRoot(0).toString());
+    }
+
+    private List<SourceModifierService.FieldChange> rename() {
+        return List.of(new SourceModifierService.FieldChange("field0", "col_0_" + (flip & 1), null));
+    }
+
+    @Benchmark
+    public void singleEntity() throws Exception {
+        service().applyEntityChanges(project.qualifiedName(0, 0), rename(), null);
+    }
+
+    @Benchmark
+    public void bulk() throws Exception {
+        List<SourceModifierService.EntityEdit> edits = new ArrayList<>();
+        for (int e = 0; e < entities; e++) {
+            edits.add(new SourceModifierService.EntityEdit(project.qualifiedName(0, e), rename(), null));
+        }
+        service().applyBulk(edits);
+    }
+}
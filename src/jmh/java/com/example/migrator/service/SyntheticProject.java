@@ -0,0 +1,98 @@
+package com.example.migrator.service;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A generated multi-module project for the benchmarks: {@code modules} × {@code entities} JPA entities
+ * with {@code fields} columns each, written as sources (mod*&#47;src/main/java) and compiled with javac
+ * into mod*&#47;build/classes/java/main, the layout the scanner looks for.
+ */
+final class SyntheticProject implements AutoCloseable {
+
+    final Path root;
+    final int modules;
+    final int entities;
+    final int fields;
+
+    private SyntheticProject(Path root, int modules, int entities, int fields) {
+        this.root = root;
+        this.modules = modules;
+        this.entities = entities;
+        this.fields = fields;
+    }
+
+    static SyntheticProject create(int modules, int entities, int fields) throws IOException {
+        SyntheticProject p = new SyntheticProject(Files.createTempDirectory("entity-bench"), modules, entities, fields);
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        for (int m = 0; m < modules; m++) {
+            List<String> args = new ArrayList<>(List.of("-proc:none", "-nowarn", "-d", p.classesDir(m).toString(),
+                    "-cp", System.getProperty("java.class.path")));
+            for (int e = 0; e < entities; e++) {
+                Path source = p.sourceFile(m, e);
+                Files.createDirectories(source.getParent());
+                Files.writeString(source, p.entitySource(m, e));
+                args.add(source.toString());
+            }
+            Files.createDirectories(p.classesDir(m));
+            if (javac.run(null, null, null, args.toArray(new String[0])) != 0) {
+                throw new IllegalStateException("javac failed for module " + m);
+            }
+        }
+        return p;
+    }
+
+    Path sourceRoot(int module) {
+        return root.resolve("mod" + module).resolve("src/main/java");
+    }
+
+    Path classesDir(int module) {
+        return root.resolve("mod" + module).resolve("build/classes/java/main");
+    }
+
+    Path sourceFile(int module, int entity) {
+        return sourceRoot(module).resolve(packageName(module).replace('.', '/')).resolve(className(entity) + ".java");
+    }
+
+    String qualifiedName(int module, int entity) {
+        return packageName(module) + "." + className(entity);
+    }
+
+    private static String packageName(int module) {
+        return "bench.mod" + module;
+    }
+
+    private static String className(int entity) {
+        return "Entity" + entity;
+    }
+
+    private String entitySource(int module, int entity) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("package ").append(packageName(module)).append(";\n\n")
+          .append("import jakarta.persistence.*;\n\n")
+          .append("@Entity\n@Table(name = \"t_").append(module).append('_').append(entity).append("\")\n")
+          .append("public class ").append(className(entity)).append(" {\n")
+          .append("    @Id\n    private Long id;\n");
+        for (int f = 0; f < fields; f++) {
+            sb.append("\n    @Column(name = \"col_").append(f).append("\", length = 100)\n")
+              .append("    private String field").append(f).append(";\n");
+        }
+        return sb.append("}\n").toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 
 package com.example.migrator;
 
+import com.example.migrator.service.EntityScannerService;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -27,4 +28,21 @@ public class Application {
             }
         };
     }
+
+    @Bean
+    CommandLineRunner startEntityWatch(EntityScannerService scanner) {
+        return args -> {
+            if (!Boolean.getBoolean("scan.watch")) return;
+            // 첫 스캔과 WatchService 등록은 기동을 막지 않도록 백그라운드에서
+            Thread t = new Thread(() -> {
+                try {
+                    scanner.rescan();
+                } catch (Exception e) {
+                    // ignore - 첫 요청에서 다시 시도된다
+                }
+            }, "entity-initial-scan");
+            t.setDaemon(true);
+            t.start();
+        };
+    }
 }
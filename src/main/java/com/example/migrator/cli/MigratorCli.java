@@ -0,0 +1,192 @@
+package com.example.migrator.cli;
+
+import com.example.migrator.dto.ColumnChange;
+import com.example.migrator.dto.TableMigrationResult;
+import com.example.migrator.service.ApplyJobService;
+import com.example.migrator.service.EntityScannerService;
+import com.example.migrator.service.MigrationImpactHarness;
+import com.example.migrator.service.MigrationJournal;
+import com.example.migrator.service.MigrationPlanner;
+import com.example.migrator.service.PhaseTimings;
+import com.example.migrator.service.SchemaIntrospector;
+import com.example.migrator.service.SchemaMigrationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Headless scan → diff → apply for CI, without the Spring context or web stack: the services are
+ * wired by hand against a small connection pool, so startup is just the JVM plus one JDBC connect.
+ *
+ * <pre>
+ * MigratorCli scan|diff|plan|apply --classes build/classes/java/main [--url jdbc:...] [--user u] [--password p]
+ * MigratorCli impact [--url jdbc:...] [--rows customer=100000,product=100000] [--changes changes.json]
+ *                    [--threads 8] [--writes 20] [--warmupMs 1000] [--windowMs 2000] [--log impact.hlog]
+ * </pre>
+ * {@code impact} seeds the schema-h2.sql tables (in-memory H2 unless --url is given), applies the changes
+ * ({@code /api/apply} payload; default: one added and one retyped column) under a synthetic workload
+ * and reports its query latency per phase ({@link MigrationImpactHarness}).
+ * The password can also come from MIGRATOR_DB_PASSWORD. Results go to stdout as JSON.
+ * Exit codes: 0 ok, 1 differences left (diff) or a table failed (apply, impact), 2 usage error.
+ */
+public final class MigratorCli {
+
+    private static final String PASSWORD_ENV = "MIGRATOR_DB_PASSWORD";
+    private static final String LOGBACK_CONFIG = "logback.configurationFile";
+    private static final Set<String> COMMANDS = Set.of("scan", "diff", "plan", "apply", "impact");
+    private static final String IMPACT_URL = "jdbc:h2:mem:impact;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE";
+    private static final String IMPACT_ROWS = "customer=100000,product=100000";
+
+    private MigratorCli() {}
+
+    public static void main(String[] args) throws Exception {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) throws Exception {
+        if (args.length == 0) return usage("missing command");
+        String command = args[0];
+        if (!COMMANDS.contains(command)) return usage("unknown command: " + command);
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) return usage("bad option: " + args[i]);
+            options.put(args[i].substring(2), args[++i]);
+        }
+        if (command.equals("impact")) {
+            if (System.getProperty(LOGBACK_CONFIG) == null) System.setProperty(LOGBACK_CONFIG, "cli-logback.xml");
+            return impact(options);
+        }
+        String classes = options.get("classes");
+        if (classes == null) return usage("--classes is required");
+        Path classesDir = Paths.get(classes).toAbsolutePath().normalize();
+        if (!Files.isDirectory(classesDir)) return usage("not a directory: " + classesDir);
+        if (!command.equals("scan") && options.get("url") == null) return usage("--url is required for " + command);
+
+        // stdout is for the JSON result; library logging goes to stderr at WARN (the web app keeps Boot's logging)
+        if (System.getProperty(LOGBACK_CONFIG) == null) System.setProperty(LOGBACK_CONFIG, "cli-logback.xml");
+        // the scanner treats a directory ending in classes/java/main as a module root; keep its index and the journal next to it
+        System.setProperty("scan.source.root", classesDir.toString());
+        if (System.getProperty("scan.index.file") == null) {
+            System.setProperty("scan.index.file", classesDir.resolveSibling("entity-scan.idx").toString());
+        }
+        if (System.getProperty("migration.journal.file") == null) {
+            System.setProperty("migration.journal.file", classesDir.resolveSibling("migration-journal.log").toString());
+        }
+        ObjectMapper json = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+        Map<String, Object> scan = new EntityScannerService().scanAll();
+        if (command.equals("scan")) {
+            json.writeValue(System.out, scan);
+            return 0;
+        }
+
+        try (HikariDataSource ds = dataSource(options)) {
+            SchemaIntrospector introspector = new SchemaIntrospector(ds);
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> entities = (List<Map<String, Object>>) scan.get("entities");
+            List<Map<String, Object>> differences = introspector.diff(entities);
+            switch (command) {
+                case "diff" -> {
+                    json.writeValue(System.out, Map.of("differences", differences));
+                    return differences.isEmpty() ? 0 : 1;
+                }
+                case "plan" -> {
+                    SchemaMigrationService migrations = new SchemaMigrationService(ds, introspector);
+                    MigrationPlanner planner = new MigrationPlanner(ds, introspector, migrations);
+                    json.writeValue(System.out, Map.of("statements", planner.plan(changes(differences))));
+                    return 0;
+                }
+                case "apply" -> {
+                    List<ColumnChange> changes = changes(differences);
+                    MigrationJournal.Run run = new MigrationJournal(ds).open(MigrationJournal.runId(changes, List.of()), false);
+                    Map<String, TableMigrationResult> results = new SchemaMigrationService(ds, introspector).migrate(changes, new PhaseTimings(), run);
+                    run.complete();
+                    Map<String, Object> out = new LinkedHashMap<>();
+                    out.put("results", results);
+                    out.put("journal", run.toMap());
+                    // what the diff cannot fix on its own (type/PK mismatches, extra columns) is left to review
+                    out.put("remaining", introspector.diff(entities));
+                    json.writeValue(System.out, out);
+                    return results.values().stream().allMatch(r -> "OK".equals(r.getStatus())) ? 0 : 1;
+                }
+                default -> throw new IllegalStateException(command);
+            }
+        }
+    }
+
+    private static int impact(Map<String, String> options) throws Exception {
+        options.putIfAbsent("url", IMPACT_URL);
+        int threads = Integer.parseInt(options.getOrDefault("threads", "8"));
+        Map<String, Long> rows = new LinkedHashMap<>();
+        for (String entry : options.getOrDefault("rows", IMPACT_ROWS).split(",")) {
+            String[] kv = entry.split("=");
+            if (kv.length != 2) return usage("bad --rows entry: " + entry);
+            rows.put(kv[0].trim(), Long.parseLong(kv[1].trim()));
+        }
+        ObjectMapper json = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        List<ColumnChange> changes;
+        if (options.containsKey("changes")) {
+            Object payload = json.readValue(Paths.get(options.get("changes")).toFile(), Object.class);
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> list = payload instanceof Map<?, ?> m ? (List<Map<String, Object>>) m.get("changes")
+                    : (List<Map<String, Object>>) payload;
+            changes = ApplyJobService.toColumnChanges(list);
+        } else {
+            changes = List.of(new ColumnChange("customer", null, "nickname", "VARCHAR(50)", false),
+                    new ColumnChange("product", "stock", null, "BIGINT", false));
+        }
+
+        try (HikariDataSource ds = dataSource(options)) {
+            // the workload, the migrator and its backfill workers all need connections
+            ds.setMaximumPoolSize(threads + Integer.getInteger("migration.parallelism", 4) + 2);
+            MigrationImpactHarness harness = new MigrationImpactHarness(ds, threads,
+                    Integer.parseInt(options.getOrDefault("writes", "20")),
+                    Long.parseLong(options.getOrDefault("warmupMs", "1000")),
+                    Long.parseLong(options.getOrDefault("windowMs", "2000")));
+            harness.createSchema("schema-h2.sql");
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("seeded", harness.seed(rows));
+            out.putAll(harness.run(changes, options.containsKey("log") ? Paths.get(options.get("log")) : null));
+            json.writeValue(System.out, out);
+            @SuppressWarnings("unchecked")
+            Map<String, String> statuses = (Map<String, String>) out.get("migration");
+            return statuses.values().stream().allMatch("OK"::equals) ? 0 : 1;
+        }
+    }
+
+    /** The ready-to-apply changes the diff attaches to missing columns. */
+    @SuppressWarnings("unchecked")
+    private static List<ColumnChange> changes(List<Map<String, Object>> differences) {
+        List<ColumnChange> changes = new ArrayList<>();
+        for (Map<String, Object> d : differences) {
+            Map<String, Object> c = (Map<String, Object>) d.get("change");
+            if (c == null) continue;
+            changes.add(new ColumnChange((String) c.get("table"), null, (String) c.get("newColumn"), (String) c.get("newType"), false));
+        }
+        return changes;
+    }
+
+    private static HikariDataSource dataSource(Map<String, String> options) {
+        HikariDataSource ds = new HikariDataSource();
+        ds.setJdbcUrl(options.get("url"));
+        ds.setUsername(options.get("user"));
+        ds.setPassword(options.getOrDefault("password", System.getenv(PASSWORD_ENV)));
+        ds.setMaximumPoolSize(Integer.getInteger("migration.parallelism", 4) + 1);
+        ds.setMinimumIdle(1);
+        ds.setPoolName("entity-migrator-cli");
+        return ds;
+    }
+
+    private static int usage(String message) {
+        System.err.println(message);
+        System.err.println("usage: MigratorCli scan|diff|plan|apply --classes <build/classes/java/main> [--url <jdbc url>] [--user <user>] [--password <password>]");
+        System.err.println("       MigratorCli impact [--url <jdbc url>] [--rows <table=n,...>] [--changes <changes.json>] [--threads <n>] "
+                + "[--writes <percent>] [--warmupMs <ms>] [--windowMs <ms>] [--log <file.hlog>]");
+        return 2;
+    }
+}
@@ -1,29 +1,64 @@
 
 package com.example.migrator.controller;
 
-import com.example.migrator.dto.ColumnChange;
+import com.example.migrator.dto.ShardTarget;
+import com.example.migrator.service.ApplyJob;
+import com.example.migrator.service.ApplyJobService;
 import com.example.migrator.service.EntityScannerService;
-import com.example.migrator.service.SchemaMigrationService;
+import com.example.migrator.service.MigrationJournal;
+import com.example.migrator.service.MigrationPlanner;
+import com.example.migrator.service.ModelSnapshot;
+import com.example.migrator.service.SchemaIntrospector;
+import com.example.migrator.service.ShardFanOutService;
+import com.example.migrator.service.SnapshotStore;
 import com.example.migrator.service.SourceModifierService;
-import com.example.migrator.service.SourceModifierService.FieldChange;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
-import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Controller
 public class GuiController {
 
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final EntityScannerService scanner;
-    private final SchemaMigrationService schemaService;
+    private final ApplyJobService jobs;
     private final SourceModifierService sourceService;
+    private final SchemaIntrospector introspector;
+    private final MigrationPlanner planner;
+    private final ObjectMapper objectMapper;
+    private final MigrationJournal journal;
+    private final ShardFanOutService shardService;
+    private final SnapshotStore snapshots;
 
-    public GuiController(EntityScannerService scanner, SchemaMigrationService schemaService, SourceModifierService sourceService) {
+    public GuiController(EntityScannerService scanner, ApplyJobService jobs, SourceModifierService sourceService,
+                         SchemaIntrospector introspector, MigrationPlanner planner, ObjectMapper objectMapper, MigrationJournal journal,
+                         ShardFanOutService shardService, SnapshotStore snapshots) {
         this.scanner = scanner;
-        this.schemaService = schemaService;
+        this.jobs = jobs;
         this.sourceService = sourceService;
+        this.introspector = introspector;
+        this.planner = planner;
+        this.objectMapper = objectMapper;
+        this.journal = journal;
+        this.shardService = shardService;
+        this.snapshots = snapshots;
     }
 
     @GetMapping("/ui")
@@ -33,86 +68,197 @@ public class GuiController {
 
     @GetMapping("/api/scan/entities")
     @ResponseBody
-    public Map<String, Object> scanEntities() {
-        return scanner.scanAll();
+    public Map<String, Object> scanEntities(@RequestParam(value = "refresh", defaultValue = "false") boolean refresh) throws IOException {
+        return refresh ? scanner.rescan() : scanner.scanAll();
     }
 
-    @PostMapping("/api/apply")
+    /**
+     * Same scan as /api/scan/entities, written as NDJSON while it runs: one line per entity as soon as
+     * it is found, then a last line with {count, errors, scannedAt}.
+     */
+    @GetMapping("/api/scan/entities/stream")
+    public ResponseEntity<StreamingResponseBody> scanEntitiesStream() {
+        StreamingResponseBody body = out -> {
+            try {
+                Map<String, Object> summary = scanner.scanStream(entity -> writeLine(out, entity));
+                writeLine(out, summary);
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    private void writeLine(OutputStream out, Object value) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(value));
+            out.write('\n');
+            out.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @GetMapping("/api/scan/events")
+    public SseEmitter scanEvents() {
+        SseEmitter emitter = new SseEmitter(0L);
+        Consumer<Map<String, Object>> listener = snapshot -> {
+            try {
+                emitter.send(SseEmitter.event().name("entities").data(snapshot));
+            } catch (IOException ex) {
+                emitter.completeWithError(ex);
+            }
+        };
+        scanner.addChangeListener(listener);
+        emitter.onCompletion(() -> scanner.removeChangeListener(listener));
+        emitter.onError(ex -> scanner.removeChangeListener(listener));
+        return emitter;
+    }
+
+    @GetMapping("/api/schema/diff")
     @ResponseBody
-    public Map<String, Object> apply(@RequestBody Map<String, Object> body) {
+    public Map<String, Object> schemaDiff() throws IOException, SQLException {
+        List<Map<String, Object>> entities = (List<Map<String, Object>>) scanner.scanAll().get("entities");
+        Map<String, Object> out = new HashMap<>();
+        out.put("schema", introspector.snapshot().getSchema());
+        out.put("differences", introspector.diff(entities));
+        return out;
+    }
+
+    @PostMapping("/api/plan")
+    @ResponseBody
+    public Map<String, Object> plan(@RequestBody Map<String, Object> body) throws SQLException {
         List<Map<String, Object>> changes = (List<Map<String, Object>>) body.get("changes");
-        List<ColumnChange> dtoList = new ArrayList<>();
-        Map<String, List<Map<String, Object>>> byTable = new HashMap<>();
-        for (Map<String, Object> m : changes) {
-            String table = (String) m.get("table");
-            String column = (String) m.get("column");
-            String newColumn = (String) m.get("newColumn");
-            String newType = (String) m.get("newType");
-            Boolean pk = m.get("primaryKey") != null ? (Boolean) m.get("primaryKey") : false;
-            String qualified = (String) m.get("qualifiedName");
-            String fieldName = (String) m.get("fieldName");
-            ColumnChange cc = new ColumnChange(table, column, newColumn, newType, pk);
-            dtoList.add(cc);
-            byTable.computeIfAbsent(table, k -> new ArrayList<>()).add(m);
+        Map<String, Object> out = new HashMap<>();
+        out.put("statements", planner.plan(ApplyJobService.toColumnChanges(changes)));
+        return out;
+    }
+
+    /**
+     * Submits the apply as a job and returns {jobId} at once (202); progress is streamed by
+     * /api/jobs/{jobId}/events. With {@code ?wait=true} the apply runs within the request and the
+     * full result is returned, as before.
+     */
+    @PostMapping("/api/apply")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> apply(@RequestBody Map<String, Object> body,
+                                                     @RequestParam(value = "wait", defaultValue = "false") boolean wait) {
+        if (wait) {
+            return ResponseEntity.ok(jobs.apply(body));
         }
+        ApplyJob job = jobs.submit(body);
+        return ResponseEntity.accepted().body(job.toMap());
+    }
 
-        Map<String, String> sqlResult = schemaService.applyChanges(dtoList);
-        Map<String, Object> out = new HashMap<>();
-        out.put("sqlResult", sqlResult);
-
-        Map<String, Object> applyResult = new HashMap<>();
-        for (String table : byTable.keySet()) {
-            String status = sqlResult.getOrDefault(table, "FAILED");
-            if (!"OK".equals(status)) {
-                applyResult.put(table, Map.of("status", status, "message", "SQL failed, source not modified"));
-                continue;
-            }
-            List<Map<String, Object>> tableChanges = byTable.get(table);
-            if (tableChanges == null) continue;
-            String qualifiedName = null;
-            String newTableName = null;
-            List<FieldChange> fcs = new ArrayList<>();
-            for (Map<String, Object> m : tableChanges) {
-                if (qualifiedName == null && m.get("qualifiedName") != null)
-                    qualifiedName = (String) m.get("qualifiedName");
-                if (newTableName == null && m.get("newTableName") != null)
-                    newTableName = (String) m.get("newTableName");
-                String fieldName = (String) m.get("fieldName");
-                String newColumn = (String) m.get("newColumn");
-                String newType = (String) m.get("newType");
-                if (fieldName != null && newColumn != null) {
-                    fcs.add(new FieldChange(fieldName, newColumn, newType));
-                }
-            }
-            if (qualifiedName == null) {
-                applyResult.put(table, Map.of("status", "NO_SOURCE_INFO", "message", "qualifiedName missing - cannot modify source"));
-                continue;
-            }
+    /**
+     * Applies the changes to every shard ({@code "shards": [{name, url, user, password}]}, or the JSON
+     * registry file named by {@code "registry"}), canary first; returns the per-shard/per-table matrix.
+     */
+    @PostMapping("/api/shards/apply")
+    @ResponseBody
+    public Map<String, Object> applyToShards(@RequestBody Map<String, Object> body) throws IOException {
+        List<Map<String, Object>> changes = (List<Map<String, Object>>) body.get("changes");
+        List<ShardTarget> shards = body.get("registry") != null
+                ? ShardFanOutService.loadRegistry(Paths.get((String) body.get("registry")))
+                : objectMapper.convertValue(body.get("shards"), new TypeReference<List<ShardTarget>>() {});
+        return shardService.apply(ApplyJobService.toColumnChanges(changes), shards);
+    }
+
+    @GetMapping("/api/jobs")
+    @ResponseBody
+    public Map<String, Object> jobs() {
+        return Map.of("jobs", jobs.list());
+    }
+
+    @GetMapping("/api/jobs/{jobId}")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> job(@PathVariable String jobId) {
+        ApplyJob job = jobs.get(jobId);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job.toMap());
+    }
+
+    /**
+     * Requests cancellation and returns the job as it is now; it reports CANCELLED once the worker stops.
+     * Tables in flight are rolled back, except for the chunks an online type change or backfill already
+     * committed (a backfill resumes from its checkpoint when applied again); tables not started yet and the
+     * source rewrite are reported CANCELLED. A finished job is left as it is.
+     */
+    @PostMapping("/api/jobs/{jobId}/cancel")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> cancelJob(@PathVariable String jobId) {
+        ApplyJob job = jobs.get(jobId);
+        if (job == null) return ResponseEntity.notFound().build();
+        job.cancel();
+        return ResponseEntity.ok(job.toMap());
+    }
+
+    /**
+     * SSE of the job's progress: a {@code table} event per SQL and source result (OK, FAILED...,
+     * CANCELLED, SOURCE_UPDATED, SOURCE_FAILED), then one {@code done} event, after which the stream
+     * closes. Events that happened before the subscription are replayed first.
+     */
+    @GetMapping("/api/jobs/{jobId}/events")
+    public SseEmitter jobEvents(@PathVariable String jobId) {
+        ApplyJob job = jobs.get(jobId);
+        if (job == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown job: " + jobId);
+        SseEmitter emitter = new SseEmitter(0L);
+        Consumer<Map<String, Object>> listener = event -> {
             try {
-                sourceService.applyEntityChanges(qualifiedName, fcs, newTableName);
-                applyResult.put(table, Map.of("status", "SOURCE_UPDATED"));
-            } catch (Exception ex) {
-                applyResult.put(table, Map.of("status", "SOURCE_FAILED", "message", ex.getMessage()));
+                emitter.send(SseEmitter.event().name((String) event.get("type")).data(event));
+                if ("done".equals(event.get("type"))) emitter.complete();
+            } catch (IOException ex) {
+                emitter.completeWithError(ex);
             }
-        }
+        };
+        emitter.onCompletion(() -> job.unsubscribe(listener));
+        emitter.onError(ex -> job.unsubscribe(listener));
+        job.subscribe(listener);
+        return emitter;
+    }
 
-        out.put("sourceResult", applyResult);
-        return out;
+    @GetMapping("/api/journal/{runId}")
+    @ResponseBody
+    public Map<String, Object> journal(@PathVariable String runId) {
+        return Map.of("runId", runId, "steps", journal.steps(runId));
     }
 
+    @GetMapping("/api/snapshots")
+    @ResponseBody
+    public Map<String, Object> snapshots() throws IOException {
+        return snapshots.list();
+    }
 
-    @GetMapping("/ui")
-    public String uiPage(Model model,
-                         @RequestParam(value = "basePrefix", required = false) String basePrefix) throws IOException {
-        model.addAttribute("entities", entityScannerService.scanAll(basePrefix));
-        return "ui";
+    /** Diff between two recorded snapshots; {@code to} defaults to the latest. */
+    @GetMapping("/api/snapshots/diff")
+    @ResponseBody
+    public Map<String, Object> snapshotDiff(@RequestParam("from") String from,
+                                            @RequestParam(value = "to", required = false) String to) throws IOException {
+        try {
+            return snapshots.diff(from, to);
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, ex.getMessage());
+        }
+    }
+
+    @GetMapping("/api/snapshots/{id}")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> snapshot(@PathVariable String id) throws IOException {
+        ModelSnapshot s = snapshots.load(id);
+        if (s == null) return ResponseEntity.notFound().build();
+        Map<String, Object> out = new HashMap<>();
+        out.put("id", id);
+        out.put("createdAt", new Date(s.getCreatedAt()).toString());
+        out.put("reason", s.getReason());
+        out.put("entities", s.entities());
+        out.put("schema", s.schema());
+        return ResponseEntity.ok(out);
     }
 
-    @PostMapping("/save")
+    @PostMapping("/api/save")
     @ResponseBody
     public String saveEntity(@RequestBody Map<String, Object> entityMap) {
         try {
-            entityModifierService.updateEntity(entityMap);
+            sourceService.updateEntity(entityMap);
             return "✅ 엔티티 수정 완료!";
         } catch (Exception e) {
             e.printStackTrace();
@@ -0,0 +1,17 @@
+package com.example.migrator.dialect;
+
+import com.example.migrator.dto.ColumnChange;
+
+import java.util.List;
+
+/**
+ * One statement of {@link Dialect#alterStatements}: its SQL and the column operations it carries out, in
+ * order. No clauses means the dialect does not say what the statement does.
+ */
+public record AlterStatement(String sql, List<Clause> clauses) {
+
+    public enum Operation { ADD, RENAME, RETYPE }
+
+    /** One column operation and the change it comes from; a rename with a new type is one RETYPE clause where the dialect has it. */
+    public record Clause(Operation operation, ColumnChange change) {}
+}
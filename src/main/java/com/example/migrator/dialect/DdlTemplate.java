@@ -0,0 +1,49 @@
+package com.example.migrator.dialect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A statement pattern with positional placeholders ({0}, {1}, ...), split into literal parts once so
+ * rendering is a single StringBuilder pass instead of a String.format parse per statement.
+ */
+public final class DdlTemplate {
+
+    private final String[] literals;
+    private final int[] args;
+    private final int literalLength;
+
+    private DdlTemplate(String[] literals, int[] args) {
+        this.literals = literals;
+        this.args = args;
+        int length = 0;
+        for (String l : literals) length += l.length();
+        this.literalLength = length;
+    }
+
+    public static DdlTemplate compile(String pattern) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> args = new ArrayList<>();
+        int from = 0;
+        int open;
+        while ((open = pattern.indexOf('{', from)) >= 0) {
+            int close = pattern.indexOf('}', open);
+            if (close < 0) throw new IllegalArgumentException("Unclosed placeholder in " + pattern);
+            literals.add(pattern.substring(from, open));
+            args.add(Integer.parseInt(pattern.substring(open + 1, close)));
+            from = close + 1;
+        }
+        literals.add(pattern.substring(from));
+        return new DdlTemplate(literals.toArray(String[]::new), args.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    public String render(String... values) {
+        int length = literalLength;
+        for (int a : args) length += values[a].length();
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < args.length; i++) {
+            sb.append(literals[i]).append(values[args[i]]);
+        }
+        return sb.append(literals[args.length]).toString();
+    }
+}
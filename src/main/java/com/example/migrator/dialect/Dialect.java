@@ -0,0 +1,74 @@
+package com.example.migrator.dialect;
+
+import com.example.migrator.dto.ColumnChange;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SQL dialect of a target database. Resolved once per DataSource by {@link Dialects}; further dialects
+ * are plugged in as {@link java.util.ServiceLoader} providers (META-INF/services/com.example.migrator.dialect.Dialect)
+ * and take precedence over the built-in PostgreSQL, MySQL and H2 ones.
+ */
+public interface Dialect {
+
+    String name();
+
+    /** @param databaseProduct DatabaseMetaData#getDatabaseProductName, lower case */
+    boolean supports(String databaseProduct);
+
+    String quote(String identifier);
+
+    /**
+     * The DDL for all changes of one table, in execution order. Dialects that can combine several column
+     * operations into one ALTER TABLE do so, so the table is locked (and rewritten) once.
+     * @throws IllegalArgumentException for a change the dialect cannot express
+     */
+    List<String> alterTable(String table, List<ColumnChange> changes);
+
+    /**
+     * {@link #alterTable} with the column operations each statement carries out, for plans. The default
+     * reports the statements without their operations.
+     */
+    default List<AlterStatement> alterStatements(String table, List<ColumnChange> changes) {
+        return alterTable(table, changes).stream().map(sql -> new AlterStatement(sql, List.of())).toList();
+    }
+
+    /**
+     * {@link #alterStatements(String, List)} for the table as it currently is on {@code conn}: dialects whose
+     * retype redefines the whole column read the attributes the change does not mention here, to keep them.
+     * The default does not need the connection.
+     * @throws IllegalArgumentException for a change the dialect cannot carry out without losing attributes
+     */
+    default List<AlterStatement> alterStatements(Connection conn, String table, List<ColumnChange> changes) throws SQLException {
+        return alterStatements(table, changes);
+    }
+
+    /**
+     * Statements bounding how long the DDL that follows may wait for its table lock and run (0 leaves a
+     * limit as it is), executed before every guarded attempt. Empty when the database cannot bound them.
+     */
+    default List<String> lockTimeouts(long lockTimeoutMs, long statementTimeoutMs) {
+        return List.of();
+    }
+
+    /**
+     * Read before the first guarded attempt: the statements that put the session's timeouts back afterwards.
+     * Empty when {@link #lockTimeouts} only lasts for the transaction.
+     */
+    default List<String> restoreTimeouts(Connection conn) throws SQLException {
+        return List.of();
+    }
+
+    /** Lock wait timeout or deadlock: the DDL did not get its lock and can be tried again. */
+    default boolean isLockFailure(SQLException e) {
+        return false;
+    }
+
+    /** Other sessions holding locks on the table: {session, user, state, lock, query, since}, as far as known. */
+    default List<Map<String, Object>> blockingSessions(Connection conn, String table) throws SQLException {
+        return List.of();
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.migrator.dialect;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/** Finds the dialect of a database: ServiceLoader providers first, then the built-in ones. */
+public final class Dialects {
+
+    private static final List<Dialect> DIALECTS = load();
+
+    private Dialects() {}
+
+    private static List<Dialect> load() {
+        List<Dialect> out = new ArrayList<>();
+        ServiceLoader.load(Dialect.class).forEach(out::add);
+        out.add(new PostgresDialect());
+        out.add(new MySqlDialect());
+        out.add(new H2Dialect());
+        return List.copyOf(out);
+    }
+
+    public static Dialect of(Connection conn) throws SQLException {
+        return forProduct(conn.getMetaData().getDatabaseProductName().toLowerCase());
+    }
+
+    /** @param databaseProduct DatabaseMetaData#getDatabaseProductName, lower case */
+    public static Dialect forProduct(String databaseProduct) {
+        for (Dialect d : DIALECTS) {
+            if (d.supports(databaseProduct)) return d;
+        }
+        throw new IllegalStateException("No SQL dialect for database '" + databaseProduct
+                + "'; add one as a " + Dialect.class.getName() + " service provider");
+    }
+}
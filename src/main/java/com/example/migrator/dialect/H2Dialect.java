@@ -0,0 +1,87 @@
+package com.example.migrator.dialect;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * H2 takes one column operation per ALTER TABLE. Its LOCK_TIMEOUT and QUERY_TIMEOUT are session
+ * settings, so guarded DDL puts back the values it found.
+ */
+public class H2Dialect extends TemplateDialect {
+
+    // LOCK_TIMEOUT_1, DEADLOCK_1
+    private static final int LOCK_TIMEOUT = 50200;
+    private static final int DEADLOCK = 40001;
+    private static final String BLOCKING_SESSIONS = "SELECT s.SESSION_ID AS SESSION, s.USER_NAME AS \"USER\", s.SESSION_STATE AS STATE, "
+            + "l.LOCK_TYPE AS LOCK, s.EXECUTING_STATEMENT AS QUERY, s.SESSION_START AS SINCE "
+            + "FROM INFORMATION_SCHEMA.LOCKS l JOIN INFORMATION_SCHEMA.SESSIONS s ON s.SESSION_ID = l.SESSION_ID "
+            + "WHERE l.TABLE_NAME = ? AND l.SESSION_ID <> SESSION_ID() ORDER BY s.SESSION_START";
+
+    public H2Dialect() {
+        super("ADD COLUMN {0} {1}", "ALTER COLUMN {0} RENAME TO {1}", "ALTER COLUMN {0} SET DATA TYPE {1}", null);
+    }
+
+    @Override
+    public String name() {
+        return "h2";
+    }
+
+    @Override
+    public boolean supports(String databaseProduct) {
+        return databaseProduct.contains("h2");
+    }
+
+    @Override
+    public String quote(String identifier) {
+        return "\"" + identifier + "\"";
+    }
+
+    @Override
+    protected boolean combines(AlterStatement.Operation operation) {
+        return false;
+    }
+
+    @Override
+    protected String defaultColumnType() {
+        return "VARCHAR(255)";
+    }
+
+    @Override
+    public List<String> lockTimeouts(long lockTimeoutMs, long statementTimeoutMs) {
+        List<String> out = new ArrayList<>();
+        if (lockTimeoutMs > 0) out.add("SET LOCK_TIMEOUT " + lockTimeoutMs);
+        if (statementTimeoutMs > 0) out.add("SET QUERY_TIMEOUT " + statementTimeoutMs);
+        return out;
+    }
+
+    @Override
+    public List<String> restoreTimeouts(Connection conn) throws SQLException {
+        List<String> out = new ArrayList<>();
+        try (Statement st = conn.createStatement()) {
+            try (ResultSet rs = st.executeQuery("SELECT LOCK_TIMEOUT()")) {
+                if (rs.next()) out.add("SET LOCK_TIMEOUT " + rs.getLong(1));
+            }
+            // not every H2 version lists the session's query timeout; 0 (none) is its default
+            try (ResultSet rs = st.executeQuery("SELECT SETTING_VALUE FROM INFORMATION_SCHEMA.SETTINGS "
+                    + "WHERE SETTING_NAME = 'QUERY_TIMEOUT'")) {
+                out.add("SET QUERY_TIMEOUT " + (rs.next() ? rs.getLong(1) : 0));
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public boolean isLockFailure(SQLException e) {
+        return anyCause(e, x -> x.getErrorCode() == LOCK_TIMEOUT || x.getErrorCode() == DEADLOCK);
+    }
+
+    @Override
+    public List<Map<String, Object>> blockingSessions(Connection conn, String table) throws SQLException {
+        return rows(conn, BLOCKING_SESSIONS, table);
+    }
+}
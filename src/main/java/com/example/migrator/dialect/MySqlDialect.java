@@ -0,0 +1,160 @@
+package com.example.migrator.dialect;
+
+import com.example.migrator.dto.ColumnChange;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * MySQL 8 / MariaDB: every operation goes into one ALTER TABLE; a rename with a new type is a single
+ * CHANGE COLUMN, since the clauses of one statement all refer to the old column names (a later change
+ * of a renamed column starts the next statement).
+ * MODIFY and CHANGE COLUMN redefine the whole column, so a retype repeats what the column had besides its
+ * type (NOT NULL, DEFAULT, ON UPDATE, AUTO_INCREMENT, COMMENT, collation of text columns) unless the new
+ * type spells it out; generated columns are refused.
+ * Guarded DDL bounds the metadata lock wait (lock_wait_timeout, whole seconds); MySQL has no statement
+ * timeout for DDL.
+ */
+public class MySqlDialect extends TemplateDialect {
+
+    // ER_LOCK_WAIT_TIMEOUT, ER_LOCK_DEADLOCK
+    private static final int LOCK_WAIT_TIMEOUT = 1205;
+    private static final int DEADLOCK = 1213;
+    private static final String BLOCKING_SESSIONS = "SELECT p.ID AS session, p.USER AS user, p.COMMAND AS state, "
+            + "m.LOCK_TYPE AS `lock`, LEFT(p.INFO, 200) AS query, p.TIME AS since "
+            + "FROM performance_schema.metadata_locks m JOIN performance_schema.threads t ON t.THREAD_ID = m.OWNER_THREAD_ID "
+            + "JOIN information_schema.PROCESSLIST p ON p.ID = t.PROCESSLIST_ID "
+            + "WHERE m.OBJECT_TYPE = 'TABLE' AND m.OBJECT_SCHEMA = DATABASE() AND m.OBJECT_NAME = ? "
+            + "AND m.LOCK_STATUS = 'GRANTED' AND p.ID <> CONNECTION_ID()";
+    private static final String COLUMNS = "SELECT COLUMN_NAME, IS_NULLABLE, COLUMN_DEFAULT, EXTRA, COLUMN_COMMENT, COLLATION_NAME "
+            + "FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?";
+    private static final Pattern TEXT_TYPE = Pattern.compile("^\\s*(NATIONAL\\s+)?(VAR)?CHAR|^\\s*(TINY|MEDIUM|LONG)?TEXT|^\\s*(ENUM|SET)\\b");
+    private static final Pattern NULL = Pattern.compile("\\bNULL\\b");
+    private static final Pattern CURRENT_TIMESTAMP = Pattern.compile("(?i)(CURRENT_TIMESTAMP|NOW|LOCALTIMESTAMP)(\\(\\d*\\))?");
+
+    /** What a column has besides its type, as information_schema.COLUMNS reports it. */
+    record Column(boolean nullable, String defaultValue, String extra, String comment, String collation) {}
+
+    public MySqlDialect() {
+        super("ADD COLUMN {0} {1}", "RENAME COLUMN {0} TO {1}", "MODIFY COLUMN {0} {1}", "CHANGE COLUMN {0} {1} {2}");
+    }
+
+    @Override
+    public String name() {
+        return "mysql";
+    }
+
+    @Override
+    public List<AlterStatement> alterStatements(Connection conn, String table, List<ColumnChange> changes) throws SQLException {
+        boolean redefines = changes.stream().anyMatch(c -> c.getColumn() != null && !c.getColumn().isEmpty()
+                && c.getNewType() != null && !c.getNewType().isEmpty());
+        return alterStatements(table, changes, redefines ? columns(conn, table) : Map.of());
+    }
+
+    List<AlterStatement> alterStatements(String table, List<ColumnChange> changes, Map<String, Column> current) {
+        return alterStatements(table, changes, (column, type) -> redefine(table, column, type, current.get(column)));
+    }
+
+    private static Map<String, Column> columns(Connection conn, String table) throws SQLException {
+        Map<String, Column> out = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(COLUMNS)) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    out.put(rs.getString(1), new Column("YES".equals(rs.getString(2)), rs.getString(3), rs.getString(4),
+                            rs.getString(5), rs.getString(6)));
+                }
+            }
+        }
+        return out;
+    }
+
+    /** The new type followed by the attributes of the current column it does not mention itself. */
+    static String redefine(String table, String column, String newType, Column current) {
+        if (current == null) return newType;
+        String type = newType.toUpperCase(Locale.ROOT);
+        String extra = current.extra() == null ? "" : current.extra().toLowerCase(Locale.ROOT);
+        if (extra.contains("virtual generated") || extra.contains("stored generated")) {
+            throw new IllegalArgumentException("Column " + table + "." + column
+                    + " is generated; MODIFY COLUMN would have to repeat its expression, change it by hand");
+        }
+        StringBuilder out = new StringBuilder(newType);
+        if (current.collation() != null && TEXT_TYPE.matcher(type).find() && !type.contains("COLLATE") && !type.contains("CHARACTER SET")) {
+            out.append(" COLLATE ").append(current.collation());
+        }
+        if (!current.nullable() && !NULL.matcher(type).find()) {
+            out.append(" NOT NULL");
+        }
+        // MariaDB reports a missing default as the text NULL and quotes string defaults itself
+        String def = current.defaultValue();
+        if (def != null && !def.equals("NULL") && !type.contains("DEFAULT")) {
+            out.append(" DEFAULT ").append(def.startsWith("'") ? def
+                    : CURRENT_TIMESTAMP.matcher(def).matches() ? def
+                    : extra.contains("default_generated") ? "(" + def + ")"
+                    : literal(def));
+        }
+        int onUpdate = extra.indexOf("on update ");
+        if (onUpdate >= 0 && !type.contains("ON UPDATE")) {
+            out.append(" ON UPDATE ").append(current.extra().substring(onUpdate + "on update ".length()).trim());
+        }
+        if (extra.contains("auto_increment") && !type.contains("AUTO_INCREMENT")) {
+            out.append(" AUTO_INCREMENT");
+        }
+        if (current.comment() != null && !current.comment().isEmpty() && !type.contains("COMMENT")) {
+            out.append(" COMMENT ").append(literal(current.comment()));
+        }
+        return out.toString();
+    }
+
+    private static String literal(String value) {
+        return "'" + value.replace("\\", "\\\\").replace("'", "''") + "'";
+    }
+
+    @Override
+    public boolean supports(String databaseProduct) {
+        return databaseProduct.contains("mysql") || databaseProduct.contains("mariadb");
+    }
+
+    @Override
+    public String quote(String identifier) {
+        return "`" + identifier + "`";
+    }
+
+    @Override
+    protected boolean combines(AlterStatement.Operation operation) {
+        return true;
+    }
+
+    @Override
+    protected String defaultColumnType() {
+        return "VARCHAR(255)";
+    }
+
+    @Override
+    public List<String> lockTimeouts(long lockTimeoutMs, long statementTimeoutMs) {
+        if (lockTimeoutMs <= 0) return List.of();
+        return List.of("SET SESSION lock_wait_timeout = " + Math.max(1, (lockTimeoutMs + 999) / 1000));
+    }
+
+    @Override
+    public List<String> restoreTimeouts(Connection conn) {
+        return List.of("SET SESSION lock_wait_timeout = DEFAULT");
+    }
+
+    @Override
+    public boolean isLockFailure(SQLException e) {
+        return anyCause(e, x -> x.getErrorCode() == LOCK_WAIT_TIMEOUT || x.getErrorCode() == DEADLOCK);
+    }
+
+    @Override
+    public List<Map<String, Object>> blockingSessions(Connection conn, String table) throws SQLException {
+        return rows(conn, BLOCKING_SESSIONS, table);
+    }
+}
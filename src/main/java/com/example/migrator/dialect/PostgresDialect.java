@@ -0,0 +1,70 @@
+package com.example.migrator.dialect;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Adjacent added columns and type changes share one ALTER TABLE, so PostgreSQL takes the ACCESS EXCLUSIVE
+ * lock and rewrites the table once for them; RENAME COLUMN cannot be combined and runs on its own, where
+ * it comes in the changes.
+ * Guarded DDL uses SET LOCAL, so the timeouts end with the table's transaction.
+ */
+public class PostgresDialect extends TemplateDialect {
+
+    // lock_not_available, deadlock_detected
+    private static final Set<String> LOCK_FAILURES = Set.of("55P03", "40P01");
+    private static final String BLOCKING_SESSIONS = "SELECT a.pid AS session, a.usename AS \"user\", a.state, l.mode AS lock, "
+            + "left(a.query, 200) AS query, a.xact_start AS since FROM pg_locks l JOIN pg_stat_activity a ON a.pid = l.pid "
+            + "WHERE l.relation = to_regclass(?) AND l.granted AND a.pid <> pg_backend_pid() ORDER BY a.xact_start";
+
+    public PostgresDialect() {
+        super("ADD COLUMN {0} {1}", "RENAME COLUMN {0} TO {1}", "ALTER COLUMN {0} TYPE {1} USING {0}::{1}", null);
+    }
+
+    @Override
+    public String name() {
+        return "postgresql";
+    }
+
+    @Override
+    public boolean supports(String databaseProduct) {
+        return databaseProduct.contains("postgres");
+    }
+
+    @Override
+    public String quote(String identifier) {
+        return "\"" + identifier + "\"";
+    }
+
+    @Override
+    protected boolean combines(AlterStatement.Operation operation) {
+        return operation != AlterStatement.Operation.RENAME;
+    }
+
+    @Override
+    protected String defaultColumnType() {
+        return "TEXT";
+    }
+
+    @Override
+    public List<String> lockTimeouts(long lockTimeoutMs, long statementTimeoutMs) {
+        List<String> out = new ArrayList<>();
+        if (lockTimeoutMs > 0) out.add("SET LOCAL lock_timeout = '" + lockTimeoutMs + "ms'");
+        if (statementTimeoutMs > 0) out.add("SET LOCAL statement_timeout = '" + statementTimeoutMs + "ms'");
+        return out;
+    }
+
+    @Override
+    public boolean isLockFailure(SQLException e) {
+        return anyCause(e, x -> LOCK_FAILURES.contains(x.getSQLState()));
+    }
+
+    @Override
+    public List<Map<String, Object>> blockingSessions(Connection conn, String table) throws SQLException {
+        return rows(conn, BLOCKING_SESSIONS, quote(table));
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.migrator.dialect;
+
+import com.example.migrator.dialect.AlterStatement.Clause;
+import com.example.migrator.dialect.AlterStatement.Operation;
+import com.example.migrator.dto.ColumnChange;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+import java.util.function.Predicate;
+
+/**
+ * Dialect built from clause templates for the three column operations. Statements run in the order of
+ * the changes: adjacent clauses the dialect can combine share one ALTER TABLE, and a clause it cannot
+ * (e.g. a rename on PostgreSQL) ends the pending statement and runs on its own.
+ */
+public abstract class TemplateDialect implements Dialect {
+
+    private static final DdlTemplate ALTER_TABLE = DdlTemplate.compile("ALTER TABLE {0} {1}");
+
+    private final DdlTemplate add;
+    private final DdlTemplate rename;
+    private final DdlTemplate retype;
+    private final DdlTemplate renameRetype;
+
+    /**
+     * @param add          {0} column, {1} type
+     * @param rename       {0} column, {1} new column
+     * @param retype       {0} column, {1} type
+     * @param renameRetype {0} column, {1} new column, {2} type; null to rename, then retype
+     */
+    protected TemplateDialect(String add, String rename, String retype, String renameRetype) {
+        this.add = DdlTemplate.compile(add);
+        this.rename = DdlTemplate.compile(rename);
+        this.retype = DdlTemplate.compile(retype);
+        this.renameRetype = renameRetype != null ? DdlTemplate.compile(renameRetype) : null;
+    }
+
+    /** Whether clauses of this operation can share an ALTER TABLE with others. */
+    protected abstract boolean combines(Operation operation);
+
+    /** Type of an added column when the change names none. */
+    protected abstract String defaultColumnType();
+
+    @Override
+    public List<String> alterTable(String table, List<ColumnChange> changes) {
+        return alterStatements(table, changes).stream().map(AlterStatement::sql).toList();
+    }
+
+    @Override
+    public List<AlterStatement> alterStatements(String table, List<ColumnChange> changes) {
+        return alterStatements(table, changes, (column, type) -> type);
+    }
+
+    /**
+     * @param redefine what a retype clause puts after the column name, from the column's name before this
+     *                 change list (renames earlier in the list are followed) and the new type; for dialects
+     *                 whose retype redefines the whole column
+     */
+    protected List<AlterStatement> alterStatements(String table, List<ColumnChange> changes, BinaryOperator<String> redefine) {
+        List<Part> parts = new ArrayList<>();
+        Map<String, String> renamedFrom = new HashMap<>();
+        for (ColumnChange c : changes) {
+            parts(c, parts, redefine, renamedFrom);
+        }
+        String tbl = quote(table);
+        List<AlterStatement> out = new ArrayList<>();
+        List<Part> pending = new ArrayList<>();
+        // columns the pending statement adds or renames something to
+        Set<String> introduced = new HashSet<>();
+        for (Part part : parts) {
+            if (!combines(part.operation)) {
+                flush(tbl, pending, out);
+                introduced.clear();
+                out.add(statement(tbl, List.of(part)));
+                continue;
+            }
+            // the clauses of one statement all see the table as it was before it
+            if (introduced.contains(part.column)) {
+                flush(tbl, pending, out);
+                introduced.clear();
+            }
+            pending.add(part);
+            if (part.newColumn != null) introduced.add(part.newColumn);
+        }
+        flush(tbl, pending, out);
+        return out;
+    }
+
+    /** One rendered clause on {@code column}; {@code newColumn} is the name it adds or renames it to, if any. */
+    private record Part(Operation operation, String sql, ColumnChange change, String column, String newColumn) {}
+
+    private static void flush(String tbl, List<Part> pending, List<AlterStatement> out) {
+        if (pending.isEmpty()) return;
+        out.add(statement(tbl, pending));
+        pending.clear();
+    }
+
+    private static AlterStatement statement(String tbl, List<Part> parts) {
+        List<String> sql = new ArrayList<>(parts.size());
+        List<Clause> clauses = new ArrayList<>(parts.size());
+        for (Part p : parts) {
+            sql.add(p.sql);
+            clauses.add(new Clause(p.operation, p.change));
+        }
+        return new AlterStatement(ALTER_TABLE.render(tbl, String.join(", ", sql)), List.copyOf(clauses));
+    }
+
+    private void parts(ColumnChange c, List<Part> parts, BinaryOperator<String> redefine, Map<String, String> renamedFrom) {
+        boolean retyped = !isBlank(c.getNewType());
+        // no source column: a new column, not a rename of "null"
+        if (isBlank(c.getColumn()) && !isBlank(c.getNewColumn())) {
+            String newColumn = quote(c.getNewColumn());
+            parts.add(new Part(Operation.ADD, add.render(newColumn, retyped ? c.getNewType() : defaultColumnType()), c, null, newColumn));
+            return;
+        }
+        if (isBlank(c.getColumn())) {
+            throw new IllegalArgumentException("Unsupported change: " + c.getTable() + "/" + c.getColumn());
+        }
+        String column = quote(c.getColumn());
+        String original = renamedFrom.getOrDefault(c.getColumn(), c.getColumn());
+        String type = retyped ? redefine.apply(original, c.getNewType()) : null;
+        if (!isBlank(c.getNewColumn()) && !c.getNewColumn().equals(c.getColumn())) {
+            String newColumn = quote(c.getNewColumn());
+            renamedFrom.put(c.getNewColumn(), original);
+            if (retyped && renameRetype != null) {
+                parts.add(new Part(Operation.RETYPE, renameRetype.render(column, newColumn, type), c, column, newColumn));
+                return;
+            }
+            parts.add(new Part(Operation.RENAME, rename.render(column, newColumn), c, column, newColumn));
+            column = newColumn;
+        } else if (!retyped) {
+            throw new IllegalArgumentException("Unsupported change: " + c.getTable() + "/" + c.getColumn());
+        }
+        if (retyped) {
+            parts.add(new Part(Operation.RETYPE, retype.render(column, type), c, column, null));
+        }
+    }
+
+    /** Tests {@code e}, its chained exceptions (batches) and causes. */
+    protected static boolean anyCause(SQLException e, Predicate<SQLException> test) {
+        for (SQLException next = e; next != null; next = next.getNextException()) {
+            for (Throwable t = next; t != null; t = t.getCause()) {
+                if (t instanceof SQLException sql && test.test(sql)) return true;
+            }
+        }
+        return false;
+    }
+
+    /** Rows of a one-parameter query, keyed by the lower-cased column labels. */
+    protected static List<Map<String, Object>> rows(Connection conn, String sql, String parameter) throws SQLException {
+        List<Map<String, Object>> out = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, parameter);
+            try (ResultSet rs = ps.executeQuery()) {
+                ResultSetMetaData md = rs.getMetaData();
+                while (rs.next()) {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    for (int i = 1; i <= md.getColumnCount(); i++) {
+                        Object v = rs.getObject(i);
+                        row.put(md.getColumnLabel(i).toLowerCase(), v instanceof Number || v == null ? v : v.toString());
+                    }
+                    out.add(row);
+                }
+            }
+        }
+        return out;
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isEmpty();
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.migrator.dto;
+
+public class BackfillProgress {
+    private String table;
+    private String column;
+    private long rowsCopied;
+    private long elapsedMillis;
+    private boolean done;
+
+    public BackfillProgress() {}
+
+    public BackfillProgress(String table, String column, long rowsCopied, long elapsedMillis, boolean done) {
+        this.table = table;
+        this.column = column;
+        this.rowsCopied = rowsCopied;
+        this.elapsedMillis = elapsedMillis;
+        this.done = done;
+    }
+
+    public long getRowsPerSecond() {
+        return elapsedMillis > 0 ? rowsCopied * 1000 / elapsedMillis : rowsCopied;
+    }
+
+    public String getTable() { return table; }
+    public void setTable(String table) { this.table = table; }
+    public String getColumn() { return column; }
+    public void setColumn(String column) { this.column = column; }
+    public long getRowsCopied() { return rowsCopied; }
+    public void setRowsCopied(long rowsCopied) { this.rowsCopied = rowsCopied; }
+    public long getElapsedMillis() { return elapsedMillis; }
+    public void setElapsedMillis(long elapsedMillis) { this.elapsedMillis = elapsedMillis; }
+    public boolean isDone() { return done; }
+    public void setDone(boolean done) { this.done = done; }
+}
@@ -7,6 +7,12 @@ public class ColumnChange {
     private String newColumn;
     private String newType;
     private boolean primaryKey;
+    // change the type through a shadow column + trigger + chunked backfill instead of one rewriting ALTER
+    private boolean online;
+    // fill the (new) column from existing data in chunks: a SQL expression over the row, e.g. UPPER("name"),
+    // or the name of a registered Java transform (SchemaMigrationService#registerBackfillTransform)
+    private String backfill;
+    private String backfillTransform;
 
     public ColumnChange() {}
 
@@ -28,4 +34,10 @@ public class ColumnChange {
     public void setNewType(String newType) { this.newType = newType; }
     public boolean isPrimaryKey() { return primaryKey; }
     public void setPrimaryKey(boolean primaryKey) { this.primaryKey = primaryKey; }
+    public boolean isOnline() { return online; }
+    public void setOnline(boolean online) { this.online = online; }
+    public String getBackfill() { return backfill; }
+    public void setBackfill(String backfill) { this.backfill = backfill; }
+    public String getBackfillTransform() { return backfillTransform; }
+    public void setBackfillTransform(String backfillTransform) { this.backfillTransform = backfillTransform; }
 }
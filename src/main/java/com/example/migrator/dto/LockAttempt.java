@@ -0,0 +1,38 @@
+package com.example.migrator.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A guarded DDL attempt that did not get its table lock: how long it waited, the backoff before the
+ * next attempt and the sessions that were holding the table.
+ */
+public class LockAttempt {
+    private int attempt;
+    private long waitedMicros;
+    private long backoffMillis;
+    private String error;
+    private List<Map<String, Object>> blockers = new ArrayList<>();
+
+    public LockAttempt() {}
+
+    public LockAttempt(int attempt, long waitedMicros, long backoffMillis, String error, List<Map<String, Object>> blockers) {
+        this.attempt = attempt;
+        this.waitedMicros = waitedMicros;
+        this.backoffMillis = backoffMillis;
+        this.error = error;
+        this.blockers = blockers;
+    }
+
+    public int getAttempt() { return attempt; }
+    public void setAttempt(int attempt) { this.attempt = attempt; }
+    public long getWaitedMicros() { return waitedMicros; }
+    public void setWaitedMicros(long waitedMicros) { this.waitedMicros = waitedMicros; }
+    public long getBackoffMillis() { return backoffMillis; }
+    public void setBackoffMillis(long backoffMillis) { this.backoffMillis = backoffMillis; }
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+    public List<Map<String, Object>> getBlockers() { return blockers; }
+    public void setBlockers(List<Map<String, Object>> blockers) { this.blockers = blockers; }
+}
@@ -0,0 +1,41 @@
+package com.example.migrator.dto;
+
+/**
+ * One statement of a dry-run plan with what it is expected to cost on the live database.
+ */
+public class PlannedStatement {
+    private String table;
+    private String sql;
+    private String operation;
+    private String lockLevel;
+    /** null when the database's behaviour is not known */
+    private Boolean tableRewrite;
+    private long estimatedRows;
+    private long estimatedBytes;
+    private boolean heavy;
+
+    public PlannedStatement() {}
+
+    public PlannedStatement(String table, String sql, String operation) {
+        this.table = table;
+        this.sql = sql;
+        this.operation = operation;
+    }
+
+    public String getTable() { return table; }
+    public void setTable(String table) { this.table = table; }
+    public String getSql() { return sql; }
+    public void setSql(String sql) { this.sql = sql; }
+    public String getOperation() { return operation; }
+    public void setOperation(String operation) { this.operation = operation; }
+    public String getLockLevel() { return lockLevel; }
+    public void setLockLevel(String lockLevel) { this.lockLevel = lockLevel; }
+    public Boolean getTableRewrite() { return tableRewrite; }
+    public void setTableRewrite(Boolean tableRewrite) { this.tableRewrite = tableRewrite; }
+    public long getEstimatedRows() { return estimatedRows; }
+    public void setEstimatedRows(long estimatedRows) { this.estimatedRows = estimatedRows; }
+    public long getEstimatedBytes() { return estimatedBytes; }
+    public void setEstimatedBytes(long estimatedBytes) { this.estimatedBytes = estimatedBytes; }
+    public boolean isHeavy() { return heavy; }
+    public void setHeavy(boolean heavy) { this.heavy = heavy; }
+}
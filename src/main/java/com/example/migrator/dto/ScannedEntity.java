@@ -0,0 +1,33 @@
+package com.example.migrator.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One entity as emitted by the streaming scan, one NDJSON line each.
+ * Same fields as the entity maps of {@code /api/scan/entities}.
+ */
+public class ScannedEntity {
+    private String className;
+    private String qualifiedName;
+    private String tableName;
+    private List<ScannedField> fields = new ArrayList<>();
+
+    public ScannedEntity() {}
+
+    public ScannedEntity(String className, String qualifiedName, String tableName, List<ScannedField> fields) {
+        this.className = className;
+        this.qualifiedName = qualifiedName;
+        this.tableName = tableName;
+        this.fields = fields;
+    }
+
+    public String getClassName() { return className; }
+    public void setClassName(String className) { this.className = className; }
+    public String getQualifiedName() { return qualifiedName; }
+    public void setQualifiedName(String qualifiedName) { this.qualifiedName = qualifiedName; }
+    public String getTableName() { return tableName; }
+    public void setTableName(String tableName) { this.tableName = tableName; }
+    public List<ScannedField> getFields() { return fields; }
+    public void setFields(List<ScannedField> fields) { this.fields = fields; }
+}
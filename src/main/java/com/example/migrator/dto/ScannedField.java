@@ -0,0 +1,27 @@
+package com.example.migrator.dto;
+
+/** One persistent field of a {@link ScannedEntity}. */
+public class ScannedField {
+    private String fieldName;
+    private String type;
+    private String columnName;
+    private boolean primaryKey;
+
+    public ScannedField() {}
+
+    public ScannedField(String fieldName, String type, String columnName, boolean primaryKey) {
+        this.fieldName = fieldName;
+        this.type = type;
+        this.columnName = columnName;
+        this.primaryKey = primaryKey;
+    }
+
+    public String getFieldName() { return fieldName; }
+    public void setFieldName(String fieldName) { this.fieldName = fieldName; }
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+    public String getColumnName() { return columnName; }
+    public void setColumnName(String columnName) { this.columnName = columnName; }
+    public boolean isPrimaryKey() { return primaryKey; }
+    public void setPrimaryKey(boolean primaryKey) { this.primaryKey = primaryKey; }
+}
@@ -0,0 +1,29 @@
+package com.example.migrator.dto;
+
+/**
+ * One database of a sharded fleet, as listed in a shard registry file.
+ */
+public class ShardTarget {
+    private String name;
+    private String url;
+    private String user;
+    private String password;
+
+    public ShardTarget() {}
+
+    public ShardTarget(String name, String url, String user, String password) {
+        this.name = name;
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public String getUrl() { return url; }
+    public void setUrl(String url) { this.url = url; }
+    public String getUser() { return user; }
+    public void setUser(String user) { this.user = user; }
+    public String getPassword() { return password; }
+    public void setPassword(String password) { this.password = password; }
+}
@@ -0,0 +1,47 @@
+package com.example.migrator.dto;
+
+import java.util.List;
+
+/**
+ * Execution time of one DDL statement, or an aggregate row for one JDBC batch ({@code batch = true}):
+ * drivers only report the elapsed time of the whole batch, so {@code elapsedMicros} covers all of it,
+ * while {@code batchStatements} and {@code updateCounts} list each statement with its own result from
+ * {@code executeBatch} (by index; -2 = succeeded without a count).
+ */
+public class StatementTiming {
+    private String sql;
+    private int statementCount;
+    private long elapsedMicros;
+    private boolean batch;
+    private List<String> batchStatements;
+    private int[] updateCounts;
+
+    public StatementTiming() {}
+
+    public StatementTiming(String sql, int statementCount, long elapsedMicros) {
+        this.sql = sql;
+        this.statementCount = statementCount;
+        this.elapsedMicros = elapsedMicros;
+    }
+
+    public static StatementTiming batch(List<String> statements, int[] updateCounts, long elapsedMicros) {
+        StatementTiming t = new StatementTiming(String.join(";\n", statements), statements.size(), elapsedMicros);
+        t.batch = true;
+        t.batchStatements = List.copyOf(statements);
+        t.updateCounts = updateCounts;
+        return t;
+    }
+
+    public String getSql() { return sql; }
+    public void setSql(String sql) { this.sql = sql; }
+    public int getStatementCount() { return statementCount; }
+    public void setStatementCount(int statementCount) { this.statementCount = statementCount; }
+    public long getElapsedMicros() { return elapsedMicros; }
+    public void setElapsedMicros(long elapsedMicros) { this.elapsedMicros = elapsedMicros; }
+    public boolean isBatch() { return batch; }
+    public void setBatch(boolean batch) { this.batch = batch; }
+    public List<String> getBatchStatements() { return batchStatements; }
+    public void setBatchStatements(List<String> batchStatements) { this.batchStatements = batchStatements; }
+    public int[] getUpdateCounts() { return updateCounts; }
+    public void setUpdateCounts(int[] updateCounts) { this.updateCounts = updateCounts; }
+}
@@ -0,0 +1,35 @@
+package com.example.migrator.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TableMigrationResult {
+    private String status;
+    private List<StatementTiming> statements = new ArrayList<>();
+    private List<BackfillProgress> backfills = new ArrayList<>();
+    // changes the live schema already reflected, not sent to the database
+    private List<String> skipped = new ArrayList<>();
+    // guarded DDL attempts that timed out waiting for the table lock, in order
+    private List<LockAttempt> lockAttempts = new ArrayList<>();
+    // connect + DDL + commit + online backfills of this table
+    private long elapsedMicros;
+
+    public TableMigrationResult() {}
+
+    public TableMigrationResult(String status) {
+        this.status = status;
+    }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public List<StatementTiming> getStatements() { return statements; }
+    public void setStatements(List<StatementTiming> statements) { this.statements = statements; }
+    public List<BackfillProgress> getBackfills() { return backfills; }
+    public void setBackfills(List<BackfillProgress> backfills) { this.backfills = backfills; }
+    public List<String> getSkipped() { return skipped; }
+    public void setSkipped(List<String> skipped) { this.skipped = skipped; }
+    public List<LockAttempt> getLockAttempts() { return lockAttempts; }
+    public void setLockAttempts(List<LockAttempt> lockAttempts) { this.lockAttempts = lockAttempts; }
+    public long getElapsedMicros() { return elapsedMicros; }
+    public void setElapsedMicros(long elapsedMicros) { this.elapsedMicros = elapsedMicros; }
+}
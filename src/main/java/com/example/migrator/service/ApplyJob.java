@@ -0,0 +1,154 @@
+package com.example.migrator.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * One submitted apply. Progress events ({@code type: table} per SQL and source result, then one
+ * {@code type: done}) are kept, so a subscriber that connects late still receives all of them in order.
+ * Each subscriber is fed from its own queue on its own virtual thread: the migration only enqueues, so a
+ * slow or stalled client delays nobody but itself.
+ */
+public class ApplyJob {
+
+    public static final String RUNNING = "RUNNING";
+    public static final String DONE = "DONE";
+    public static final String FAILED = "FAILED";
+
+    private final String id;
+    private final Instant submittedAt = Instant.now();
+    private final CancelToken cancel = new CancelToken();
+    private final List<Map<String, Object>> events = new ArrayList<>();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private volatile String status = RUNNING;
+    private volatile Instant finishedAt;
+    private volatile Map<String, Object> result;
+    private volatile String error;
+
+    ApplyJob(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+
+    CancelToken getCancelToken() {
+        return cancel;
+    }
+
+    /**
+     * Stops the job: tables in flight are rolled back (online type changes and backfills stop after their
+     * current chunk), nothing after them runs.
+     */
+    public void cancel() {
+        cancel.cancel();
+    }
+
+    /** Replays the events so far, then delivers new ones as they happen; both off the calling thread. */
+    public synchronized void subscribe(Consumer<Map<String, Object>> listener) {
+        Subscriber s = new Subscriber(listener);
+        s.queue.addAll(events);
+        if (!isFinished()) subscribers.add(s);
+        s.thread = Thread.ofVirtual().name("apply-job-" + id + "-events").unstarted(s);
+        s.thread.start();
+    }
+
+    public void unsubscribe(Consumer<Map<String, Object>> listener) {
+        for (Subscriber s : subscribers) {
+            if (s.listener == listener) {
+                subscribers.remove(s);
+                s.close();
+            }
+        }
+    }
+
+    /** {@code {type: table, table, phase: sql|source, status[, message]}} */
+    synchronized void tableProgress(String table, String phase, String status, String message) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("type", "table");
+        event.put("table", table);
+        event.put("phase", phase);
+        event.put("status", status);
+        if (message != null) event.put("message", message);
+        publish(event);
+    }
+
+    synchronized void finish(Map<String, Object> result, String error) {
+        this.result = result;
+        this.error = error;
+        this.status = error != null ? FAILED : cancel.isCancelled() ? CancelToken.CANCELLED : DONE;
+        this.finishedAt = Instant.now();
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("type", "done");
+        event.put("status", status);
+        if (error != null) event.put("error", error);
+        publish(event);
+        subscribers.clear();
+    }
+
+    private void publish(Map<String, Object> event) {
+        events.add(event);
+        subscribers.forEach(s -> s.queue.add(event));
+    }
+
+    /** {jobId, status, submittedAt[, finishedAt, result, error]} */
+    public Map<String, Object> toMap() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("jobId", id);
+        out.put("status", status);
+        out.put("submittedAt", submittedAt.toString());
+        if (finishedAt != null) out.put("finishedAt", finishedAt.toString());
+        if (result != null) out.put("result", result);
+        if (error != null) out.put("error", error);
+        return out;
+    }
+
+    /** One listener's pending events, delivered in order until the {@code done} event or {@link #close}. */
+    private static final class Subscriber implements Runnable {
+        final Consumer<Map<String, Object>> listener;
+        final BlockingQueue<Map<String, Object>> queue = new LinkedBlockingQueue<>();
+        volatile Thread thread;
+        private volatile boolean closed;
+
+        Subscriber(Consumer<Map<String, Object>> listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    Map<String, Object> event = queue.take();
+                    listener.accept(event);
+                    if ("done".equals(event.get("type"))) return;
+                }
+            } catch (InterruptedException ex) {
+                // closed while waiting for the next event
+            } catch (RuntimeException ex) {
+                // a failing listener only loses its own events
+            }
+        }
+
+        void close() {
+            closed = true;
+            Thread t = thread;
+            if (t != null && t != Thread.currentThread()) t.interrupt();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.migrator.service;
+
+import com.example.migrator.dto.ColumnChange;
+import com.example.migrator.dto.TableMigrationResult;
+import com.example.migrator.service.SourceModifierService.EntityEdit;
+import com.example.migrator.service.SourceModifierService.FieldChange;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Runs applies (database changes, then entity sources) either inline or as submitted jobs on virtual
+ * threads, so a long change set does not hold an HTTP thread. Every table and entity is a step of a
+ * {@link MigrationJournal} run: applying the same changes again skips the steps that already went
+ * through and resumes the rest ({@code "fresh": true} starts over).
+ * The last -Dmigration.jobs.retain (default 100) finished jobs are kept for status queries.
+ * After each apply the resulting schema is recorded in the {@link SnapshotStore}, if there is one.
+ */
+@Service
+public class ApplyJobService {
+
+    private static final String PROP_RETAIN = "migration.jobs.retain";
+
+    private final SchemaMigrationService schemaService;
+    private final SourceModifierService sourceService;
+    private final MigrationJournal journal;
+    private final SnapshotStore snapshots;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // insertion ordered, so the oldest finished jobs are evicted first
+    private final Map<String, ApplyJob> jobs = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final int retain = Integer.getInteger(PROP_RETAIN, 100);
+
+    public ApplyJobService(SchemaMigrationService schemaService, SourceModifierService sourceService, MigrationJournal journal) {
+        this(schemaService, sourceService, journal, null);
+    }
+
+    @Autowired
+    public ApplyJobService(SchemaMigrationService schemaService, SourceModifierService sourceService, MigrationJournal journal,
+                           SnapshotStore snapshots) {
+        this.schemaService = schemaService;
+        this.sourceService = sourceService;
+        this.journal = journal;
+        this.snapshots = snapshots;
+    }
+
+    /** Applies on the calling thread and returns {sqlResult, sqlTimings, sqlLockAttempts, sourceResult, journal, timings}. */
+    public Map<String, Object> apply(Map<String, Object> body) {
+        return apply(body, new ApplyJob(null));
+    }
+
+    /** Starts the apply on a virtual thread and returns at once; follow it through {@link ApplyJob#subscribe}. */
+    public ApplyJob submit(Map<String, Object> body) {
+        return submit(body, null);
+    }
+
+    /** Same as {@link #submit(Map)}; {@code listener} is subscribed before the job starts, so it sees every event. */
+    public ApplyJob submit(Map<String, Object> body, Consumer<Map<String, Object>> listener) {
+        ApplyJob job = new ApplyJob(UUID.randomUUID().toString());
+        if (listener != null) job.subscribe(listener);
+        jobs.put(job.getId(), job);
+        evictFinished();
+        executor.submit(() -> {
+            try {
+                job.finish(apply(body, job), null);
+            } catch (RuntimeException ex) {
+                job.finish(null, String.valueOf(ex.getMessage()));
+            }
+        });
+        return job;
+    }
+
+    public ApplyJob get(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    public List<Map<String, Object>> list() {
+        synchronized (jobs) {
+            return jobs.values().stream().map(ApplyJob::toMap).toList();
+        }
+    }
+
+    private void evictFinished() {
+        synchronized (jobs) {
+            Iterator<ApplyJob> it = jobs.values().iterator();
+            int excess = jobs.size() - retain;
+            while (excess > 0 && it.hasNext()) {
+                if (it.next().isFinished()) {
+                    it.remove();
+                    excess--;
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (jobs) {
+            jobs.values().forEach(ApplyJob::cancel);
+        }
+        executor.shutdownNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> apply(Map<String, Object> body, ApplyJob job) {
+        PhaseTimings timings = new PhaseTimings();
+        CancelToken cancel = job.getCancelToken();
+        List<Map<String, Object>> changes = (List<Map<String, Object>>) body.get("changes");
+        List<ColumnChange> dtoList = toColumnChanges(changes);
+        Map<String, List<Map<String, Object>>> byTable = new LinkedHashMap<>();
+        for (Map<String, Object> m : changes) {
+            byTable.computeIfAbsent((String) m.get("table"), k -> new ArrayList<>()).add(m);
+        }
+        Map<String, Object> applyResult = new HashMap<>();
+        Map<String, EntityEdit> edits = toEntityEdits(byTable, applyResult);
+        MigrationJournal.Run run = journal.open(MigrationJournal.runId(dtoList, edits.values()), Boolean.TRUE.equals(body.get("fresh")));
+
+        Map<String, TableMigrationResult> migration = schemaService.migrate(dtoList, timings, run,
+                (table, r) -> job.tableProgress(table, "sql", r.getStatus(), null), cancel);
+        Map<String, String> sqlResult = SchemaMigrationService.statuses(migration);
+        Map<String, Object> out = new HashMap<>();
+        out.put("sqlResult", sqlResult);
+        Map<String, Object> sqlTimings = new HashMap<>();
+        migration.forEach((table, r) -> sqlTimings.put(table, r.getStatements()));
+        out.put("sqlTimings", sqlTimings);
+        // guarded DDL (-Dmigration.guard=true): the attempts that timed out waiting for their table lock
+        Map<String, Object> lockAttempts = new HashMap<>();
+        migration.forEach((table, r) -> {
+            if (!r.getLockAttempts().isEmpty()) lockAttempts.put(table, r.getLockAttempts());
+        });
+        out.put("sqlLockAttempts", lockAttempts);
+
+        Map<String, EntityEdit> sourceEdits = new LinkedHashMap<>();
+        Map<String, String> sourceChecksums = new HashMap<>();
+        edits.forEach((table, edit) -> {
+            String status = sqlResult.getOrDefault(table, "FAILED");
+            if (!"OK".equals(status)) {
+                sourceResult(job, applyResult, table, status, "SQL failed, source not modified");
+                return;
+            }
+            if (cancel.isCancelled()) {
+                sourceResult(job, applyResult, table, CancelToken.CANCELLED, "cancelled before the source rewrite");
+                return;
+            }
+            String step = "source:" + edit.getQualifiedName();
+            String checksum = MigrationJournal.checksum(edit);
+            if (run.skipIfDone(step, checksum)) {
+                sourceResult(job, applyResult, table, "SOURCE_UPDATED", "already applied by journal run " + run.getRunId());
+                return;
+            }
+            run.planned(step, checksum);
+            sourceChecksums.put(table, checksum);
+            sourceEdits.put(table, edit);
+        });
+        // all entity files are rewritten together: either every one is updated or none is
+        if (!sourceEdits.isEmpty()) {
+            try {
+                sourceService.applyBulk(new ArrayList<>(sourceEdits.values()), timings);
+                sourceEdits.forEach((table, edit) -> {
+                    sourceResult(job, applyResult, table, "SOURCE_UPDATED", null);
+                    run.done("source:" + edit.getQualifiedName(), sourceChecksums.get(table), null);
+                });
+            } catch (Exception ex) {
+                String message = String.valueOf(ex.getMessage());
+                sourceEdits.forEach((table, edit) -> {
+                    sourceResult(job, applyResult, table, "SOURCE_FAILED", message);
+                    run.failed("source:" + edit.getQualifiedName(), sourceChecksums.get(table), message);
+                });
+            }
+        }
+        run.complete();
+        // the entity classes only change on the next compile and scan, so the snapshot keeps the last scanned model
+        if (snapshots != null) snapshots.recordQuietly("apply", null);
+
+        out.put("sourceResult", applyResult);
+        out.put("journal", run.toMap());
+        out.put("timings", timings.toMap());
+        return out;
+    }
+
+    private static void sourceResult(ApplyJob job, Map<String, Object> applyResult, String table, String status, String message) {
+        applyResult.put(table, message != null ? Map.of("status", status, "message", message) : Map.of("status", status));
+        job.tableProgress(table, "source", status, message);
+    }
+
+    public static List<ColumnChange> toColumnChanges(List<Map<String, Object>> changes) {
+        List<ColumnChange> dtoList = new ArrayList<>();
+        for (Map<String, Object> m : changes) {
+            String table = (String) m.get("table");
+            String column = (String) m.get("column");
+            String newColumn = (String) m.get("newColumn");
+            String newType = (String) m.get("newType");
+            Boolean pk = m.get("primaryKey") != null ? (Boolean) m.get("primaryKey") : false;
+            ColumnChange cc = new ColumnChange(table, column, newColumn, newType, pk);
+            cc.setOnline(Boolean.TRUE.equals(m.get("online")));
+            cc.setBackfill((String) m.get("backfill"));
+            cc.setBackfillTransform((String) m.get("backfillTransform"));
+            dtoList.add(cc);
+        }
+        return dtoList;
+    }
+
+    /** One edit per table that names its entity; tables that do not are reported as NO_SOURCE_INFO. */
+    private static Map<String, EntityEdit> toEntityEdits(Map<String, List<Map<String, Object>>> byTable, Map<String, Object> applyResult) {
+        Map<String, EntityEdit> edits = new LinkedHashMap<>();
+        byTable.forEach((table, tableChanges) -> {
+            String qualifiedName = null;
+            String newTableName = null;
+            List<FieldChange> fcs = new ArrayList<>();
+            for (Map<String, Object> m : tableChanges) {
+                if (qualifiedName == null && m.get("qualifiedName") != null)
+                    qualifiedName = (String) m.get("qualifiedName");
+                if (newTableName == null && m.get("newTableName") != null)
+                    newTableName = (String) m.get("newTableName");
+                String fieldName = (String) m.get("fieldName");
+                String newColumn = (String) m.get("newColumn");
+                String newType = (String) m.get("newType");
+                if (fieldName != null && newColumn != null) {
+                    fcs.add(new FieldChange(fieldName, newColumn, newType));
+                }
+            }
+            if (qualifiedName == null) {
+                applyResult.put(table, Map.of("status", "NO_SOURCE_INFO", "message", "qualifiedName missing - cannot modify source"));
+                return;
+            }
+            edits.put(table, new EntityEdit(qualifiedName, fcs, newTableName));
+        });
+        return edits;
+    }
+}
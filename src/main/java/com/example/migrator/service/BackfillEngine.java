@@ -0,0 +1,423 @@
+package com.example.migrator.service;
+
+import com.example.migrator.dialect.Dialect;
+import com.example.migrator.dto.BackfillProgress;
+import com.example.migrator.dto.StatementTiming;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Fills a column from existing data without one table-wide UPDATE:
+ * <ul>
+ *   <li>the primary key range is split into one range per worker (integer keys; other keys get one range),</li>
+ *   <li>each worker walks its range in keyset-paginated chunks on its own connection, one commit per chunk,</li>
+ *   <li>the chunk and the range's checkpoint row in {@value #CHECKPOINT_TABLE} commit together, so a failed
+ *       or killed run resumes after the last committed chunk when the same change is applied again; the
+ *       checkpoints carry a hash of the expression or transform name, and those of a different one are
+ *       discarded (the backfill starts over),</li>
+ *   <li>all workers together are throttled to -Dmigration.backfill.maxRowsPerSecond.</li>
+ * </ul>
+ * Values come from a SQL expression over the row (one UPDATE per chunk) or a {@link BackfillTransform}
+ * (rows read, computed in Java and written back as a JDBC batch). The table needs a single-column primary key
+ * of an integer or character type, so that keys survive the checkpoint's text form unchanged.
+ */
+class BackfillEngine {
+
+    static final String PROP_CHUNK_SIZE = "migration.backfill.chunkSize";
+    static final String PROP_WORKERS = "migration.backfill.workers";
+    static final String PROP_MAX_ROWS_PER_SECOND = "migration.backfill.maxRowsPerSecond";
+    static final String CHECKPOINT_TABLE = "MIGRATOR_BACKFILL_CHECKPOINT";
+
+    private static final String CREATE_CHECKPOINT_TABLE = "CREATE TABLE IF NOT EXISTS " + CHECKPOINT_TABLE + " ("
+            + "TABLE_NAME VARCHAR(255) NOT NULL, COLUMN_NAME VARCHAR(255) NOT NULL, RANGE_NO INT NOT NULL, "
+            + "LAST_KEY VARCHAR(255), RANGE_END VARCHAR(255), ROWS_DONE BIGINT NOT NULL, DONE BOOLEAN NOT NULL, "
+            + "SOURCE_HASH VARCHAR(64), PRIMARY KEY (TABLE_NAME, COLUMN_NAME, RANGE_NO))";
+    private static final Set<Integer> INTEGER_TYPES = Set.of(Types.BIGINT, Types.INTEGER, Types.SMALLINT, Types.TINYINT);
+    private static final Set<Integer> TEXT_TYPES = Set.of(Types.VARCHAR, Types.CHAR, Types.NVARCHAR, Types.NCHAR,
+            Types.LONGVARCHAR, Types.LONGNVARCHAR);
+
+    private final DataSource dataSource;
+    private final Dialect dialect;
+    private final int chunkSize;
+    private final int workers;
+    private final long maxRowsPerSecond;
+    private CancelToken cancel = new CancelToken();
+
+    /** @param maxWorkers connections the caller can spare; caps -Dmigration.backfill.workers (default 4) */
+    BackfillEngine(DataSource dataSource, Dialect dialect, int maxWorkers) {
+        this(dataSource, dialect, Integer.getInteger(PROP_CHUNK_SIZE, 10_000),
+                Math.max(1, Math.min(Integer.getInteger(PROP_WORKERS, 4), maxWorkers)),
+                Long.getLong(PROP_MAX_ROWS_PER_SECOND, 0L));
+    }
+
+    BackfillEngine(DataSource dataSource, Dialect dialect, int chunkSize, int workers, long maxRowsPerSecond) {
+        this.dataSource = dataSource;
+        this.dialect = dialect;
+        this.chunkSize = chunkSize;
+        this.workers = workers;
+        this.maxRowsPerSecond = maxRowsPerSecond;
+    }
+
+    /** Workers stop before their next chunk once {@code cancel} is cancelled; the checkpoints stay for a resume. */
+    BackfillEngine cancellable(CancelToken cancel) {
+        this.cancel = cancel;
+        return this;
+    }
+
+    /**
+     * Exactly one of {@code expression} and {@code transform} is set; {@code transformName}, the transform's
+     * registered name, tells checkpoints of different transforms apart.
+     */
+    BackfillProgress run(String table, String column, String expression, String transformName, BackfillTransform transform,
+                         List<StatementTiming> timings, Consumer<BackfillProgress> progress) throws SQLException {
+        String source = MigrationJournal.sha256(transform != null ? "transform:" + transformName : "expression:" + expression);
+        Key key;
+        List<Range> ranges;
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(true);
+            key = primaryKey(conn, table);
+            createCheckpointTable(conn);
+            // checkpoints left by an interrupted run of the same backfill take precedence over a fresh split
+            ranges = loadRanges(conn, table, column, source);
+            if (ranges.isEmpty()) {
+                ranges = split(conn, table, key);
+                saveRanges(conn, table, column, source, ranges);
+            }
+        }
+
+        Run run = new Run(table, column, key, expression, transform, progress);
+        for (Range r : ranges) run.copied.addAndGet(r.rowsDone);
+        run.resumedFrom = run.copied.get();
+        List<Range> pending = ranges.stream().filter(r -> !r.done).toList();
+        if (pending.size() <= 1) {
+            for (Range r : pending) {
+                work(run, r);
+            }
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(pending.size());
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (Range r : pending) {
+                    futures.add(pool.submit(() -> {
+                        work(run, r);
+                        return null;
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    try {
+                        f.get();
+                    } catch (ExecutionException ex) {
+                        run.failed.set(true);
+                        if (run.error == null) run.error = ex.getCause();
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Backfill interrupted", ex);
+            } finally {
+                pool.shutdownNow();
+            }
+            if (run.error instanceof SQLException sql) throw sql;
+            if (run.error != null) throw new IllegalStateException(run.error);
+        }
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(true);
+            deleteCheckpoints(conn, table, column);
+        }
+        long elapsedMillis = run.elapsedMillis();
+        timings.add(new StatementTiming(run.describe(dialect), run.chunks.intValue(), elapsedMillis * 1_000));
+        BackfillProgress done = new BackfillProgress(table, column, run.copied.get(), elapsedMillis, true);
+        progress.accept(done);
+        return done;
+    }
+
+    private void work(Run run, Range range) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement checkpoint = conn.prepareStatement("UPDATE " + CHECKPOINT_TABLE
+                    + " SET LAST_KEY = ?, ROWS_DONE = ?, DONE = ? WHERE TABLE_NAME = ? AND COLUMN_NAME = ? AND RANGE_NO = ?")) {
+                checkpoint.setString(4, run.table);
+                checkpoint.setString(5, run.column);
+                checkpoint.setInt(6, range.no);
+                while (!run.failed.get()) {
+                    cancel.check();
+                    Chunk chunk = run.transform != null ? transformChunk(conn, run, range) : updateChunk(conn, run, range);
+                    long rowsDone = range.rowsDone + (chunk != null ? chunk.rows : 0);
+                    checkpoint.setString(1, chunk != null ? chunk.upper : range.lastKey);
+                    checkpoint.setLong(2, rowsDone);
+                    checkpoint.setBoolean(3, chunk == null);
+                    checkpoint.executeUpdate();
+                    conn.commit();
+                    if (chunk == null) return;
+                    range.lastKey = chunk.upper;
+                    range.rowsDone = rowsDone;
+                    long copied = run.copied.addAndGet(chunk.rows);
+                    run.chunks.incrementAndGet();
+                    long elapsedMillis = run.elapsedMillis();
+                    run.progress.accept(new BackfillProgress(run.table, run.column, copied, elapsedMillis, false));
+                    throttle(copied - run.resumedFrom, elapsedMillis);
+                }
+            } catch (SQLException | RuntimeException ex) {
+                run.failed.set(true);
+                try { conn.rollback(); } catch (SQLException ignore) {}
+                throw ex;
+            }
+        }
+    }
+
+    /** One UPDATE over the next {@code chunkSize} keys of the range; null when the range is exhausted. */
+    private Chunk updateChunk(Connection conn, Run run, Range range) throws SQLException {
+        String key = dialect.quote(run.key.name);
+        String bound = String.format("SELECT MAX(%s) FROM (SELECT %s FROM %s%s ORDER BY %s LIMIT %d) chunk",
+                key, key, dialect.quote(run.table), where(key, range.lastKey, range.end), key, chunkSize);
+        String upper;
+        try (PreparedStatement ps = conn.prepareStatement(bound)) {
+            bind(ps, 1, run.key, range.lastKey, range.end);
+            try (ResultSet rs = ps.executeQuery()) {
+                upper = rs.next() ? rs.getString(1) : null;
+            }
+        }
+        if (upper == null) return null;
+        String update = String.format("UPDATE %s SET %s = (%s)%s", dialect.quote(run.table), dialect.quote(run.column), run.expression,
+                where(key, range.lastKey, upper));
+        try (PreparedStatement ps = conn.prepareStatement(update)) {
+            bind(ps, 1, run.key, range.lastKey, upper);
+            return new Chunk(upper, ps.executeUpdate());
+        }
+    }
+
+    /** Reads the next {@code chunkSize} rows of the range, computes the values in Java and writes them as one batch. */
+    private Chunk transformChunk(Connection conn, Run run, Range range) throws SQLException {
+        String key = dialect.quote(run.key.name);
+        StringBuilder select = new StringBuilder("SELECT ").append(key);
+        for (String c : run.transform.sourceColumns()) {
+            select.append(", ").append(dialect.quote(c));
+        }
+        select.append(" FROM ").append(dialect.quote(run.table)).append(where(key, range.lastKey, range.end))
+                .append(" ORDER BY ").append(key).append(" LIMIT ").append(chunkSize);
+        String update = String.format("UPDATE %s SET %s = ? WHERE %s = ?", dialect.quote(run.table), dialect.quote(run.column), key);
+        String upper = null;
+        int rows = 0;
+        try (PreparedStatement read = conn.prepareStatement(select.toString());
+             PreparedStatement write = conn.prepareStatement(update)) {
+            bind(read, 1, run.key, range.lastKey, range.end);
+            try (ResultSet rs = read.executeQuery()) {
+                while (rs.next()) {
+                    Object pk = rs.getObject(1);
+                    Map<String, Object> row = new HashMap<>();
+                    int i = 2;
+                    for (String c : run.transform.sourceColumns()) {
+                        row.put(c, rs.getObject(i++));
+                    }
+                    write.setObject(1, run.transform.apply(row));
+                    write.setObject(2, pk);
+                    write.addBatch();
+                    upper = rs.getString(1);
+                    rows++;
+                }
+            }
+            if (rows == 0) return null;
+            write.executeBatch();
+        }
+        return new Chunk(upper, rows);
+    }
+
+    private static String where(String key, String after, String upTo) {
+        if (after == null && upTo == null) return "";
+        if (after == null) return " WHERE " + key + " <= ?";
+        if (upTo == null) return " WHERE " + key + " > ?";
+        return " WHERE " + key + " > ? AND " + key + " <= ?";
+    }
+
+    private static void bind(PreparedStatement ps, int i, Key key, String after, String upTo) throws SQLException {
+        // keys are checkpointed as text and bound back as the key column's own type
+        if (after != null) key.bind(ps, i++, after);
+        if (upTo != null) key.bind(ps, i, upTo);
+    }
+
+    /** Integer keys are cut into one range per worker; the last range is open so rows inserted meanwhile are included. */
+    private List<Range> split(Connection conn, String table, Key key) throws SQLException {
+        List<Range> out = new ArrayList<>();
+        if (workers > 1 && INTEGER_TYPES.contains(key.sqlType)) {
+            String k = dialect.quote(key.name);
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery(String.format("SELECT MIN(%s), MAX(%s) FROM %s", k, k, dialect.quote(table)))) {
+                rs.next();
+                long min = rs.getLong(1);
+                boolean empty = rs.wasNull();
+                long max = rs.getLong(2);
+                long step = (max - min) / workers + 1;
+                if (!empty && step > chunkSize / 4) {
+                    String lower = null;
+                    for (int i = 0; i < workers; i++) {
+                        String upper = i == workers - 1 ? null : Long.toString(min - 1 + step * (i + 1));
+                        out.add(new Range(i, lower, upper, 0, false));
+                        lower = upper;
+                    }
+                    return out;
+                }
+            }
+        }
+        out.add(new Range(0, null, null, 0, false));
+        return out;
+    }
+
+    private static void createCheckpointTable(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute(CREATE_CHECKPOINT_TABLE);
+            try {
+                st.executeQuery("SELECT SOURCE_HASH FROM " + CHECKPOINT_TABLE + " WHERE 1 = 0").close();
+            } catch (SQLException ex) {
+                // created before checkpoints were tied to their expression; old rows count as a different one
+                st.execute("ALTER TABLE " + CHECKPOINT_TABLE + " ADD COLUMN SOURCE_HASH VARCHAR(64)");
+            }
+        }
+    }
+
+    /** @return the checkpoints of this backfill; those of another expression or transform are deleted */
+    private static List<Range> loadRanges(Connection conn, String table, String column, String source) throws SQLException {
+        List<Range> out = new ArrayList<>();
+        boolean stale = false;
+        try (PreparedStatement ps = conn.prepareStatement("SELECT RANGE_NO, LAST_KEY, RANGE_END, ROWS_DONE, DONE, SOURCE_HASH FROM "
+                + CHECKPOINT_TABLE + " WHERE TABLE_NAME = ? AND COLUMN_NAME = ? ORDER BY RANGE_NO")) {
+            ps.setString(1, table);
+            ps.setString(2, column);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    out.add(new Range(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getLong(4), rs.getBoolean(5)));
+                    stale |= !source.equals(rs.getString(6));
+                }
+            }
+        }
+        if (!stale) return out;
+        deleteCheckpoints(conn, table, column);
+        return List.of();
+    }
+
+    private static void saveRanges(Connection conn, String table, String column, String source, List<Range> ranges) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO " + CHECKPOINT_TABLE
+                + " (TABLE_NAME, COLUMN_NAME, RANGE_NO, LAST_KEY, RANGE_END, ROWS_DONE, DONE, SOURCE_HASH) VALUES (?, ?, ?, ?, ?, 0, FALSE, ?)")) {
+            for (Range r : ranges) {
+                ps.setString(1, table);
+                ps.setString(2, column);
+                ps.setInt(3, r.no);
+                ps.setString(4, r.lastKey);
+                ps.setString(5, r.end);
+                ps.setString(6, source);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static void deleteCheckpoints(Connection conn, String table, String column) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM " + CHECKPOINT_TABLE + " WHERE TABLE_NAME = ? AND COLUMN_NAME = ?")) {
+            ps.setString(1, table);
+            ps.setString(2, column);
+            ps.executeUpdate();
+        }
+    }
+
+    private static Key primaryKey(Connection conn, String table) throws SQLException {
+        DatabaseMetaData md = conn.getMetaData();
+        List<String> pk = new ArrayList<>();
+        try (ResultSet rs = md.getPrimaryKeys(conn.getCatalog(), null, table)) {
+            while (rs.next()) pk.add(rs.getString("COLUMN_NAME"));
+        }
+        if (pk.size() != 1) {
+            throw new IllegalStateException("Backfill needs a single-column primary key on " + table + ", found " + pk);
+        }
+        try (ResultSet rs = md.getColumns(conn.getCatalog(), null, table, pk.get(0))) {
+            if (!rs.next()) return new Key(pk.get(0), Types.VARCHAR);
+            int type = rs.getInt("DATA_TYPE");
+            if (!INTEGER_TYPES.contains(type) && !TEXT_TYPES.contains(type)) {
+                throw new IllegalStateException("Backfill needs an integer or character primary key on " + table + ", "
+                        + pk.get(0) + " is " + rs.getString("TYPE_NAME"));
+            }
+            return new Key(pk.get(0), type);
+        }
+    }
+
+    private void throttle(long copied, long elapsedMillis) {
+        if (maxRowsPerSecond <= 0) return;
+        long wait = copied * 1000 / maxRowsPerSecond - elapsedMillis;
+        if (wait <= 0) return;
+        try {
+            Thread.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Backfill interrupted", e);
+        }
+    }
+
+    private record Key(String name, int sqlType) {
+        void bind(PreparedStatement ps, int i, String value) throws SQLException {
+            if (INTEGER_TYPES.contains(sqlType)) ps.setLong(i, Long.parseLong(value));
+            else ps.setString(i, value);
+        }
+    }
+
+    private record Chunk(String upper, int rows) {}
+
+    /** One worker's slice of the key space: keys after {@code lastKey} up to and including {@code end} (null: open). */
+    private static final class Range {
+        final int no;
+        final String end;
+        String lastKey;
+        long rowsDone;
+        final boolean done;
+
+        Range(int no, String lastKey, String end, long rowsDone, boolean done) {
+            this.no = no;
+            this.lastKey = lastKey;
+            this.end = end;
+            this.rowsDone = rowsDone;
+            this.done = done;
+        }
+    }
+
+    /** State shared by the workers of one backfill. */
+    private static final class Run {
+        final String table;
+        final String column;
+        final Key key;
+        final String expression;
+        final BackfillTransform transform;
+        final Consumer<BackfillProgress> progress;
+        final long start = System.nanoTime();
+        final AtomicLong copied = new AtomicLong();
+        final AtomicLong chunks = new AtomicLong();
+        final AtomicBoolean failed = new AtomicBoolean();
+        long resumedFrom;
+        volatile Throwable error;
+
+        Run(String table, String column, Key key, String expression, BackfillTransform transform, Consumer<BackfillProgress> progress) {
+            this.table = table;
+            this.column = column;
+            this.key = key;
+            this.expression = expression;
+            this.transform = transform;
+            this.progress = progress;
+        }
+
+        long elapsedMillis() {
+            return (System.nanoTime() - start) / 1_000_000;
+        }
+
+        String describe(Dialect dialect) {
+            return transform != null
+                    ? String.format("backfill %s.%s via Java transform of %s", table, column, transform.sourceColumns())
+                    : String.format("UPDATE %s SET %s = (%s) /* chunked */", dialect.quote(table), dialect.quote(column), expression);
+        }
+    }
+}
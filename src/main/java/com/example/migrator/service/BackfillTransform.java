@@ -0,0 +1,33 @@
+package com.example.migrator.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Computes the value of a backfilled column in Java, for what a SQL expression cannot express.
+ * Register it with {@link SchemaMigrationService#registerBackfillTransform} (or declare it as a bean;
+ * the bean name is the registered name) and reference it from a change as {@code backfillTransform}.
+ */
+public interface BackfillTransform {
+
+    /** Columns read for every row and passed to {@link #apply}. */
+    List<String> sourceColumns();
+
+    /** @param row the {@link #sourceColumns()} of one row, by column name */
+    Object apply(Map<String, Object> row);
+
+    static BackfillTransform of(List<String> sourceColumns, Function<Map<String, Object>, Object> fn) {
+        return new BackfillTransform() {
+            @Override
+            public List<String> sourceColumns() {
+                return sourceColumns;
+            }
+
+            @Override
+            public Object apply(Map<String, Object> row) {
+                return fn.apply(row);
+            }
+        };
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.migrator.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * 컴파일 시 plugin 모듈의 EntityIndexProcessor 가 모듈 루트에 남긴 엔티티 인덱스를 읽는다.
+ * 한 줄씩 탭으로 구분되며, 엔티티마다 {@code E} 줄 하나와 필드마다 {@code F} 줄이 뒤따른다.
+ * 값은 {@link ClassFileEntityReader} 가 바이트코드에서 뽑는 것과 같다.
+ */
+final class BuildEntityIndex {
+
+    static final String LOCATION = "META-INF/entity-migrator/entities.idx";
+    private static final String HEADER = "entity-migrator-index 1";
+
+    private BuildEntityIndex() {
+    }
+
+    /**
+     * @return 클래스 파일 상대 경로 → scanAll 의 엔티티 맵 (인덱스 순서)
+     * @throws IllegalArgumentException 형식이 잘못되었거나 모르는 버전인 경우
+     */
+    static LinkedHashMap<String, HashMap<String, Object>> read(Path file) throws IOException {
+        LinkedHashMap<String, HashMap<String, Object>> out = new LinkedHashMap<>();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(in.readLine())) {
+                throw new IllegalArgumentException("알 수 없는 엔티티 인덱스 형식");
+            }
+            List<Map<String, Object>> fields = null;
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                String[] v = line.split("\t", -1);
+                if (v[0].equals("E") && v.length == 5) {
+                    HashMap<String, Object> em = new HashMap<>();
+                    em.put("className", v[3]);
+                    em.put("qualifiedName", v[2]);
+                    em.put("tableName", v[4]);
+                    em.put("fields", fields = new ArrayList<>());
+                    out.put(v[1], em);
+                } else if (v[0].equals("F") && v.length == 5 && fields != null) {
+                    HashMap<String, Object> fm = new HashMap<>();
+                    fm.put("fieldName", v[1]);
+                    fm.put("type", v[2]);
+                    fm.put("columnName", v[3]);
+                    fm.put("primaryKey", v[4].equals("1"));
+                    fields.add(fm);
+                } else {
+                    throw new IllegalArgumentException("잘못된 엔티티 인덱스 줄: " + line);
+                }
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.migrator.service;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cancels a running migrate: statements in flight are cancelled through JDBC, which fails and rolls
+ * back their table, and tables not started yet are reported as {@value #CANCELLED}.
+ */
+public final class CancelToken {
+
+    public static final String CANCELLED = "CANCELLED";
+
+    private volatile boolean cancelled;
+    private final Set<Statement> running = ConcurrentHashMap.newKeySet();
+
+    public void cancel() {
+        cancelled = true;
+        for (Statement st : running) {
+            try { st.cancel(); } catch (SQLException ignore) {}
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Throws when cancelled, so the caller rolls back instead of committing. */
+    void check() throws SQLException {
+        if (cancelled) throw new SQLException(CANCELLED);
+    }
+
+    /** Makes {@code st} cancellable until the registration is closed. */
+    Registration enter(Statement st) throws SQLException {
+        running.add(st);
+        if (cancelled) {
+            running.remove(st);
+            throw new SQLException(CANCELLED);
+        }
+        return () -> running.remove(st);
+    }
+
+    interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.migrator.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * 모듈 루트 아래 모든 디렉터리를 WatchService 에 등록하고, 바뀐 경로를 모아서 전달한다.
+ * Gradle 빌드처럼 이벤트가 몰려오면 debounce 동안 조용해질 때까지 기다렸다가 한 번에 넘긴다.
+ * 콜백에 null 이 넘어오면 이벤트가 유실된 것(OVERFLOW)이므로 전체 재스캔이 필요하다.
+ */
+final class ClassDirectoryWatcher implements Closeable {
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+    private final long debounceMillis;
+    private final Consumer<Set<Path>> onChange;
+    private final Thread thread;
+
+    ClassDirectoryWatcher(Collection<Path> moduleRoots, long debounceMillis, Consumer<Set<Path>> onChange) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.debounceMillis = debounceMillis;
+        this.onChange = onChange;
+        for (Path root : moduleRoots) {
+            registerTree(root);
+        }
+        this.thread = new Thread(this::run, "entity-class-watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void registerTree(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                keys.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void run() {
+        Set<Path> pending = new HashSet<>();
+        boolean overflow = false;
+        try {
+            while (true) {
+                WatchKey key = pending.isEmpty() && !overflow
+                        ? watchService.take()
+                        : watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    // debounce 시간 동안 조용했음 → 모아 둔 변경 반영
+                    try {
+                        onChange.accept(overflow ? null : Set.copyOf(pending));
+                    } catch (RuntimeException ignore) {
+                        // 감시 스레드는 계속 살아 있어야 한다
+                    }
+                    pending.clear();
+                    overflow = false;
+                    continue;
+                }
+                Path dir = keys.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW || dir == null) {
+                        overflow = true;
+                        continue;
+                    }
+                    Path path = dir.resolve((Path) event.context());
+                    if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                        // 새 패키지 디렉터리: 등록 전에 생긴 파일도 있으므로 디렉터리째 넘긴다
+                        try {
+                            registerTree(path);
+                        } catch (IOException e) {
+                            overflow = true;
+                        }
+                        pending.add(path);
+                    } else if (path.toString().endsWith(".class") || event.kind() == ENTRY_DELETE) {
+                        pending.add(path);
+                    }
+                }
+                if (!key.reset()) {
+                    keys.remove(key);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 종료
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        watchService.close();
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.migrator.service;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 클래스 파일의 상수 풀과 RuntimeVisibleAnnotations 속성을 직접 읽어
+ * {@code @Entity/@Table/@Column/@Id} (jakarta, javax) 정보를 추출한다.
+ * 클래스를 로딩하지 않으므로 static 초기화나 의존 클래스 해석이 일어나지 않는다.
+ */
+final class ClassFileEntityReader {
+
+    private static final Set<String> ENTITY = Set.of("Ljakarta/persistence/Entity;", "Ljavax/persistence/Entity;");
+    private static final Set<String> TABLE = Set.of("Ljakarta/persistence/Table;", "Ljavax/persistence/Table;");
+    private static final Set<String> COLUMN = Set.of("Ljakarta/persistence/Column;", "Ljavax/persistence/Column;");
+    private static final Set<String> ID = Set.of("Ljakarta/persistence/Id;", "Ljavax/persistence/Id;");
+
+    private final ByteBuffer buf;
+    private String[] utf8;
+    private int[] classNameIndex;
+
+    private ClassFileEntityReader(byte[] bytes) {
+        this.buf = ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * @return scanAll 의 엔티티 맵 형식, 엔티티가 아니면 null
+     * @throws IllegalArgumentException 클래스 파일 형식이 잘못된 경우
+     */
+    static HashMap<String, Object> read(byte[] bytes) {
+        try {
+            return new ClassFileEntityReader(bytes).readEntity();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("잘린 클래스 파일", e);
+        }
+    }
+
+    private HashMap<String, Object> readEntity() {
+        if (buf.getInt() != 0xCAFEBABE) {
+            throw new IllegalArgumentException("클래스 파일이 아닙니다");
+        }
+        buf.getShort(); // minor
+        buf.getShort(); // major
+        readConstantPool();
+
+        buf.getShort(); // access flags
+        String internalName = utf8[classNameIndex[u2()]];
+        buf.getShort(); // super
+        skip(u2() * 2); // interfaces
+
+        // 필드는 클래스 어노테이션(파일 끝)을 보기 전에 읽어 둔다
+        int fieldCount = u2();
+        ArrayList<Map<String, Object>> fields = new ArrayList<>(fieldCount);
+        for (int i = 0; i < fieldCount; i++) {
+            buf.getShort(); // access flags
+            String name = utf8[u2()];
+            String descriptor = utf8[u2()];
+            String columnName = name;
+            boolean isPk = false;
+            int attrCount = u2();
+            for (int a = 0; a < attrCount; a++) {
+                String attr = utf8[u2()];
+                int len = buf.getInt();
+                if (!"RuntimeVisibleAnnotations".equals(attr)) {
+                    skip(len);
+                    continue;
+                }
+                for (Map.Entry<String, String> ann : readAnnotations().entrySet()) {
+                    if (COLUMN.contains(ann.getKey()) && ann.getValue() != null && !ann.getValue().isEmpty()) {
+                        if (columnName.equals(name)) columnName = ann.getValue();
+                    } else if (ID.contains(ann.getKey())) {
+                        isPk = true;
+                    }
+                }
+            }
+            HashMap<String, Object> fm = new HashMap<>();
+            fm.put("fieldName", name);
+            fm.put("type", simpleTypeName(descriptor));
+            fm.put("columnName", columnName);
+            fm.put("primaryKey", isPk);
+            fields.add(fm);
+        }
+
+        int methodCount = u2();
+        for (int i = 0; i < methodCount; i++) {
+            skip(6);
+            skipAttributes();
+        }
+
+        boolean entity = false;
+        String tableName = null;
+        int attrCount = u2();
+        for (int a = 0; a < attrCount; a++) {
+            String attr = utf8[u2()];
+            int len = buf.getInt();
+            if (!"RuntimeVisibleAnnotations".equals(attr)) {
+                skip(len);
+                continue;
+            }
+            for (Map.Entry<String, String> ann : readAnnotations().entrySet()) {
+                if (ENTITY.contains(ann.getKey())) {
+                    entity = true;
+                } else if (TABLE.contains(ann.getKey()) && ann.getValue() != null && !ann.getValue().isEmpty()) {
+                    if (tableName == null) tableName = ann.getValue();
+                }
+            }
+        }
+        if (!entity) return null;
+
+        String qualifiedName = internalName.replace('/', '.');
+        String simpleName = simpleName(internalName);
+        HashMap<String, Object> em = new HashMap<>();
+        em.put("className", simpleName);
+        em.put("qualifiedName", qualifiedName);
+        em.put("tableName", tableName != null ? tableName : simpleName.toLowerCase());
+        em.put("fields", fields);
+        return em;
+    }
+
+    private void readConstantPool() {
+        int count = u2();
+        utf8 = new String[count];
+        classNameIndex = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = buf.get() & 0xFF;
+            switch (tag) {
+                case 1 -> {
+                    int len = u2();
+                    utf8[i] = decodeUtf8(len);
+                }
+                case 7 -> classNameIndex[i] = u2();
+                case 8, 16, 19, 20 -> skip(2);
+                case 15 -> skip(3);
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> skip(4);
+                case 5, 6 -> {
+                    skip(8);
+                    i++; // long/double 은 두 칸을 차지
+                }
+                default -> throw new IllegalArgumentException("알 수 없는 상수 풀 태그: " + tag);
+            }
+        }
+    }
+
+    /** 어노테이션 타입 → name 요소 값(없으면 null). 우리가 보는 건 name 하나뿐이다. */
+    private Map<String, String> readAnnotations() {
+        int num = u2();
+        Map<String, String> out = new LinkedHashMap<>();
+        for (int i = 0; i < num; i++) {
+            String type = utf8[u2()];
+            String name = null;
+            int pairs = u2();
+            for (int p = 0; p < pairs; p++) {
+                String element = utf8[u2()];
+                String value = readElementValue();
+                if ("name".equals(element)) name = value;
+            }
+            out.put(type, name);
+        }
+        return out;
+    }
+
+    /** 문자열 상수면 값을 돌려주고 나머지는 건너뛴다. */
+    private String readElementValue() {
+        char tag = (char) (buf.get() & 0xFF);
+        switch (tag) {
+            case 's':
+                return utf8[u2()];
+            case 'B': case 'C': case 'D': case 'F': case 'I': case 'J': case 'S': case 'Z': case 'c':
+                skip(2);
+                return null;
+            case 'e':
+                skip(4);
+                return null;
+            case '@':
+                buf.getShort();
+                int pairs = u2();
+                for (int p = 0; p < pairs; p++) {
+                    buf.getShort();
+                    readElementValue();
+                }
+                return null;
+            case '[':
+                int n = u2();
+                for (int k = 0; k < n; k++) readElementValue();
+                return null;
+            default:
+                throw new IllegalArgumentException("알 수 없는 어노테이션 값 태그: " + tag);
+        }
+    }
+
+    private void skipAttributes() {
+        int count = u2();
+        for (int a = 0; a < count; a++) {
+            buf.getShort();
+            skip(buf.getInt());
+        }
+    }
+
+    private String decodeUtf8(int len) {
+        // 상수 풀은 modified UTF-8 이지만 식별자/어노테이션 값에는 일반 UTF-8 로 충분하다
+        String s = new String(buf.array(), buf.position(), len, StandardCharsets.UTF_8);
+        skip(len);
+        return s;
+    }
+
+    private int u2() {
+        return buf.getShort() & 0xFFFF;
+    }
+
+    private void skip(int n) {
+        buf.position(buf.position() + n);
+    }
+
+    private static String simpleName(String internalName) {
+        String s = internalName.substring(internalName.lastIndexOf('/') + 1);
+        return s.substring(s.lastIndexOf('$') + 1);
+    }
+
+    static String simpleTypeName(String descriptor) {
+        int dims = 0;
+        while (descriptor.charAt(dims) == '[') dims++;
+        String base = switch (descriptor.charAt(dims)) {
+            case 'B' -> "byte";
+            case 'C' -> "char";
+            case 'D' -> "double";
+            case 'F' -> "float";
+            case 'I' -> "int";
+            case 'J' -> "long";
+            case 'S' -> "short";
+            case 'Z' -> "boolean";
+            case 'L' -> simpleName(descriptor.substring(dims + 1, descriptor.length() - 1));
+            default -> throw new IllegalArgumentException("잘못된 필드 디스크립터: " + descriptor);
+        };
+        return base + "[]".repeat(dims);
+    }
+}
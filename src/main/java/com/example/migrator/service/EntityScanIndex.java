@@ -0,0 +1,109 @@
+package com.example.migrator.service;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 클래스 파일별 크기/수정시각/해시와 추출된 엔티티 메타데이터를 기억하는 스캔 인덱스.
+ * 디스크에 저장해 두고 다음 스캔에서 바뀐 클래스 파일만 다시 읽는다.
+ * 병렬 스캔에서 여러 스레드가 동시에 갱신할 수 있다.
+ */
+class EntityScanIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int VERSION = 3;
+
+    private final int version;
+    private final String sourceRoot;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private transient volatile boolean dirty;
+
+    private EntityScanIndex(String sourceRoot) {
+        this.version = VERSION;
+        this.sourceRoot = sourceRoot;
+    }
+
+    static EntityScanIndex load(Path file, String sourceRoot) {
+        if (Files.isRegularFile(file)) {
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                Object o = in.readObject();
+                if (o instanceof EntityScanIndex idx && idx.version == VERSION && sourceRoot.equals(idx.sourceRoot)) {
+                    return idx;
+                }
+            } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                // 깨졌거나 예전 형식의 인덱스는 버리고 새로 만든다
+            }
+        }
+        EntityScanIndex idx = new EntityScanIndex(sourceRoot);
+        idx.dirty = true;
+        return idx;
+    }
+
+    void save(Path file) throws IOException {
+        if (!dirty) return;
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeObject(this);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+
+    Entry get(String classFile) {
+        return entries.get(classFile);
+    }
+
+    void put(String classFile, Entry entry) {
+        entries.put(classFile, entry);
+        dirty = true;
+    }
+
+    /** 이번 스캔에서 보이지 않은(삭제된) 클래스 파일 항목을 정리한다. */
+    void retainOnly(Set<String> seen) {
+        if (entries.keySet().retainAll(seen)) {
+            dirty = true;
+        }
+    }
+
+    /** 파일 하나, 또는 디렉터리 아래 모든 항목을 지운다. */
+    void removeUnder(String path) {
+        String dirPrefix = path.endsWith(File.separator) ? path : path + File.separator;
+        if (entries.keySet().removeIf(k -> k.equals(path) || k.startsWith(dirPrefix))) {
+            dirty = true;
+        }
+    }
+
+    List<Map<String, Object>> entities() {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (Entry e : entries.values()) {
+            if (e.entity != null) out.add(e.entity);
+        }
+        out.sort(Comparator.comparing(m -> (String) m.get("qualifiedName")));
+        return out;
+    }
+
+    static final class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final long size;
+        final long modified;
+        final long hash;
+        /** 엔티티가 아니면 null */
+        final HashMap<String, Object> entity;
+
+        Entry(long size, long modified, long hash, HashMap<String, Object> entity) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.entity = entity;
+        }
+
+        boolean sameStat(long size, long modified) {
+            return this.size == size && this.modified == modified;
+        }
+    }
+}
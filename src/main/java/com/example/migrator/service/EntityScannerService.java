@@ -1,170 +1,504 @@
 package com.example.migrator.service;
 
-import jakarta.persistence.Entity;
-import org.reflections.Reflections;
-import org.reflections.scanners.Scanners;
-import org.reflections.util.ConfigurationBuilder;
+import com.example.migrator.dto.ScannedEntity;
+import com.example.migrator.dto.ScannedField;
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.net.URL;
+import java.io.UncheckedIOException;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
 
 @Service
 public class EntityScannerService {
 
+    private static final String PROP_INDEX_FILE = "scan.index.file";
+    private static final String PROP_PARALLEL = "scan.parallel";
+    private static final String PROP_PARALLELISM = "scan.parallelism";
+    private static final String PROP_WATCH = "scan.watch";
+    private static final String PROP_WATCH_DEBOUNCE = "scan.watch.debounceMs";
+    private static final String PROP_SOURCE_ROOT = "scan.source.root";
+    private static final String PROP_BUILD_INDEX = "scan.buildIndex";
+    private static final String PROP_STREAM_BUFFER = "scan.stream.buffer";
+
+    // scanStream 의 큐 끝 표시
+    private static final ScannedEntity END_OF_STREAM = new ScannedEntity();
+
+    // 스캔 인덱스에서 빌드 엔티티 인덱스 파일 항목의 hash 값: 믿을 수 있음 / 이 크기·수정시각으로는 믿을 수 없음
+    private static final long BUILD_INDEX_TRUSTED = 0;
+    private static final long BUILD_INDEX_STALE = -1;
+
+    private EntityScanIndex index;
+    private Path indexFile;
+    // scanAll 이 락 없이 읽는다
+    private volatile ClassDirectoryWatcher watcher;
+    private volatile Map<String, Object> snapshot;
+    // preload 로 채운 스냅샷: 다음 rescan 전까지 scanAll 이 그대로 돌려준다
+    private volatile boolean warm;
+    private final List<Consumer<Map<String, Object>>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 감시 모드(-Dscan.watch=true)에서는 WatchService 가 갱신해 둔 최신 스냅샷을 바로 돌려주고,
+     * 아니면 매번 (증분) 스캔한다. 저장된 스냅샷으로 preload 했으면 첫 rescan 전까지는 그것을 돌려준다.
+     */
     public Map<String, Object> scanAll() throws IOException {
-        String sourceRoot = System.getProperty("scan.source.root");
-        if (sourceRoot == null) {
-            throw new IllegalStateException("JVM 옵션 -Dscan.source.root 가 필요합니다.");
+        Map<String, Object> current = snapshot;
+        if (current != null && (watcher != null || warm)) {
+            return current;
         }
+        return rescan();
+    }
 
-        // 1. URL 모으기
-        List<URL> urls = new ArrayList<>();
-        try (var paths = Files.walk(Paths.get(sourceRoot))) {
-            paths.filter(Files::isDirectory)
-                    .filter(p -> p.toString().endsWith("classes/java/main"))
-                    .forEach(p -> {
-                        try {
-                            urls.add(p.toUri().toURL());
-                        } catch (Exception ignored) {}
-                    });
+    public synchronized Map<String, Object> rescan() throws IOException {
+        // 1. 인덱스 로드 (메모리에 있으면 재사용)
+        PhaseTimings timings = new PhaseTimings();
+        long start = PhaseTimings.start();
+        String sourceRoot = loadIndex();
+        timings.stop("scan.index", start);
+
+        // 2. 모듈 루트(classes/java/main)를 찾아 크기/수정시각이 바뀐 클래스 파일만 바이트코드에서 다시 읽기
+        start = PhaseTimings.start();
+        ScanRun run = new ScanRun(null, timings);
+        if (Boolean.getBoolean(PROP_PARALLEL)) {
+            int parallelism = Integer.getInteger(PROP_PARALLELISM, Runtime.getRuntime().availableProcessors());
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                // scan.source.root 자체가 모듈 루트일 수 있다 (CLI 는 .../classes/java/main 을 넘긴다)
+                Path top = Paths.get(sourceRoot);
+                boolean topIsRoot = isModuleRoot(top);
+                if (topIsRoot) run.moduleRoots.add(top);
+                if (!topIsRoot || !readBuildIndex(top, run)) {
+                    pool.invoke(new DirectoryScanTask(top, topIsRoot, run));
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            try (var paths = Files.walk(Paths.get(sourceRoot))) {
+                paths.filter(Files::isDirectory)
+                        .filter(EntityScannerService::isModuleRoot)
+                        .forEach(run.moduleRoots::add);
+            }
+            for (Path root : run.moduleRoots) {
+                if (!readBuildIndex(root, run)) scanTree(root, run);
+            }
         }
+        timings.stop("scan.walk", start);
+        start = PhaseTimings.start();
+        index.retainOnly(run.seen);
+        index.save(indexFile);
+        timings.stop("scan.index", start);
 
-        // 2. Reflections 구성
-        Reflections reflections = new Reflections(new ConfigurationBuilder()
-                .setUrls(urls)
-                .setScanners(Scanners.TypesAnnotated, Scanners.SubTypes));
+        // 3. 감시 모드면 발견한 모듈 루트에 WatchService 등록
+        if (Boolean.getBoolean(PROP_WATCH)) {
+            if (watcher != null) watcher.close();
+            watcher = new ClassDirectoryWatcher(run.moduleRoots, Long.getLong(PROP_WATCH_DEBOUNCE, 500L), this::onClassFilesChanged);
+        }
+        return publish(run.errors, timings);
+    }
 
-        Set<Class<?>> ents = new HashSet<>();
-        try { ents.addAll(reflections.getTypesAnnotatedWith(Entity.class)); } catch (Throwable ignore) {}
-        try { ents.addAll(reflections.getTypesAnnotatedWith(javax.persistence.Entity.class)); } catch (Throwable ignore) {}
+    /**
+     * 스트리밍 스캔: 엔티티를 찾는 즉시 (인덱스 적중 포함) sink 로 넘기고, 전체 결과를 응답용으로 모으지 않는다.
+     * 발견 순서대로 내보내야 하므로 -Dscan.parallel 과 관계없이 순차로 탐색한다.
+     * 스캔은 별도 (가상) 스레드에서 락을 잡고 돌고, 호출 스레드는 락 밖에서 큐를 비우며 sink 를 부른다.
+     * 큐는 -Dscan.stream.buffer 개(기본 256)까지만 쌓인다: 그보다 느린 클라이언트는 스캔을 기다리게 하지만
+     * 결과 전체를 메모리에 들고 있지는 않는다. sink 가 실패하면 (클라이언트 연결 끊김) 스캔도 멈춘다.
+     * @return {count, errors, scannedAt}
+     */
+    public Map<String, Object> scanStream(Consumer<ScannedEntity> sink) throws IOException {
+        BlockingQueue<ScannedEntity> queue = new ArrayBlockingQueue<>(Math.max(1, Integer.getInteger(PROP_STREAM_BUFFER, 256)));
+        AtomicBoolean abandoned = new AtomicBoolean();
+        Consumer<ScannedEntity> enqueue = entity -> {
+            try {
+                if (abandoned.get()) throw new CancellationException("스트리밍 클라이언트가 끊겼습니다.");
+                queue.put(entity);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("스트리밍 스캔이 중단되었습니다.");
+            }
+        };
+        CompletableFuture<Map<String, Object>> scan = CompletableFuture.supplyAsync(() -> {
+            try {
+                return scanStreamLocked(enqueue);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                // 끊긴 뒤에는 아무도 읽지 않으므로 끝 표시를 넣으려고 기다리지 않는다
+                if (!abandoned.get()) enqueue.accept(END_OF_STREAM);
+            }
+        }, r -> Thread.ofVirtual().name("entity-scan-stream").start(r));
+        try {
+            for (ScannedEntity e = queue.take(); e != END_OF_STREAM; e = queue.take()) {
+                sink.accept(e);
+            }
+            return scan.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("스트리밍 스캔이 중단되었습니다.", e);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) throw io.getCause();
+            if (e.getCause() instanceof RuntimeException rt) throw rt;
+            throw e;
+        } finally {
+            if (!scan.isDone()) {
+                // 표시를 먼저 세우고 큐를 비운다: put 에서 막혀 있던 스캔은 한 번 더 넣은 뒤 다음 엔티티에서 멈춘다
+                abandoned.set(true);
+                queue.clear();
+            }
+        }
+    }
 
-        // 3. JSON 형태로 결과
-        Map<String,Object> out = new HashMap<>();
-        List<Map<String,Object>> entities = new ArrayList<>();
-
-        for (Class<?> cls : ents) {
-            Map<String,Object> em = new HashMap<>();
-            em.put("className", cls.getSimpleName());
-            em.put("qualifiedName", cls.getName());
-
-            // 테이블명
-            String tableName = cls.getSimpleName().toLowerCase();
-            var tJakarta = cls.getAnnotation(jakarta.persistence.Table.class);
-            var tJavax = cls.getAnnotation(javax.persistence.Table.class);
-            if (tJakarta != null && !tJakarta.name().isEmpty()) {
-                tableName = tJakarta.name();
-            } else if (tJavax != null && !tJavax.name().isEmpty()) {
-                tableName = tJavax.name();
+    private synchronized Map<String, Object> scanStreamLocked(Consumer<ScannedEntity> sink) throws IOException {
+        PhaseTimings timings = new PhaseTimings();
+        long start = PhaseTimings.start();
+        String sourceRoot = loadIndex();
+        timings.stop("scan.index", start);
+        start = PhaseTimings.start();
+        ScanRun run = new ScanRun(entity -> sink.accept(toScannedEntity(entity)), timings);
+        try (var paths = Files.walk(Paths.get(sourceRoot))) {
+            Iterator<Path> roots = paths.filter(Files::isDirectory).filter(EntityScannerService::isModuleRoot).iterator();
+            while (roots.hasNext()) {
+                Path root = roots.next();
+                run.moduleRoots.add(root);
+                if (!readBuildIndex(root, run)) scanTree(root, run);
             }
-            em.put("tableName", tableName);
-
-            // 필드들
-            List<Map<String,Object>> fields = new ArrayList<>();
-            for (var f : cls.getDeclaredFields()) {
-                Map<String,Object> fm = new HashMap<>();
-                fm.put("fieldName", f.getName());
-                fm.put("type", f.getType().getSimpleName());
-
-                String columnName = f.getName();
-                var cJakarta = f.getAnnotation(jakarta.persistence.Column.class);
-                var cJavax = f.getAnnotation(javax.persistence.Column.class);
-                if (cJakarta != null && !cJakarta.name().isEmpty()) {
-                    columnName = cJakarta.name();
-                } else if (cJavax != null && !cJavax.name().isEmpty()) {
-                    columnName = cJavax.name();
-                }
-                fm.put("columnName", columnName);
+        }
+        timings.stop("scan.walk", start);
+        start = PhaseTimings.start();
+        index.retainOnly(run.seen);
+        index.save(indexFile);
+        timings.stop("scan.index", start);
+        // 감시 모드의 스냅샷과 SSE 구독자도 같이 갱신
+        Map<String, Object> published = publish(run.errors, timings);
+
+        List<String> sortedErrors = new ArrayList<>(run.errors);
+        Collections.sort(sortedErrors);
+        Map<String, Object> out = new HashMap<>();
+        out.put("count", run.found);
+        out.put("errors", sortedErrors);
+        out.put("scannedAt", published.get("scannedAt"));
+        out.put("timings", published.get("timings"));
+        return out;
+    }
+
+    private String loadIndex() throws IOException {
+        String sourceRoot = System.getProperty(PROP_SOURCE_ROOT);
+        if (sourceRoot == null) {
+            throw new IllegalStateException("JVM 옵션 -Dscan.source.root 가 필요합니다.");
+        }
+        Path file = indexFile(sourceRoot);
+        if (index == null || !file.equals(indexFile)) {
+            index = EntityScanIndex.load(file, sourceRoot);
+            indexFile = file;
+        }
+        return sourceRoot;
+    }
 
-                boolean isPk = f.isAnnotationPresent(jakarta.persistence.Id.class)
-                        || f.isAnnotationPresent(javax.persistence.Id.class);
-                fm.put("primaryKey", isPk);
+    @SuppressWarnings("unchecked")
+    private static ScannedEntity toScannedEntity(Map<String, Object> entity) {
+        List<ScannedField> fields = new ArrayList<>();
+        for (Map<String, Object> f : (List<Map<String, Object>>) entity.get("fields")) {
+            fields.add(new ScannedField((String) f.get("fieldName"), (String) f.get("type"),
+                    (String) f.get("columnName"), Boolean.TRUE.equals(f.get("primaryKey"))));
+        }
+        return new ScannedEntity((String) entity.get("className"), (String) entity.get("qualifiedName"),
+                (String) entity.get("tableName"), fields);
+    }
 
-                fields.add(fm);
+    /**
+     * 감시 스레드에서 debounce 된 변경 묶음을 받아 인덱스와 스냅샷을 증분 갱신한다.
+     * @param changed 바뀐 클래스 파일/디렉터리, null 이면 이벤트 유실로 전체 재스캔
+     */
+    private synchronized void onClassFilesChanged(Set<Path> changed) {
+        try {
+            if (changed == null) {
+                // 전체 재스캔은 감시자를 닫고 새로 만드므로 감시 스레드가 아닌 별도 스레드에서 돌린다
+                Thread.ofVirtual().name("entity-rescan").start(() -> {
+                    try {
+                        rescan();
+                    } catch (IOException | RuntimeException ignore) {
+                        // 다음 변경이나 ?refresh=true 때 다시 스캔한다
+                    }
+                });
+                return;
+            }
+            PhaseTimings timings = new PhaseTimings();
+            long start = PhaseTimings.start();
+            ScanRun run = new ScanRun(null, timings);
+            for (Path p : changed) {
+                if (Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+                    scanTree(p, run);
+                } else if (Files.isRegularFile(p, LinkOption.NOFOLLOW_LINKS)) {
+                    scanClassFile(p, Files.readAttributes(p, BasicFileAttributes.class), run);
+                } else {
+                    // 삭제된 파일 또는 디렉터리
+                    index.removeUnder(p.toString());
+                }
             }
-            em.put("fields", fields);
-            entities.add(em);
+            timings.stop("scan.walk", start);
+            start = PhaseTimings.start();
+            index.save(indexFile);
+            timings.stop("scan.index", start);
+            publish(run.errors, timings);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
 
+    private Map<String, Object> publish(Collection<String> errors, PhaseTimings timings) {
+        // JSON 형태로 결과 (병렬 여부와 관계없이 같은 순서)
+        List<Map<String, Object>> entities = index.entities();
+        List<String> sortedErrors = new ArrayList<>(errors);
+        Collections.sort(sortedErrors);
+        Map<String,Object> out = new HashMap<>();
         out.put("count", entities.size());
         out.put("entities", entities);
+        out.put("errors", sortedErrors);
         out.put("scannedAt", new Date().toString());
+        // scan.walk 는 scan.extract(바뀐 클래스 파일 읽기+파싱, 병렬이면 스레드 합계)를 포함한다
+        out.put("timings", timings.toMap());
+        snapshot = out;
+        warm = false;
+        for (Consumer<Map<String, Object>> l : listeners) {
+            l.accept(out);
+        }
         return out;
     }
 
-    private static final String PROP_SOURCE_ROOT = "scan.source.root";
-
     /**
-     * 엔티티 파일 수정
-     * @param entityMap {"qualifiedName", "newTableName", "fields":[{newColumnName, newType, primaryKey}]}
+     * 디스크에 저장해 둔 엔티티 모델(SnapshotStore)로 스캔 없이 시작한다. 이미 스캔했으면 아무것도 하지 않고,
+     * 변경 리스너에도 알리지 않는다 (새로 찾은 것이 없으므로).
      */
-    public void updateEntity(Map<String, Object> entityMap) throws IOException {
-        String root = System.getProperty(PROP_SOURCE_ROOT);
-        if (root == null || root.isBlank()) {
-            throw new IllegalStateException("필수 JVM 옵션 -D" + PROP_SOURCE_ROOT + " 가 없습니다.");
+    public synchronized void preload(List<Map<String, Object>> entities, String scannedAt) {
+        if (snapshot != null) return;
+        Map<String, Object> out = new HashMap<>();
+        out.put("count", entities.size());
+        out.put("entities", entities);
+        out.put("errors", List.of());
+        out.put("scannedAt", scannedAt);
+        out.put("timings", Map.of());
+        out.put("preloaded", true);
+        snapshot = out;
+        warm = true;
+    }
+
+    /** 스냅샷이 바뀔 때마다 호출된다 (감시 모드의 변경 알림 포함). */
+    public void addChangeListener(Consumer<Map<String, Object>> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(Consumer<Map<String, Object>> listener) {
+        listeners.remove(listener);
+    }
+
+    @PreDestroy
+    public synchronized void stopWatching() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
         }
+    }
 
-        // 대상 클래스 경로 계산
-        String qualifiedName = (String) entityMap.get("qualifiedName");
-        String relativePath = qualifiedName.replace(".", "/") + ".java";
-        Path filePath = Paths.get(root).resolve(relativePath);
+    /**
+     * 컴파일 시 어노테이션 프로세서가 남긴 엔티티 인덱스(META-INF/entity-migrator/entities.idx)로
+     * 모듈 루트를 처리한다. 디렉터리를 순회하거나 클래스 파일을 읽지 않고, 인덱스에 적힌 클래스 파일의 통계만 확인한다.
+     * 인덱스가 그대로인데 적힌 클래스 파일이 사라졌거나 바뀌었으면 (프로세서 없이 다시 컴파일된 경우)
+     * 그 인덱스는 다시 쓰일 때까지 믿지 않는다.
+     * @return 인덱스가 없거나 믿을 수 없으면 false: 호출한 쪽에서 디렉터리를 스캔한다
+     */
+    private boolean readBuildIndex(Path root, ScanRun run) throws IOException {
+        if (!Boolean.parseBoolean(System.getProperty(PROP_BUILD_INDEX, "true"))) return false;
+        Path file = root.resolve(BuildEntityIndex.LOCATION);
+        if (!Files.isRegularFile(file)) return false;
+
+        long start = PhaseTimings.start();
+        String key = file.toString();
+        run.seen.add(key);
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attrs.size();
+        long modified = attrs.lastModifiedTime().toMillis();
+        EntityScanIndex.Entry prev = index.get(key);
+        boolean known = prev != null && prev.sameStat(size, modified);
+        if (known && prev.hash == BUILD_INDEX_STALE) return false;
 
-        if (!Files.exists(filePath)) {
-            throw new IllegalStateException("대상 엔티티 파일 없음: " + filePath);
+        Map<String, HashMap<String, Object>> entities;
+        try {
+            entities = BuildEntityIndex.read(file);
+        } catch (IllegalArgumentException ex) {
+            index.put(key, new EntityScanIndex.Entry(size, modified, BUILD_INDEX_STALE, null));
+            run.errors.add(file + ": " + ex.getMessage());
+            return false;
+        }
+        Map<String, EntityScanIndex.Entry> fresh = new LinkedHashMap<>();
+        for (Map.Entry<String, HashMap<String, Object>> e : entities.entrySet()) {
+            Path classFile = root.resolve(e.getKey());
+            if (!Files.isRegularFile(classFile)) {
+                fresh = null;
+                break;
+            }
+            BasicFileAttributes ca = Files.readAttributes(classFile, BasicFileAttributes.class);
+            long cs = ca.size();
+            long cm = ca.lastModifiedTime().toMillis();
+            EntityScanIndex.Entry seenBefore = index.get(classFile.toString());
+            if (known && (seenBefore == null || !seenBefore.sameStat(cs, cm))) {
+                fresh = null;
+                break;
+            }
+            fresh.put(classFile.toString(), new EntityScanIndex.Entry(cs, cm, 0, e.getValue()));
+        }
+        if (fresh == null) {
+            index.put(key, new EntityScanIndex.Entry(size, modified, BUILD_INDEX_STALE, null));
+            return false;
         }
 
-        // 파일 읽기
-        List<String> lines = Files.readAllLines(filePath);
+        if (!known) index.put(key, new EntityScanIndex.Entry(size, modified, BUILD_INDEX_TRUSTED, null));
+        for (Map.Entry<String, EntityScanIndex.Entry> e : fresh.entrySet()) {
+            run.seen.add(e.getKey());
+            // 이미 믿고 있던 인덱스면 저장된 항목을 그대로 두어 인덱스 파일을 다시 쓰지 않는다
+            if (!known) index.put(e.getKey(), e.getValue());
+            run.found(known ? index.get(e.getKey()).entity : e.getValue().entity);
+        }
+        run.timings.stop("scan.buildIndex", start);
+        return true;
+    }
 
-        // 테이블명 변경
-        String newTable = (String) entityMap.get("newTableName");
-        if (newTable != null && !newTable.isBlank()) {
-            for (int i = 0; i < lines.size(); i++) {
-                if (lines.get(i).contains("@Table")) {
-                    lines.set(i, lines.get(i).replaceFirst("name\\s*=\\s*\".*?\"", "name=\"" + newTable + "\""));
-                }
+    private void scanTree(Path root, ScanRun run) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                scanClassFile(file, attrs, run);
+                return FileVisitResult.CONTINUE;
             }
+        });
+    }
+
+    private void scanClassFile(Path file, BasicFileAttributes attrs, ScanRun run) throws IOException {
+        if (!file.toString().endsWith(".class")) return;
+        String key = file.toString();
+        run.seen.add(key);
+        long size = attrs.size();
+        long modified = attrs.lastModifiedTime().toMillis();
+        EntityScanIndex.Entry prev = index.get(key);
+        if (prev != null && prev.sameStat(size, modified)) {
+            run.found(prev.entity);
+            return;
         }
 
-        // 컬럼명, 타입, PK 변경
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> fields = (List<Map<String, Object>>) entityMap.get("fields");
-        if (fields != null) {
-            for (Map<String, Object> f : fields) {
-                String fieldName = (String) f.get("fieldName");
-                String newColumn = (String) f.get("newColumnName");
-                String newType = (String) f.get("newType");
-                boolean pk = Boolean.TRUE.equals(f.get("primaryKey"));
-
-                for (int i = 0; i < lines.size(); i++) {
-                    String line = lines.get(i);
-
-                    // 필드 선언 줄 찾기
-                    if (line.contains(fieldName)) {
-                        // 타입 변경
-                        if (newType != null && !newType.isBlank()) {
-                            lines.set(i, line.replaceFirst("\\b\\w+\\b\\s+" + fieldName, newType + " " + fieldName));
-                        }
-                    }
+        long start = PhaseTimings.start();
+        byte[] bytes = Files.readAllBytes(file);
+        long hash = hash(bytes);
+        if (prev != null && prev.hash == hash) {
+            // touch 만 된 경우: 내용은 같으므로 메타데이터 재사용
+            index.put(key, new EntityScanIndex.Entry(size, modified, hash, prev.entity));
+            run.timings.stop("scan.extract", start);
+            run.found(prev.entity);
+            return;
+        }
+        try {
+            HashMap<String, Object> entity = ClassFileEntityReader.read(bytes);
+            index.put(key, new EntityScanIndex.Entry(size, modified, hash, entity));
+            run.timings.stop("scan.extract", start);
+            run.found(entity);
+        } catch (IllegalArgumentException ex) {
+            // 다음 스캔에서 다시 시도하도록 통계를 무효화하고 결과에 남긴다
+            index.put(key, new EntityScanIndex.Entry(-1, -1, 0, null));
+            run.errors.add(file + ": " + ex.getMessage());
+        }
+    }
 
-                    // 컬럼 어노테이션 변경
-                    if (line.contains("@Column") && newColumn != null && !newColumn.isBlank()) {
-                        lines.set(i, line.replaceFirst("name\\s*=\\s*\".*?\"", "name=\"" + newColumn + "\""));
-                    }
+    /** 한 번의 스캔 동안 모이는 상태. 병렬 스캔에서 여러 스레드가 함께 쓴다. */
+    private static final class ScanRun {
+        final Set<String> seen = ConcurrentHashMap.newKeySet();
+        final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        final List<Path> moduleRoots = Collections.synchronizedList(new ArrayList<>());
+        // 스트리밍 스캔에서만 설정됨 (순차 스캔 전용)
+        final Consumer<Map<String, Object>> sink;
+        final PhaseTimings timings;
+        int found;
 
-                    // PK 어노테이션 추가/삭제
-                    if (pk && !line.contains("@Id") && line.contains(fieldName)) {
-                        lines.add(i, "    @Id");
-                        i++;
+        ScanRun(Consumer<Map<String, Object>> sink, PhaseTimings timings) {
+            this.sink = sink;
+            this.timings = timings;
+        }
+
+        void found(Map<String, Object> entity) {
+            if (entity == null || sink == null) return;
+            found++;
+            sink.accept(entity);
+        }
+    }
+
+    /**
+     * 디렉터리 하나를 처리하고 하위 디렉터리마다 fork 한다.
+     * 모듈 루트 탐색과 패키지 단위 클래스 파일 스캔을 한 번의 순회로 처리한다.
+     */
+    private final class DirectoryScanTask extends RecursiveAction {
+        private final Path dir;
+        private final boolean inModule;
+        private final ScanRun run;
+
+        DirectoryScanTask(Path dir, boolean inModule, ScanRun run) {
+            this.dir = dir;
+            this.inModule = inModule;
+            this.run = run;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryScanTask> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+                for (Path child : children) {
+                    BasicFileAttributes attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isDirectory()) {
+                        boolean root = !inModule && isModuleRoot(child);
+                        if (root) {
+                            run.moduleRoots.add(child);
+                            if (readBuildIndex(child, run)) continue;
+                        }
+                        subtasks.add(new DirectoryScanTask(child, inModule || root, run));
+                    } else if (inModule && attrs.isRegularFile()) {
+                        scanClassFile(child, attrs, run);
                     }
                 }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+            invokeAll(subtasks);
         }
+    }
+
+    private static boolean isModuleRoot(Path dir) {
+        return dir.toString().endsWith("classes/java/main");
+    }
+
+    private static Path indexFile(String sourceRoot) {
+        String configured = System.getProperty(PROP_INDEX_FILE);
+        if (configured != null && !configured.isBlank()) {
+            return Paths.get(configured);
+        }
+        return Paths.get(sourceRoot, "build", "entity-scan.idx");
+    }
 
-        // 저장 (덮어쓰기)
-        Files.write(filePath, lines, StandardOpenOption.TRUNCATE_EXISTING);
+    private static long hash(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return crc.getValue();
     }
 
 }
@@ -0,0 +1,180 @@
+package com.example.migrator.service;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.printer.lexicalpreservation.LexicalPreservingPrinter;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parsed entity sources, keyed by file and validated against size + mtime, so repeated edits of the
+ * same entity skip re-reading and re-parsing. Each unit is set up for lexical preservation and carries
+ * an index of its classes and fields; a class name → file index lets lookups skip the path convention.
+ * Entries are evicted least-recently-used once either the file count or the total source size bound is hit.
+ */
+@Service
+public class EntitySourceCache {
+
+    private static final String PROP_MAX_FILES = "source.cache.maxFiles";
+    private static final String PROP_MAX_CHARS = "source.cache.maxChars";
+
+    // StaticJavaParser shares one global configuration; every thread gets its own parser instead
+    private static final ThreadLocal<JavaParser> PARSER = ThreadLocal.withInitial(() -> new JavaParser(new ParserConfiguration()));
+
+    private final int maxFiles = Integer.getInteger(PROP_MAX_FILES, 256);
+    private final long maxChars = Long.getLong(PROP_MAX_CHARS, 32L * 1024 * 1024);
+    private final LinkedHashMap<Path, ParsedSource> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Path> classIndex = new ConcurrentHashMap<>();
+    private long totalChars;
+
+    static JavaParser parser() {
+        return PARSER.get();
+    }
+
+    /**
+     * The name a class is indexed under: its source name, so the binary name of a nested class as the
+     * scanner reports it ({@code Outer$Inner}) finds the same entry as {@code Outer.Inner}.
+     */
+    static String sourceName(String qualifiedName) {
+        return qualifiedName.replace('$', '.');
+    }
+
+    /**
+     * The file declaring the class: from the index if it was parsed before, else by the package path convention
+     * applied to its top-level class.
+     */
+    public Path locate(String sourceRoot, String qualifiedName) {
+        Path indexed = classIndex.get(sourceName(qualifiedName));
+        if (indexed != null && Files.exists(indexed)) return indexed;
+        String topLevel = qualifiedName.split("\\$", 2)[0];
+        Path path = file(sourceRoot, topLevel);
+        // a nested class spelled Outer.Inner: the innermost enclosing name that has a file
+        for (String name = topLevel; !Files.exists(path) && name.lastIndexOf('.') > 0; ) {
+            name = name.substring(0, name.lastIndexOf('.'));
+            if (Files.exists(file(sourceRoot, name))) path = file(sourceRoot, name);
+        }
+        return path;
+    }
+
+    private static Path file(String sourceRoot, String qualifiedName) {
+        return Paths.get(sourceRoot, qualifiedName.replace('.', '/') + ".java").toAbsolutePath().normalize();
+    }
+
+    /**
+     * Takes the parsed unit for the file out of the cache, parsing it only if it is missing or the file
+     * changed since. The caller owns the (mutable) unit until it hands it back with {@link #checkin};
+     * a unit that is never checked in, e.g. because the edit failed, is simply dropped.
+     */
+    public ParsedSource checkout(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        long size = Files.size(key);
+        long modified = Files.getLastModifiedTime(key).toMillis();
+        synchronized (this) {
+            ParsedSource cached = entries.remove(key);
+            if (cached != null) {
+                totalChars -= cached.text.length();
+                if (cached.size == size && cached.modified == modified) return cached;
+            }
+        }
+        return parse(key, Files.readString(key, StandardCharsets.UTF_8), size, modified);
+    }
+
+    /** Returns a unit whose printed text has been written to its file. */
+    public void checkin(ParsedSource source, String writtenText) throws IOException {
+        source.text = writtenText;
+        source.size = Files.size(source.path);
+        source.modified = Files.getLastModifiedTime(source.path).toMillis();
+        synchronized (this) {
+            ParsedSource previous = entries.put(source.path, source);
+            if (previous != null) totalChars -= previous.text.length();
+            totalChars += writtenText.length();
+            Iterator<ParsedSource> eldest = entries.values().iterator();
+            while ((entries.size() > maxFiles || totalChars > maxChars) && eldest.hasNext()) {
+                totalChars -= eldest.next().text.length();
+                eldest.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidate(Path file) {
+        ParsedSource removed = entries.remove(file.toAbsolutePath().normalize());
+        if (removed != null) totalChars -= removed.text.length();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private ParsedSource parse(Path path, String text, long size, long modified) {
+        ParseResult<CompilationUnit> parsed = PARSER.get().parse(text);
+        if (!parsed.isSuccessful() || parsed.getResult().isEmpty()) {
+            throw new IllegalArgumentException("Cannot parse " + path + ": " + parsed.getProblems());
+        }
+        // keep the original tokens so only the touched nodes are re-printed
+        CompilationUnit cu = LexicalPreservingPrinter.setup(parsed.getResult().get());
+        ParsedSource source = new ParsedSource(path, text, size, modified, cu);
+        for (ClassOrInterfaceDeclaration cls : cu.findAll(ClassOrInterfaceDeclaration.class)) {
+            String name = cls.getFullyQualifiedName().orElse(cls.getNameAsString());
+            Map<String, FieldDeclaration> fields = new HashMap<>();
+            for (FieldDeclaration fd : cls.getFields()) {
+                for (VariableDeclarator var : fd.getVariables()) {
+                    fields.put(var.getNameAsString(), fd);
+                }
+            }
+            source.classes.put(name, cls);
+            source.fields.put(name, fields);
+            classIndex.put(name, path);
+        }
+        return source;
+    }
+
+    /** One parsed file with its class and field indexes. Node edits keep the indexes valid. */
+    public static final class ParsedSource {
+        private final Path path;
+        private final CompilationUnit unit;
+        private final Map<String, ClassOrInterfaceDeclaration> classes = new HashMap<>();
+        private final Map<String, Map<String, FieldDeclaration>> fields = new HashMap<>();
+        private String text;
+        private long size;
+        private long modified;
+
+        private ParsedSource(Path path, String text, long size, long modified, CompilationUnit unit) {
+            this.path = path;
+            this.text = text;
+            this.size = size;
+            this.modified = modified;
+            this.unit = unit;
+        }
+
+        public Path getPath() { return path; }
+        public CompilationUnit getUnit() { return unit; }
+        /** The file content the unit was parsed from or last written as. */
+        public String getText() { return text; }
+
+        /** @param qualifiedName source ({@code Outer.Inner}) or binary ({@code Outer$Inner}) name */
+        public ClassOrInterfaceDeclaration type(String qualifiedName) {
+            return classes.get(sourceName(qualifiedName));
+        }
+
+        public FieldDeclaration field(String qualifiedName, String fieldName) {
+            Map<String, FieldDeclaration> byName = fields.get(sourceName(qualifiedName));
+            return byName != null ? byName.get(fieldName) : null;
+        }
+
+        public String print() {
+            return LexicalPreservingPrinter.print(unit);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.migrator.service;
+
+import com.example.migrator.dialect.Dialect;
+import com.example.migrator.dto.LockAttempt;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Guarded DDL (-Dmigration.guard=true): an ALTER TABLE queued behind a long transaction would block every
+ * query on the table behind it, so each attempt bounds its lock wait (-Dmigration.guard.lockTimeoutMs,
+ * default 2000) and run time (-Dmigration.guard.statementTimeoutMs, default 0 = not bounded) through the
+ * {@link Dialect}, and gives up instead. Lock failures are retried up to -Dmigration.guard.retries
+ * (default 5) times after an exponential backoff with jitter (-Dmigration.guard.backoffMs, default 200,
+ * capped at -Dmigration.guard.maxBackoffMs, default 10000); every failed attempt, the last one included,
+ * is recorded with the sessions that were holding the table.
+ */
+class LockGuard {
+
+    static final String PROP_ENABLED = "migration.guard";
+    static final String PROP_LOCK_TIMEOUT = "migration.guard.lockTimeoutMs";
+    static final String PROP_STATEMENT_TIMEOUT = "migration.guard.statementTimeoutMs";
+    static final String PROP_RETRIES = "migration.guard.retries";
+    static final String PROP_BACKOFF = "migration.guard.backoffMs";
+    static final String PROP_MAX_BACKOFF = "migration.guard.maxBackoffMs";
+
+    /** The DDL of one table; runs again on every attempt. */
+    interface Ddl {
+        void execute(Statement st) throws SQLException;
+    }
+
+    private final long lockTimeoutMs;
+    private final long statementTimeoutMs;
+    private final int retries;
+    private final long backoffMs;
+    private final long maxBackoffMs;
+
+    LockGuard(long lockTimeoutMs, long statementTimeoutMs, int retries, long backoffMs, long maxBackoffMs) {
+        this.lockTimeoutMs = lockTimeoutMs;
+        this.statementTimeoutMs = statementTimeoutMs;
+        this.retries = retries;
+        this.backoffMs = backoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    /** @return null unless -Dmigration.guard=true */
+    static LockGuard fromProperties() {
+        if (!Boolean.getBoolean(PROP_ENABLED)) return null;
+        return new LockGuard(Long.getLong(PROP_LOCK_TIMEOUT, 2_000L), Long.getLong(PROP_STATEMENT_TIMEOUT, 0L),
+                Integer.getInteger(PROP_RETRIES, 5), Long.getLong(PROP_BACKOFF, 200L), Long.getLong(PROP_MAX_BACKOFF, 10_000L));
+    }
+
+    /**
+     * Runs {@code ddl} in the caller's transaction (auto-commit off). A lock failure rolls the transaction
+     * back, is added to {@code attempts} and, while retries are left, tried again after the backoff; any
+     * other failure, or the last one, is thrown.
+     */
+    void run(Connection conn, Dialect dialect, String table, CancelToken cancel, PhaseTimings timings,
+             List<LockAttempt> attempts, Ddl ddl) throws SQLException {
+        List<String> restore = dialect.restoreTimeouts(conn);
+        try {
+            for (int attempt = 1; ; attempt++) {
+                long start = System.nanoTime();
+                try (Statement st = conn.createStatement(); CancelToken.Registration ignored = cancel.enter(st)) {
+                    for (String s : dialect.lockTimeouts(lockTimeoutMs, statementTimeoutMs)) {
+                        st.execute(s);
+                    }
+                    ddl.execute(st);
+                    return;
+                } catch (SQLException ex) {
+                    if (cancel.isCancelled() || !dialect.isLockFailure(ex)) throw ex;
+                    long waited = (System.nanoTime() - start) / 1_000;
+                    conn.rollback();
+                    boolean last = attempt > retries;
+                    long backoff = last ? 0 : backoffMillis(attempt);
+                    attempts.add(new LockAttempt(attempt, waited, backoff, ex.getMessage(), blockers(conn, dialect, table)));
+                    if (last) throw ex;
+                    long sleepStart = PhaseTimings.start();
+                    sleep(backoff);
+                    timings.stop("sql.lockBackoff", sleepStart);
+                    cancel.check();
+                }
+            }
+        } finally {
+            restore(conn, restore);
+        }
+    }
+
+    /** Exponential, capped, with "equal jitter": half of the delay is fixed, the other half random. */
+    long backoffMillis(int attempt) {
+        long delay = Math.min(maxBackoffMs, backoffMs << Math.min(attempt - 1, 30));
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    private static List<Map<String, Object>> blockers(Connection conn, Dialect dialect, String table) {
+        try {
+            return dialect.blockingSessions(conn, table);
+        } catch (SQLException ex) {
+            // inspecting is best effort (e.g. no access to the lock views); the retry goes ahead regardless
+            try { conn.rollback(); } catch (SQLException ignore) {}
+            return List.of(Map.of("error", String.valueOf(ex.getMessage())));
+        }
+    }
+
+    private static void restore(Connection conn, List<String> statements) {
+        if (statements.isEmpty()) return;
+        try (Statement st = conn.createStatement()) {
+            for (String s : statements) {
+                st.execute(s);
+            }
+        } catch (SQLException ignore) {
+            // the session keeps the guarded timeouts; harmless for the migrator's own later statements
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while backing off from a lock timeout", e);
+        }
+    }
+}
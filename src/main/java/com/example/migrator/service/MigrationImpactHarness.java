@@ -0,0 +1,341 @@
+package com.example.migrator.service;
+
+import com.example.migrator.dto.ColumnChange;
+import com.example.migrator.dto.TableMigrationResult;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures what a change set costs live traffic. Seeded tables get a synthetic workload (primary key
+ * reads, and {@code writePercent}% single-row updates) from {@code threads} connections while
+ * {@link SchemaMigrationService} applies the changes; query latencies go into HdrHistogram recorders
+ * that are cut at every statement boundary, giving phases
+ * <ul>
+ *   <li>{@code before}: {@code windowMillis} of undisturbed traffic (after {@code warmupMillis} not counted),</li>
+ *   <li>{@code setup}: from there until the first statement (the migrator reading the live schema),</li>
+ *   <li>{@code during} each statement, from the moment it is sent until it returns,</li>
+ *   <li>{@code after} each statement, until the next one starts; the last one lasts {@code windowMillis}.</li>
+ * </ul>
+ * Workers are a closed loop, so a query stalled behind a table lock also holds back the queries that
+ * thread would have sent meanwhile. The reported latencies of every phase are corrected for that
+ * (coordinated omission) with the mean latency of the {@code before} phase as the expected interval
+ * between queries; counts and throughput are the queries actually run.
+ * Migrations run table by table (-Dmigration.parallel is not used here) so the phases do not overlap.
+ * A harness runs once.
+ */
+public class MigrationImpactHarness {
+
+    private static final int SEED_BATCH = 1_000;
+
+    private final DataSource dataSource;
+    private final int threads;
+    private final int writePercent;
+    private final long warmupMillis;
+    private final long windowMillis;
+
+    private final Recorder reads = new Recorder(3);
+    private final Recorder writes = new Recorder(3);
+    private final LongAdder errors = new LongAdder();
+    private final List<Workload> workloads = new ArrayList<>();
+    private final List<Phase> phases = new ArrayList<>();
+    private String phase;
+    private String statement;
+    private long phaseStart;
+
+    public MigrationImpactHarness(DataSource dataSource, int threads, int writePercent, long warmupMillis, long windowMillis) {
+        this.dataSource = dataSource;
+        this.threads = threads;
+        this.writePercent = writePercent;
+        this.warmupMillis = warmupMillis;
+        this.windowMillis = windowMillis;
+    }
+
+    /** Runs the {@code ;}-separated DDL of a classpath resource, e.g. schema-h2.sql. */
+    public void createSchema(String resource) throws IOException, SQLException {
+        String script;
+        try (InputStream in = MigrationImpactHarness.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) throw new IllegalArgumentException("No such resource: " + resource);
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try (Connection conn = dataSource.getConnection(); Statement st = conn.createStatement()) {
+            for (String sql : script.split(";")) {
+                if (!sql.isBlank()) st.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * Fills each table up to the given row count (keys 1..n, the rest generated from the column types)
+     * and makes it part of the workload.
+     * @return rows inserted per table
+     */
+    public Map<String, Long> seed(Map<String, Long> rowsPerTable) throws SQLException {
+        Map<String, Long> inserted = new LinkedHashMap<>();
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            for (Map.Entry<String, Long> e : rowsPerTable.entrySet()) {
+                Workload w = workload(conn, e.getKey(), e.getValue());
+                long existing;
+                try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + w.table)) {
+                    rs.next();
+                    existing = rs.getLong(1);
+                }
+                try (PreparedStatement ps = conn.prepareStatement(w.insert)) {
+                    for (long id = existing + 1; id <= w.rows; id++) {
+                        for (int c = 0; c < w.types.length; c++) {
+                            ps.setObject(c + 1, value(w.types[c], w.sizes[c], id), w.types[c]);
+                        }
+                        ps.addBatch();
+                        if (id % SEED_BATCH == 0) ps.executeBatch();
+                    }
+                    ps.executeBatch();
+                }
+                conn.commit();
+                inserted.put(e.getKey(), Math.max(0, w.rows - existing));
+                workloads.add(w);
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Applies {@code changes} under load.
+     * @param log HdrHistogram interval log (one tagged histogram per phase and query kind), or null
+     * @return {phases: [{phase, statement, millis, errors, reads, writes}], migration: table → status,
+     *         expectedIntervalMicros}; latencies in microseconds
+     */
+    public Map<String, Object> run(List<ColumnChange> changes, Path log) throws Exception {
+        if (workloads.isEmpty()) throw new IllegalStateException("Seed at least one table first");
+        if (!phases.isEmpty()) throw new IllegalStateException("A harness runs once");
+        SchemaMigrationService migrations = new SchemaMigrationService(dataSource);
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        Map<String, TableMigrationResult> migration;
+        try {
+            for (int i = 0; i < threads; i++) {
+                workers.add(pool.submit(() -> work(running)));
+            }
+            Thread.sleep(warmupMillis);
+            cut("before", null);
+            Thread.sleep(windowMillis);
+            cut("setup", null);
+
+            migrations.addStatementListener(new SchemaMigrationService.StatementListener() {
+                @Override
+                public void started(String table, String sql) {
+                    cut("during", sql);
+                }
+
+                @Override
+                public void finished(String table, String sql, boolean ok) {
+                    cut("after", sql);
+                }
+            });
+            migration = migrations.migrate(changes);
+            Thread.sleep(windowMillis);
+            cut(null, null);
+        } finally {
+            running.set(false);
+            pool.shutdown();
+        }
+        for (Future<?> f : workers) {
+            f.get(windowMillis + 10_000, TimeUnit.MILLISECONDS);
+        }
+        // closed loop: one query per thread per mean latency is what the workload would have sent
+        Histogram before = phases.get(0).reads.copy();
+        before.add(phases.get(0).writes);
+        long expectedInterval = Math.max(1, Math.round(before.getMean()));
+        if (log != null) writeLog(log, expectedInterval);
+
+        List<Map<String, Object>> report = new ArrayList<>();
+        for (Phase p : phases) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("phase", p.name);
+            if (p.statement != null) m.put("statement", p.statement);
+            m.put("millis", p.millis);
+            m.put("errors", p.errors);
+            m.put("reads", stats(p.reads, p.millis, expectedInterval));
+            m.put("writes", stats(p.writes, p.millis, expectedInterval));
+            report.add(m);
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("phases", report);
+        out.put("migration", SchemaMigrationService.statuses(migration));
+        out.put("expectedIntervalMicros", expectedInterval);
+        return out;
+    }
+
+    /**
+     * Closes the current phase (its interval histograms) and starts the next; the warmup is dropped.
+     * Called from the migrating thread at statement boundaries, so phases follow each other without gaps.
+     */
+    private synchronized void cut(String nextPhase, String nextStatement) {
+        long now = System.nanoTime();
+        Histogram r = reads.getIntervalHistogram();
+        Histogram w = writes.getIntervalHistogram();
+        long failed = errors.sumThenReset();
+        if (phase != null) {
+            phases.add(new Phase(phase, statement, TimeUnit.NANOSECONDS.toMillis(now - phaseStart), failed, r, w));
+        }
+        phase = nextPhase;
+        statement = nextStatement;
+        phaseStart = now;
+    }
+
+    private static Map<String, Object> stats(Histogram raw, long millis, long expectedInterval) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("count", raw.getTotalCount());
+        out.put("perSecond", millis > 0 ? raw.getTotalCount() * 1000 / millis : 0);
+        if (raw.getTotalCount() > 0) {
+            Histogram h = raw.copyCorrectedForCoordinatedOmission(expectedInterval);
+            out.put("p50", h.getValueAtPercentile(50));
+            out.put("p90", h.getValueAtPercentile(90));
+            out.put("p99", h.getValueAtPercentile(99));
+            out.put("max", h.getMaxValue());
+            out.put("mean", Math.round(h.getMean()));
+        }
+        return out;
+    }
+
+    private void work(AtomicBoolean running) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Connection conn = null;
+        try {
+            while (running.get()) {
+                Workload w = workloads.get(random.nextInt(workloads.size()));
+                boolean write = random.nextInt(100) < writePercent;
+                long id = 1 + random.nextLong(w.rows);
+                long start = System.nanoTime();
+                try {
+                    if (conn == null) conn = dataSource.getConnection();
+                    try (PreparedStatement ps = conn.prepareStatement(write ? w.update : w.select)) {
+                        ps.setLong(1, id);
+                        if (write) {
+                            ps.executeUpdate();
+                        } else {
+                            try (ResultSet rs = ps.executeQuery()) {
+                                while (rs.next()) {
+                                    rs.getObject(1);
+                                }
+                            }
+                        }
+                    }
+                } catch (SQLException ex) {
+                    errors.increment();
+                    closeQuietly(conn);
+                    conn = null;
+                    continue;
+                }
+                long micros = (System.nanoTime() - start) / 1_000;
+                (write ? writes : reads).recordValue(micros);
+            }
+        } finally {
+            closeQuietly(conn);
+        }
+    }
+
+    /** Corrected histograms, tagged {@code <n>-<phase>-reads|writes}; values in microseconds, maxima shown in milliseconds. */
+    private void writeLog(Path log, long expectedInterval) throws IOException {
+        Path parent = log.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        try (PrintStream out = new PrintStream(Files.newOutputStream(log), false, StandardCharsets.UTF_8)) {
+            HistogramLogWriter writer = new HistogramLogWriter(out);
+            writer.outputComment("entity-migrator impact run, latencies in microseconds");
+            writer.outputLogFormatVersion();
+            long base = phases.get(0).reads.getStartTimeStamp();
+            writer.setBaseTime(base);
+            writer.outputBaseTime(base);
+            writer.outputLegend();
+            for (int i = 0; i < phases.size(); i++) {
+                Phase p = phases.get(i);
+                for (Histogram raw : List.of(p.reads, p.writes)) {
+                    Histogram h = raw.copyCorrectedForCoordinatedOmission(expectedInterval);
+                    h.setTag(i + "-" + p.name + "-" + (raw == p.reads ? "reads" : "writes"));
+                    writer.outputIntervalHistogram((raw.getStartTimeStamp() - base) / 1000.0,
+                            (raw.getEndTimeStamp() - base) / 1000.0, h, 1000.0);
+                }
+            }
+        }
+    }
+
+    private static Workload workload(Connection conn, String table, long rows) throws SQLException {
+        DatabaseMetaData md = conn.getMetaData();
+        String key = null;
+        try (ResultSet rs = md.getPrimaryKeys(null, null, table)) {
+            if (rs.next()) key = rs.getString("COLUMN_NAME");
+        }
+        List<String> columns = new ArrayList<>();
+        List<Integer> types = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        try (ResultSet rs = md.getColumns(null, null, table, null)) {
+            while (rs.next()) {
+                columns.add(rs.getString("COLUMN_NAME"));
+                types.add(rs.getInt("DATA_TYPE"));
+                sizes.add(rs.getInt("COLUMN_SIZE"));
+            }
+        }
+        if (key == null || columns.size() < 2) {
+            throw new IllegalArgumentException("Table " + table + " needs a primary key and one more column");
+        }
+        String pk = key;
+        String touched = columns.stream().filter(c -> !c.equals(pk)).findFirst().orElseThrow();
+        String tbl = SchemaMigrationService.quote(table);
+        // the key always goes first, so value(…) sees it as the row number
+        int k = columns.indexOf(pk);
+        columns.add(0, columns.remove(k));
+        types.add(0, types.remove(k));
+        sizes.add(0, sizes.remove(k));
+        String insert = "INSERT INTO " + tbl + " (" + String.join(", ", columns.stream().map(SchemaMigrationService::quote).toList())
+                + ") VALUES (" + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+        String where = " WHERE " + SchemaMigrationService.quote(pk) + " = ?";
+        String col = SchemaMigrationService.quote(touched);
+        return new Workload(tbl, rows, insert, "SELECT * FROM " + tbl + where, "UPDATE " + tbl + " SET " + col + " = " + col + where,
+                types.stream().mapToInt(Integer::intValue).toArray(), sizes.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /** Generated column value for row {@code id}. */
+    private static Object value(int type, int size, long id) {
+        return switch (type) {
+            case Types.BIGINT -> id;
+            case Types.INTEGER, Types.SMALLINT, Types.TINYINT -> (int) (id % Short.MAX_VALUE);
+            case Types.DECIMAL, Types.NUMERIC -> BigDecimal.valueOf(id % 100_000, 2);
+            case Types.DOUBLE, Types.FLOAT, Types.REAL -> id / 100.0;
+            case Types.BOOLEAN, Types.BIT -> id % 2 == 0;
+            case Types.DATE -> new java.sql.Date(System.currentTimeMillis() - id * 1_000);
+            case Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE -> new Timestamp(System.currentTimeMillis() - id * 1_000);
+            default -> {
+                String s = "v" + id;
+                yield size > 0 && s.length() > size ? s.substring(s.length() - size) : s;
+            }
+        };
+    }
+
+    private static void closeQuietly(Connection conn) {
+        if (conn == null) return;
+        try { conn.close(); } catch (SQLException ignore) {}
+    }
+
+    private record Phase(String name, String statement, long millis, long errors, Histogram reads, Histogram writes) {}
+
+    private record Workload(String table, long rows, String insert, String select, String update, int[] types, int[] sizes) {}
+}
@@ -0,0 +1,373 @@
+package com.example.migrator.service;
+
+import com.example.migrator.dto.ColumnChange;
+import com.example.migrator.service.SourceModifierService.EntityEdit;
+import com.example.migrator.service.SourceModifierService.FieldChange;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.*;
+
+/**
+ * Write-ahead journal of apply runs. Every step (the DDL of one table, the source edit of one entity)
+ * is recorded as PLANNED before it runs and DONE or FAILED after, with a checksum of what it applies,
+ * in two places:
+ * <ul>
+ *   <li>an append-only local file (-Dmigration.journal.file, default build/migration-journal.log),
+ *       written and synced first, so the record survives a crash and an unreachable database,</li>
+ *   <li>the {@value #TABLE} table of the target database, so a rerun from another machine sees
+ *       which DDL already went through.</li>
+ * </ul>
+ * A run is identified by the checksum of its whole change set: applying the same changes again reopens
+ * the run, skips its DONE steps and reruns the rest. Steps left PLANNED were interrupted; rerunning them
+ * is safe because DDL the schema already reflects is dropped and source edits only set names.
+ * <p>
+ * One file can serve several databases, so every record carries the target it was written for (JDBC URL,
+ * catalog and schema). Whether a DDL step ({@value #DDL_STEP}table) is DONE is decided by the journal
+ * table of the target database alone: the file only reports that the step was started there.
+ */
+@Service
+public class MigrationJournal {
+
+    static final String PROP_FILE = "migration.journal.file";
+    static final String TABLE = "MIGRATOR_JOURNAL";
+    public static final String PLANNED = "PLANNED";
+    public static final String DONE = "DONE";
+    public static final String FAILED = "FAILED";
+    private static final String RESET = "RESET";
+    private static final String RUN_STEP = "run";
+    /** Prefix of the steps that run DDL against the target database. */
+    static final String DDL_STEP = "sql:";
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+            + "RUN_ID VARCHAR(64) NOT NULL, STEP VARCHAR(512) NOT NULL, CHECKSUM VARCHAR(64), STATUS VARCHAR(16) NOT NULL, "
+            + "DETAIL VARCHAR(2000), UPDATED_AT TIMESTAMP NOT NULL, PRIMARY KEY (RUN_ID, STEP))";
+
+    private final DataSource dataSource;
+    private final Path file;
+    private volatile boolean tableReady;
+    private volatile String target;
+
+    @Autowired
+    public MigrationJournal(DataSource dataSource) {
+        this(dataSource, Paths.get(System.getProperty(PROP_FILE, System.getProperty("user.dir") + "/build/migration-journal.log")));
+    }
+
+    MigrationJournal(DataSource dataSource, Path file) {
+        this.dataSource = dataSource;
+        this.file = file;
+    }
+
+    /**
+     * Opens the run of the given change set, with the state of its steps from the file and the table.
+     * @param fresh forget earlier attempts of the same change set and start over
+     */
+    public Run open(String runId, boolean fresh) {
+        Run run = new Run(runId);
+        if (fresh) {
+            run.record(RUN_STEP, runId, RESET, null);
+            return run;
+        }
+        run.replayFile();
+        // a DDL step the file calls DONE only counts once the target database confirms it
+        run.steps.replaceAll((step, s) -> step.startsWith(DDL_STEP) && DONE.equals(s.status) ? new Step(s.checksum, PLANNED, s.detail) : s);
+        run.replayTable();
+        run.steps.forEach((step, s) -> {
+            if (PLANNED.equals(s.status) && !RUN_STEP.equals(step)) run.interrupted.add(step);
+        });
+        return run;
+    }
+
+    /** The recorded steps of a run, merged from the file and the table. */
+    public List<Map<String, Object>> steps(String runId) {
+        Run run = new Run(runId);
+        run.replayFile();
+        run.replayTable();
+        List<Map<String, Object>> out = new ArrayList<>();
+        run.steps.forEach((step, s) -> {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("step", step);
+            m.put("status", s.status);
+            m.put("checksum", s.checksum);
+            m.put("detail", s.detail);
+            out.add(m);
+        });
+        return out;
+    }
+
+    /** JDBC URL, catalog and schema of the database the journal table lives in; null when it cannot be reached. */
+    String target() {
+        String t = target;
+        if (t == null) {
+            try (Connection conn = dataSource.getConnection()) {
+                t = conn.getMetaData().getURL() + "|" + conn.getCatalog() + "|" + conn.getSchema();
+                target = t;
+            } catch (SQLException e) {
+                return null;
+            }
+        }
+        return t;
+    }
+
+    public static String checksum(List<ColumnChange> changes) {
+        StringBuilder sb = new StringBuilder();
+        for (ColumnChange c : changes) {
+            sb.append(c.getTable()).append('\0').append(c.getColumn()).append('\0').append(c.getNewColumn()).append('\0')
+                    .append(c.getNewType()).append('\0').append(c.isPrimaryKey()).append('\0').append(c.isOnline()).append('\0')
+                    .append(c.getBackfill()).append('\0').append(c.getBackfillTransform()).append('\n');
+        }
+        return sha256(sb.toString());
+    }
+
+    public static String checksum(EntityEdit edit) {
+        StringBuilder sb = new StringBuilder(edit.getQualifiedName()).append('\0').append(edit.getNewTableName()).append('\n');
+        for (FieldChange fc : edit.getFieldChanges()) {
+            sb.append(fc.getFieldName()).append('\0').append(fc.getNewColumn()).append('\0').append(fc.getNewType()).append('\n');
+        }
+        return sha256(sb.toString());
+    }
+
+    /** Checksum of a change set and its source edits; identifies the run. */
+    public static String runId(List<ColumnChange> changes, Collection<EntityEdit> edits) {
+        StringBuilder sb = new StringBuilder(checksum(changes));
+        for (EntityEdit e : edits) sb.append(checksum(e));
+        return sha256(sb.toString()).substring(0, 32);
+    }
+
+    static String sha256(String text) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String escape(String s) {
+        return s == null ? "" : s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "");
+    }
+
+    private static String unescape(String s) {
+        if (s.isEmpty()) return null;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == '\\' && i + 1 < s.length()) {
+                char next = s.charAt(++i);
+                sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+            } else {
+                sb.append(ch);
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Status ranking when the file and the table disagree: a crash can leave either one step behind. */
+    private static int rank(String status) {
+        return switch (status) {
+            case DONE -> 2;
+            case FAILED -> 1;
+            default -> 0;
+        };
+    }
+
+    private record Step(String checksum, String status, String detail) {}
+
+    /** One apply run: the recorded state of its steps and the methods that record new ones. */
+    public final class Run {
+        private final String runId;
+        private final Map<String, Step> steps = new LinkedHashMap<>();
+        private final List<String> interrupted = new ArrayList<>();
+        private final List<String> resumed = new ArrayList<>();
+        private String tableError;
+
+        private Run(String runId) {
+            this.runId = runId;
+        }
+
+        public String getRunId() {
+            return runId;
+        }
+
+        /**
+         * True when the step already went through with the same checksum in an earlier attempt;
+         * the caller skips it and it is listed under {@link #getResumed()}.
+         */
+        public synchronized boolean skipIfDone(String step, String checksum) {
+            Step s = steps.get(step);
+            boolean done = s != null && DONE.equals(s.status) && Objects.equals(s.checksum, checksum);
+            if (done) resumed.add(step);
+            return done;
+        }
+
+        /** Steps skipped because an earlier attempt completed them. */
+        public synchronized List<String> getResumed() {
+            return new ArrayList<>(resumed);
+        }
+
+        /** Steps an earlier attempt started but never finished. */
+        public List<String> getInterrupted() {
+            return interrupted;
+        }
+
+        /** Why the database copy of the journal could not be written, if it could not; the file still was. */
+        public synchronized String getTableError() {
+            return tableError;
+        }
+
+        public void planned(String step, String checksum) {
+            record(step, checksum, PLANNED, null);
+        }
+
+        public void done(String step, String checksum, String detail) {
+            record(step, checksum, DONE, detail);
+        }
+
+        public void failed(String step, String checksum, String detail) {
+            record(step, checksum, FAILED, detail);
+        }
+
+        /** {runId, resumed, interrupted[, tableError]} for API responses. */
+        public synchronized Map<String, Object> toMap() {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("runId", runId);
+            out.put("resumed", new ArrayList<>(resumed));
+            out.put("interrupted", interrupted);
+            if (tableError != null) out.put("tableError", tableError);
+            return out;
+        }
+
+        /** Marks the run itself finished once no step is left undone. */
+        public synchronized void complete() {
+            boolean allDone = steps.entrySet().stream()
+                    .allMatch(e -> RUN_STEP.equals(e.getKey()) || DONE.equals(e.getValue().status));
+            record(RUN_STEP, runId, allDone ? DONE : FAILED, null);
+        }
+
+        private synchronized void record(String step, String checksum, String status, String detail) {
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            String line = String.join("\t", now.toInstant().toString(), runId, escape(step), escape(checksum), status, escape(detail),
+                    escape(target())) + "\n";
+            try {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                // synced before the step runs: this is what makes it a write-ahead log
+                Files.writeString(file, line, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write migration journal " + file, e);
+            }
+            if (RESET.equals(status)) {
+                steps.clear();
+                deleteFromTable();
+                return;
+            }
+            steps.put(step, new Step(checksum, status, detail));
+            writeTable(step, checksum, status, detail, now);
+        }
+
+        private void writeTable(String step, String checksum, String status, String detail, Timestamp now) {
+            if (tableError != null) return;
+            String truncated = detail != null && detail.length() > 2000 ? detail.substring(0, 2000) : detail;
+            try (Connection conn = dataSource.getConnection()) {
+                conn.setAutoCommit(true);
+                ensureTable(conn);
+                try (PreparedStatement update = conn.prepareStatement(
+                        "UPDATE " + TABLE + " SET CHECKSUM = ?, STATUS = ?, DETAIL = ?, UPDATED_AT = ? WHERE RUN_ID = ? AND STEP = ?")) {
+                    update.setString(1, checksum);
+                    update.setString(2, status);
+                    update.setString(3, truncated);
+                    update.setTimestamp(4, now);
+                    update.setString(5, runId);
+                    update.setString(6, step);
+                    if (update.executeUpdate() > 0) return;
+                }
+                try (PreparedStatement insert = conn.prepareStatement(
+                        "INSERT INTO " + TABLE + " (RUN_ID, STEP, CHECKSUM, STATUS, DETAIL, UPDATED_AT) VALUES (?, ?, ?, ?, ?, ?)")) {
+                    insert.setString(1, runId);
+                    insert.setString(2, step);
+                    insert.setString(3, checksum);
+                    insert.setString(4, status);
+                    insert.setString(5, truncated);
+                    insert.setTimestamp(6, now);
+                    insert.executeUpdate();
+                }
+            } catch (SQLException e) {
+                // the file is already written; stop trying the table for this run
+                tableError = e.getMessage();
+            }
+        }
+
+        private void deleteFromTable() {
+            try (Connection conn = dataSource.getConnection()) {
+                conn.setAutoCommit(true);
+                ensureTable(conn);
+                try (PreparedStatement ps = conn.prepareStatement("DELETE FROM " + TABLE + " WHERE RUN_ID = ?")) {
+                    ps.setString(1, runId);
+                    ps.executeUpdate();
+                }
+            } catch (SQLException e) {
+                tableError = e.getMessage();
+            }
+        }
+
+        private void replayFile() {
+            if (!Files.exists(file)) return;
+            try {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    String[] f = line.split("\t", -1);
+                    // a torn last line from a crash mid-append is ignored
+                    if (f.length < 6 || !f[1].equals(runId)) continue;
+                    String step = unescape(f[2]);
+                    if (RESET.equals(f[4])) {
+                        steps.clear();
+                    } else if (!step.startsWith(DDL_STEP) || (f.length > 6 && Objects.equals(unescape(f[6]), target()))) {
+                        // DDL recorded for another database (or before records carried a target) says nothing about this one
+                        steps.put(step, new Step(unescape(f[3]), f[4], unescape(f[5])));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read migration journal " + file, e);
+            }
+        }
+
+        private void replayTable() {
+            try (Connection conn = dataSource.getConnection()) {
+                ensureTable(conn);
+                try (PreparedStatement ps = conn.prepareStatement("SELECT STEP, CHECKSUM, STATUS, DETAIL FROM " + TABLE + " WHERE RUN_ID = ?")) {
+                    ps.setString(1, runId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            Step fromTable = new Step(rs.getString(2), rs.getString(3), rs.getString(4));
+                            steps.merge(rs.getString(1), fromTable, (a, b) -> rank(b.status) > rank(a.status) ? b : a);
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                tableError = e.getMessage();
+            }
+        }
+    }
+
+    private void ensureTable(Connection conn) throws SQLException {
+        if (tableReady) return;
+        try (Statement st = conn.createStatement()) {
+            st.execute(CREATE_TABLE);
+        }
+        tableReady = true;
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.migrator.service;
+
+import com.example.migrator.dialect.AlterStatement;
+import com.example.migrator.dialect.Dialect;
+import com.example.migrator.dto.ColumnChange;
+import com.example.migrator.dto.PlannedStatement;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Dry run of {@link SchemaMigrationService#migrate}: builds the same statements without executing them
+ * and annotates each with lock level, whether the table is rewritten, and the table size from the catalog.
+ * Lock levels and rewrites are modeled for the built-in dialects (PostgreSQL, MySQL 8 / MariaDB, H2); for
+ * any other dialect they are reported as unknown rather than guessed.
+ */
+@Service
+public class MigrationPlanner {
+
+    private static final String PROP_HEAVY_ROWS = "migration.plan.heavyRows";
+
+    private static final String PG_TABLE_SIZE_SQL =
+            "SELECT c.reltuples::bigint, pg_total_relation_size(c.oid) FROM pg_class c " +
+            "JOIN pg_namespace n ON n.oid = c.relnamespace WHERE n.nspname = current_schema() AND c.relname = ?";
+    private static final String MYSQL_TABLE_SIZE_SQL =
+            "SELECT TABLE_ROWS, DATA_LENGTH + INDEX_LENGTH FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?";
+    private static final String H2_TABLE_SIZE_SQL =
+            "SELECT ROW_COUNT_ESTIMATE, -1 FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = CURRENT_SCHEMA AND TABLE_NAME = ?";
+
+    static final String UNKNOWN = "UNKNOWN";
+
+    /** What one operation costs: the lock it takes (higher rank = more restrictive) and whether it copies the table (null: unknown). */
+    record Impact(int rank, String lockLevel, Boolean rewrite) {}
+
+    private static final Impact UNKNOWN_IMPACT = new Impact(Integer.MAX_VALUE, UNKNOWN, null);
+
+    private final DataSource dataSource;
+    private final SchemaIntrospector introspector;
+    private final SchemaMigrationService schemaService;
+
+    public MigrationPlanner(DataSource dataSource, SchemaIntrospector introspector, SchemaMigrationService schemaService) {
+        this.dataSource = dataSource;
+        this.introspector = introspector;
+        this.schemaService = schemaService;
+    }
+
+    public List<PlannedStatement> plan(List<ColumnChange> changes) throws SQLException {
+        long heavyRows = Long.getLong(PROP_HEAVY_ROWS, 1_000_000L);
+        Map<String, List<ColumnChange>> byTable = new LinkedHashMap<>();
+        for (ColumnChange c : changes) {
+            byTable.computeIfAbsent(c.getTable(), k -> new ArrayList<>()).add(c);
+        }
+        List<PlannedStatement> out = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection()) {
+            String db = schemaService.databaseProduct(conn);
+            Dialect dialect = schemaService.dialect(conn);
+            SchemaSnapshot schema = introspector.refresh(conn);
+            for (Map.Entry<String, List<ColumnChange>> e : byTable.entrySet()) {
+                String table = e.getKey();
+                long[] size = tableSize(conn, dialect, schema, table);
+                // split like SchemaMigrationService#migrateTable: the table's DDL folded together, then online changes, then backfills
+                List<ColumnChange> ddl = new ArrayList<>();
+                List<ColumnChange> online = new ArrayList<>();
+                List<ColumnChange> backfills = new ArrayList<>();
+                for (ColumnChange c : e.getValue()) {
+                    ColumnChange effective = SchemaMigrationService.minimal(schema, c);
+                    boolean backfill = SchemaMigrationService.hasBackfill(c);
+                    if (effective == null && !backfill) {
+                        out.add(new PlannedStatement(table, null, "NO_OP"));
+                        continue;
+                    }
+                    if (effective != null && !SchemaMigrationService.isBackfillOnly(effective)) {
+                        (SchemaMigrationService.isOnline(db, effective) ? online : ddl).add(effective);
+                    }
+                    if (backfill) backfills.add(c);
+                }
+                if (!ddl.isEmpty()) planDdl(out, conn, dialect, schema, size, heavyRows, table, ddl);
+                for (ColumnChange c : online) {
+                    PlannedStatement p = new PlannedStatement(table,
+                            "online: shadow column + sync trigger + chunked backfill of " + c.getColumn() + " AS " + c.getNewType(),
+                            "ONLINE_TYPE_CHANGE");
+                    // only run online where SchemaMigrationService#isOnline allows it: PostgreSQL and H2
+                    p.setLockLevel("postgresql".equals(dialect.name())
+                            ? "SHARE ROW EXCLUSIVE (trigger), brief ACCESS EXCLUSIVE (swap)" : "brief EXCLUSIVE per statement");
+                    estimate(p, size, heavyRows);
+                    out.add(p);
+                }
+                for (ColumnChange c : backfills) {
+                    String target = SchemaMigrationService.isBlank(c.getNewColumn()) ? c.getColumn() : c.getNewColumn();
+                    String source = SchemaMigrationService.isBlank(c.getBackfill()) ? "transform " + c.getBackfillTransform() : c.getBackfill();
+                    PlannedStatement p = new PlannedStatement(table,
+                            "chunked backfill of " + target + " from " + source + " (keyset batches, commit per chunk)", "BACKFILL");
+                    p.setLockLevel("ROW EXCLUSIVE (row locks of one chunk at a time)");
+                    estimate(p, size, heavyRows);
+                    out.add(p);
+                }
+            }
+        }
+        return out;
+    }
+
+    /** The statements migrate sends for the table, with the operations the dialect folded into each. */
+    private static void planDdl(List<PlannedStatement> out, Connection conn, Dialect dialect, SchemaSnapshot schema, long[] size,
+                                long heavyRows, String table, List<ColumnChange> ddl) throws SQLException {
+        SchemaSnapshot.Table t = schema.table(table);
+        for (AlterStatement statement : dialect.alterStatements(conn, table, ddl)) {
+            PlannedStatement p = new PlannedStatement(table, statement.sql(), operation(statement));
+            Impact impact = impact(dialect.name(), statement, t);
+            p.setLockLevel(impact.lockLevel());
+            p.setTableRewrite(impact.rewrite());
+            estimate(p, size, heavyRows);
+            out.add(p);
+        }
+    }
+
+    /**
+     * The statement's cost: the most restrictive lock of its clauses, and a rewrite when any clause copies the
+     * table (unknown when none does but one might). A statement without clauses is unknown.
+     */
+    private static Impact impact(String dialect, AlterStatement statement, SchemaSnapshot.Table t) {
+        if (statement.clauses().isEmpty()) return UNKNOWN_IMPACT;
+        Impact lock = null;
+        Boolean rewrite = false;
+        for (AlterStatement.Clause c : statement.clauses()) {
+            Impact i = impact(dialect, c, t);
+            if (lock == null || i.rank() > lock.rank()) lock = i;
+            if (Boolean.TRUE.equals(i.rewrite())) rewrite = true;
+            else if (i.rewrite() == null && Boolean.FALSE.equals(rewrite)) rewrite = null;
+        }
+        return new Impact(lock.rank(), lock.lockLevel(), rewrite);
+    }
+
+    static Impact impact(String dialect, AlterStatement.Clause clause, SchemaSnapshot.Table t) {
+        ColumnChange c = clause.change();
+        SchemaSnapshot.Column current = t == null || c.getColumn() == null ? null : t.column(c.getColumn());
+        return switch (dialect) {
+            // every ALTER TABLE takes ACCESS EXCLUSIVE; ADD COLUMN (PostgreSQL 11+ also with a constant default) and
+            // RENAME are catalog changes, a type change rewrites unless it only widens
+            case "postgresql" -> new Impact(1, "ACCESS EXCLUSIVE", switch (clause.operation()) {
+                case ADD, RENAME -> false;
+                case RETYPE -> !(current != null && isBinaryCompatibleWidening(current, c.getNewType()));
+            });
+            // InnoDB (MySQL 8.0.29+, MariaDB 10.4+): ADD and RENAME COLUMN are ALGORITHM=INSTANT, a brief exclusive
+            // metadata lock; MODIFY COLUMN copies the table and blocks writes, except a VARCHAR widening that keeps its
+            // length prefix, which runs in place - whether it does depends on the column's character set
+            case "mysql" -> switch (clause.operation()) {
+                case ADD, RENAME -> new Impact(1, "brief exclusive metadata lock (ALGORITHM=INSTANT)", false);
+                case RETYPE -> current != null && isVarcharWidening(current, c.getNewType())
+                        ? new Impact(2, "SHARED (writes blocked; INPLACE when the length prefix is kept)", null)
+                        : new Impact(2, "SHARED (ALGORITHM=COPY, writes blocked)", true);
+            };
+            // H2 copies the table for an added or retyped column
+            case "h2" -> new Impact(1, "EXCLUSIVE", clause.operation() != AlterStatement.Operation.RENAME);
+            default -> UNKNOWN_IMPACT;
+        };
+    }
+
+    /** ADD_COLUMN, RENAME or TYPE_CHANGE, joined with + when the statement combines several. */
+    private static String operation(AlterStatement statement) {
+        if (statement.clauses().isEmpty()) return "UNKNOWN";
+        Set<String> operations = new LinkedHashSet<>();
+        for (AlterStatement.Clause c : statement.clauses()) {
+            operations.add(switch (c.operation()) {
+                case ADD -> "ADD_COLUMN";
+                case RENAME -> "RENAME";
+                case RETYPE -> "TYPE_CHANGE";
+            });
+        }
+        return String.join("+", operations);
+    }
+
+    private static void estimate(PlannedStatement p, long[] size, long heavyRows) {
+        p.setEstimatedRows(size[0]);
+        p.setEstimatedBytes(size[1]);
+        // a big table whose rewrite is unknown is flagged too
+        boolean copiesRows = !Boolean.FALSE.equals(p.getTableRewrite())
+                || "ONLINE_TYPE_CHANGE".equals(p.getOperation()) || "BACKFILL".equals(p.getOperation());
+        p.setHeavy(copiesRows && size[0] >= heavyRows);
+    }
+
+    /** {rows, bytes}; -1 when the catalog does not say. */
+    private static long[] tableSize(Connection conn, Dialect dialect, SchemaSnapshot schema, String table) {
+        String sql = switch (dialect.name()) {
+            case "postgresql" -> PG_TABLE_SIZE_SQL;
+            case "mysql" -> MYSQL_TABLE_SIZE_SQL;
+            case "h2" -> H2_TABLE_SIZE_SQL;
+            default -> null;
+        };
+        if (sql == null) return new long[]{-1, -1};
+        SchemaSnapshot.Table t = schema.table(table);
+        String name = t != null ? t.getName() : table;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return new long[]{rs.getLong(1), rs.getLong(2)};
+                }
+            }
+        } catch (SQLException ignore) {
+            // unknown database / no catalog access
+        }
+        return new long[]{-1, -1};
+    }
+
+    /** A VARCHAR made longer, which InnoDB does in place as long as the length prefix (1 or 2 bytes) stays the same. */
+    static boolean isVarcharWidening(SchemaSnapshot.Column current, String declared) {
+        String d = declared.trim().toUpperCase(Locale.ROOT);
+        int paren = d.indexOf('(');
+        if (paren <= 0 || !d.endsWith(")") || !SchemaSnapshot.Column.canonical(current.getTypeName()).equals("VARCHAR")
+                || !SchemaSnapshot.Column.canonical(d.substring(0, paren).trim()).equals("VARCHAR")) {
+            return false;
+        }
+        try {
+            return Integer.parseInt(d.substring(paren + 1, d.length() - 1).trim()) >= current.getSize();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Type changes PostgreSQL does without rewriting the table: a longer (or unlimited) VARCHAR,
+     * VARCHAR to TEXT, and a higher NUMERIC precision with the same scale.
+     */
+    static boolean isBinaryCompatibleWidening(SchemaSnapshot.Column current, String declared) {
+        String d = declared.trim().toUpperCase(Locale.ROOT);
+        String base = d;
+        List<Integer> args = new ArrayList<>();
+        int paren = d.indexOf('(');
+        try {
+            if (paren > 0 && d.endsWith(")")) {
+                base = d.substring(0, paren).trim();
+                for (String a : d.substring(paren + 1, d.length() - 1).split(",")) {
+                    args.add(Integer.parseInt(a.trim()));
+                }
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        String from = SchemaSnapshot.Column.canonical(current.getTypeName());
+        String to = SchemaSnapshot.Column.canonical(base);
+        if ((from.equals("VARCHAR") || from.equals("TEXT")) && (to.equals("TEXT") || (to.equals("VARCHAR") && args.isEmpty()))) {
+            return true;
+        }
+        if (from.equals("VARCHAR") && to.equals("VARCHAR")) {
+            return args.get(0) >= current.getSize();
+        }
+        if (from.equals("DECIMAL") && to.equals("DECIMAL") && !args.isEmpty()) {
+            int scale = args.size() > 1 ? args.get(1) : 0;
+            return args.get(0) >= current.getSize() && scale == current.getDecimalDigits();
+        }
+        return false;
+    }
+}
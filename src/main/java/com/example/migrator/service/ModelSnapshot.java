@@ -0,0 +1,385 @@
+package com.example.migrator.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Read-only view of a binary snapshot of the scanned entity model and the live schema, usually a
+ * memory-mapped file written by {@link SnapshotStore}. Nothing is decoded up front: strings are
+ * interned once in a table and everything else refers to them by index, in columnar int arrays.
+ * <pre>
+ * header   magic "EMSN", version, flags (1: has schema), createdAt, reason, counts, schema name
+ * strings  offsets[strings + 1], UTF-8 bytes
+ * entities className[E], qualifiedName[E], tableName[E], firstField[E + 1]
+ * fields   fieldName[F], type[F], columnName[F], primaryKey byte[F]
+ * tables   name[T], firstColumn[T + 1], firstPk[T + 1]
+ * columns  name[C], typeName[C], size[C], decimalDigits[C], nullable byte[C]
+ * pks      column[P]
+ * </pre>
+ * All ints are big-endian; string references are indexes into the string table, -1 for none.
+ */
+public final class ModelSnapshot {
+
+    static final int MAGIC = 0x454D534E;
+    static final short VERSION = 1;
+    private static final int FLAG_SCHEMA = 1;
+    private static final int HEADER = 48;
+
+    private final ByteBuffer buf;
+    private final long createdAt;
+    private final int flags;
+    private final int strings, entities, fields, tables, columns, pks;
+    private final int stringOffsets, stringData;
+    private final int entityClass, entityQualified, entityTable, entityFirstField;
+    private final int fieldName, fieldType, fieldColumn, fieldPk;
+    private final int tableName, tableFirstColumn, tableFirstPk;
+    private final int columnName, columnType, columnSize, columnDigits, columnNullable;
+    private final int pkColumn;
+    // decoded on first use
+    private final String[] decoded;
+
+    private ModelSnapshot(ByteBuffer buf) {
+        this.buf = buf;
+        if (buf.limit() < HEADER || buf.getInt(0) != MAGIC) throw new IllegalArgumentException("Not a model snapshot");
+        if (buf.getShort(4) != VERSION) throw new IllegalArgumentException("Unsupported snapshot version " + buf.getShort(4));
+        flags = buf.getShort(6);
+        createdAt = buf.getLong(8);
+        strings = buf.getInt(20);
+        entities = buf.getInt(24);
+        fields = buf.getInt(28);
+        tables = buf.getInt(32);
+        columns = buf.getInt(36);
+        pks = buf.getInt(40);
+        int p = HEADER;
+        stringOffsets = p;
+        stringData = p += 4 * (strings + 1);
+        p += buf.getInt(stringOffsets + 4 * strings);
+        entityClass = p;
+        entityQualified = p += 4 * entities;
+        entityTable = p += 4 * entities;
+        entityFirstField = p += 4 * entities;
+        fieldName = p += 4 * (entities + 1);
+        fieldType = p += 4 * fields;
+        fieldColumn = p += 4 * fields;
+        fieldPk = p += 4 * fields;
+        tableName = p += fields;
+        tableFirstColumn = p += 4 * tables;
+        tableFirstPk = p += 4 * (tables + 1);
+        columnName = p += 4 * (tables + 1);
+        columnType = p += 4 * columns;
+        columnSize = p += 4 * columns;
+        columnDigits = p += 4 * columns;
+        columnNullable = p += 4 * columns;
+        pkColumn = p += columns;
+        if (p + 4 * pks > buf.limit()) throw new IllegalArgumentException("Truncated model snapshot");
+        decoded = new String[strings];
+    }
+
+    /** Maps the file read-only; the mapping stays valid after the channel is closed. */
+    public static ModelSnapshot map(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new ModelSnapshot(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    static ModelSnapshot wrap(byte[] bytes) {
+        return new ModelSnapshot(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * @param entities scanAll's entity maps
+     * @param schema   null when the database could not be read
+     */
+    @SuppressWarnings("unchecked")
+    public static byte[] encode(List<Map<String, Object>> entities, SchemaSnapshot schema, long createdAt, String reason) {
+        Map<String, Integer> interned = new LinkedHashMap<>();
+        List<Map<String, Object>> fieldList = new ArrayList<>();
+        for (Map<String, Object> e : entities) {
+            fieldList.addAll((List<Map<String, Object>>) e.get("fields"));
+        }
+        List<SchemaSnapshot.Table> tableList = schema != null ? List.copyOf(schema.getTables().values()) : List.of();
+        int columnCount = 0, pkCount = 0;
+        for (SchemaSnapshot.Table t : tableList) {
+            columnCount += t.getColumns().size();
+            pkCount += t.getPrimaryKey().size();
+        }
+        int reasonRef = intern(interned, reason);
+        int schemaRef = intern(interned, schema != null ? schema.getSchema() : null);
+
+        // the sections after the string table, built first so every string is interned
+        int e = entities.size(), f = fieldList.size(), t = tableList.size();
+        ByteBuffer body = ByteBuffer.allocate(4 * (4 * e + 1) + 13 * f + 4 * (3 * t + 2) + 17 * columnCount + 4 * pkCount);
+        for (String key : List.of("className", "qualifiedName", "tableName")) {
+            for (Map<String, Object> m : entities) body.putInt(intern(interned, (String) m.get(key)));
+        }
+        int first = 0;
+        for (Map<String, Object> m : entities) {
+            body.putInt(first);
+            first += ((List<?>) m.get("fields")).size();
+        }
+        body.putInt(first);
+        for (String key : List.of("fieldName", "type", "columnName")) {
+            for (Map<String, Object> m : fieldList) body.putInt(intern(interned, (String) m.get(key)));
+        }
+        for (Map<String, Object> m : fieldList) body.put((byte) (Boolean.TRUE.equals(m.get("primaryKey")) ? 1 : 0));
+        for (SchemaSnapshot.Table table : tableList) body.putInt(intern(interned, table.getName()));
+        first = 0;
+        for (SchemaSnapshot.Table table : tableList) {
+            body.putInt(first);
+            first += table.getColumns().size();
+        }
+        body.putInt(first);
+        first = 0;
+        for (SchemaSnapshot.Table table : tableList) {
+            body.putInt(first);
+            first += table.getPrimaryKey().size();
+        }
+        body.putInt(first);
+        List<SchemaSnapshot.Column> columnList = new ArrayList<>(columnCount);
+        for (SchemaSnapshot.Table table : tableList) columnList.addAll(table.getColumns().values());
+        for (SchemaSnapshot.Column c : columnList) body.putInt(intern(interned, c.getName()));
+        for (SchemaSnapshot.Column c : columnList) body.putInt(intern(interned, c.getTypeName()));
+        for (SchemaSnapshot.Column c : columnList) body.putInt(c.getSize());
+        for (SchemaSnapshot.Column c : columnList) body.putInt(c.getDecimalDigits());
+        for (SchemaSnapshot.Column c : columnList) body.put((byte) (c.isNullable() ? 1 : 0));
+        for (SchemaSnapshot.Table table : tableList) {
+            for (String pk : table.getPrimaryKey()) body.putInt(intern(interned, pk));
+        }
+
+        List<byte[]> utf8 = new ArrayList<>(interned.size());
+        int dataLength = 0;
+        for (String s : interned.keySet()) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            utf8.add(b);
+            dataLength += b.length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(HEADER + 4 * (utf8.size() + 1) + dataLength + body.capacity());
+        out.putInt(MAGIC).putShort(VERSION).putShort((short) (schema != null ? FLAG_SCHEMA : 0)).putLong(createdAt)
+                .putInt(reasonRef).putInt(utf8.size()).putInt(e).putInt(f).putInt(t).putInt(columnCount).putInt(pkCount)
+                .putInt(schemaRef);
+        int offset = 0;
+        for (byte[] b : utf8) {
+            out.putInt(offset);
+            offset += b.length;
+        }
+        out.putInt(offset);
+        for (byte[] b : utf8) out.put(b);
+        out.put(body.array());
+        return out.array();
+    }
+
+    private static int intern(Map<String, Integer> interned, String s) {
+        if (s == null) return -1;
+        return interned.computeIfAbsent(s, k -> interned.size());
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public String getReason() {
+        return string(buf.getInt(16));
+    }
+
+    public boolean hasSchema() {
+        return (flags & FLAG_SCHEMA) != 0;
+    }
+
+    public int entityCount() {
+        return entities;
+    }
+
+    public int tableCount() {
+        return tables;
+    }
+
+    /** The entity model in scanAll's map format. */
+    public List<Map<String, Object>> entities() {
+        List<Map<String, Object>> out = new ArrayList<>(entities);
+        for (int i = 0; i < entities; i++) {
+            List<Map<String, Object>> fs = new ArrayList<>();
+            for (int j = firstField(i); j < firstField(i + 1); j++) {
+                HashMap<String, Object> fm = new HashMap<>();
+                fm.put("fieldName", string(ref(fieldName, j)));
+                fm.put("type", string(ref(fieldType, j)));
+                fm.put("columnName", string(ref(fieldColumn, j)));
+                fm.put("primaryKey", buf.get(fieldPk + j) != 0);
+                fs.add(fm);
+            }
+            HashMap<String, Object> em = new HashMap<>();
+            em.put("className", string(ref(entityClass, i)));
+            em.put("qualifiedName", string(ref(entityQualified, i)));
+            em.put("tableName", string(ref(entityTable, i)));
+            em.put("fields", fs);
+            out.add(em);
+        }
+        return out;
+    }
+
+    /** @return null when the snapshot has no schema */
+    public SchemaSnapshot schema() {
+        if (!hasSchema()) return null;
+        Map<String, SchemaSnapshot.Table> out = new LinkedHashMap<>();
+        for (int i = 0; i < tables; i++) {
+            Map<String, SchemaSnapshot.Column> cols = new LinkedHashMap<>();
+            for (int c = ref(tableFirstColumn, i); c < ref(tableFirstColumn, i + 1); c++) {
+                SchemaSnapshot.Column column = new SchemaSnapshot.Column(string(ref(columnName, c)), string(ref(columnType, c)),
+                        ref(columnSize, c), ref(columnDigits, c), buf.get(columnNullable + c) != 0);
+                cols.put(column.getName(), column);
+            }
+            String name = string(ref(tableName, i));
+            out.put(name, new SchemaSnapshot.Table(name, cols, primaryKey(i)));
+        }
+        return new SchemaSnapshot(string(buf.getInt(44)), out);
+    }
+
+    /**
+     * What changed from {@code from} to this snapshot, read straight from both buffers:
+     * {entities: {added, removed, changed}, schema: {added, removed, changed}}.
+     * Entities are matched by qualified name, tables and columns by name.
+     */
+    public Map<String, Object> diff(ModelSnapshot from) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("entities", diffEntities(from));
+        if (hasSchema() && from.hasSchema()) out.put("schema", diffTables(from));
+        return out;
+    }
+
+    private Map<String, Object> diffEntities(ModelSnapshot from) {
+        Map<String, Integer> before = from.index(from.entityQualified, from.entities);
+        List<String> added = new ArrayList<>();
+        List<Map<String, Object>> changed = new ArrayList<>();
+        for (int i = 0; i < entities; i++) {
+            String name = string(ref(entityQualified, i));
+            Integer j = before.remove(name);
+            if (j == null) {
+                added.add(name);
+                continue;
+            }
+            Map<String, Object> c = new LinkedHashMap<>();
+            String table = string(ref(entityTable, i));
+            String oldTable = from.string(from.ref(from.entityTable, j));
+            if (!Objects.equals(table, oldTable)) c.put("tableName", changedFromTo(oldTable, table));
+            diffMembers(c, "Fields", from.fieldsOf(j), fieldsOf(i));
+            if (!c.isEmpty()) {
+                c.put("qualifiedName", name);
+                changed.add(c);
+            }
+        }
+        return changes(added, new ArrayList<>(before.keySet()), changed);
+    }
+
+    private Map<String, Object> diffTables(ModelSnapshot from) {
+        Map<String, Integer> before = from.index(from.tableName, from.tables);
+        List<String> added = new ArrayList<>();
+        List<Map<String, Object>> changed = new ArrayList<>();
+        for (int i = 0; i < tables; i++) {
+            String name = string(ref(tableName, i));
+            Integer j = before.remove(name);
+            if (j == null) {
+                added.add(name);
+                continue;
+            }
+            Map<String, Object> c = new LinkedHashMap<>();
+            diffMembers(c, "Columns", from.columnsOf(j), columnsOf(i));
+            List<String> pk = primaryKey(i);
+            List<String> oldPk = from.primaryKey(j);
+            if (!pk.equals(oldPk)) c.put("primaryKey", changedFromTo(oldPk, pk));
+            if (!c.isEmpty()) {
+                c.put("table", name);
+                changed.add(c);
+            }
+        }
+        return changes(added, new ArrayList<>(before.keySet()), changed);
+    }
+
+    /** Members (fields or columns) by name → one-line description; adds what was added, removed or redefined. */
+    private static void diffMembers(Map<String, Object> out, String kind, Map<String, String> before, Map<String, String> after) {
+        List<String> added = new ArrayList<>();
+        List<Map<String, Object>> changed = new ArrayList<>();
+        for (Map.Entry<String, String> m : after.entrySet()) {
+            String old = before.remove(m.getKey());
+            if (old == null) {
+                added.add(m.getKey());
+            } else if (!old.equals(m.getValue())) {
+                Map<String, Object> c = new LinkedHashMap<>(changedFromTo(old, m.getValue()));
+                c.put("name", m.getKey());
+                changed.add(c);
+            }
+        }
+        if (!added.isEmpty()) out.put("added" + kind, added);
+        if (!before.isEmpty()) out.put("removed" + kind, new ArrayList<>(before.keySet()));
+        if (!changed.isEmpty()) out.put("changed" + kind, changed);
+    }
+
+    private static Map<String, Object> changedFromTo(Object from, Object to) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("from", from);
+        out.put("to", to);
+        return out;
+    }
+
+    private static Map<String, Object> changes(List<String> added, List<String> removed, List<Map<String, Object>> changed) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("added", added);
+        out.put("removed", removed);
+        out.put("changed", changed);
+        return out;
+    }
+
+    private Map<String, String> fieldsOf(int entity) {
+        Map<String, String> out = new LinkedHashMap<>();
+        for (int j = firstField(entity); j < firstField(entity + 1); j++) {
+            out.put(string(ref(fieldName, j)), string(ref(fieldType, j)) + " " + string(ref(fieldColumn, j))
+                    + (buf.get(fieldPk + j) != 0 ? " PK" : ""));
+        }
+        return out;
+    }
+
+    private Map<String, String> columnsOf(int table) {
+        Map<String, String> out = new LinkedHashMap<>();
+        for (int c = ref(tableFirstColumn, table); c < ref(tableFirstColumn, table + 1); c++) {
+            out.put(string(ref(columnName, c)), new SchemaSnapshot.Column(null, string(ref(columnType, c)), ref(columnSize, c),
+                    ref(columnDigits, c), true).getSqlType() + (buf.get(columnNullable + c) != 0 ? "" : " NOT NULL"));
+        }
+        return out;
+    }
+
+    private List<String> primaryKey(int table) {
+        List<String> out = new ArrayList<>();
+        for (int p = ref(tableFirstPk, table); p < ref(tableFirstPk, table + 1); p++) out.add(string(ref(pkColumn, p)));
+        return out;
+    }
+
+    private Map<String, Integer> index(int section, int count) {
+        Map<String, Integer> out = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) out.put(string(ref(section, i)), i);
+        return out;
+    }
+
+    private int firstField(int entity) {
+        return ref(entityFirstField, entity);
+    }
+
+    private int ref(int section, int i) {
+        return buf.getInt(section + 4 * i);
+    }
+
+    private String string(int ref) {
+        if (ref < 0) return null;
+        String s = decoded[ref];
+        if (s == null) {
+            int start = buf.getInt(stringOffsets + 4 * ref);
+            byte[] b = new byte[buf.getInt(stringOffsets + 4 * (ref + 1)) - start];
+            buf.get(stringData + start, b);
+            s = new String(b, StandardCharsets.UTF_8);
+            decoded[ref] = s;
+        }
+        return s;
+    }
+}
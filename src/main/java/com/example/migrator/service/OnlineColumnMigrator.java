@@ -0,0 +1,362 @@
+package com.example.migrator.service;
+
+import com.example.migrator.dialect.Dialect;
+import com.example.migrator.dto.BackfillProgress;
+import com.example.migrator.dto.LockAttempt;
+import com.example.migrator.dto.StatementTiming;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.example.migrator.service.SchemaMigrationService.quote;
+
+/**
+ * Changes a column type without a table-rewriting ALTER under an exclusive lock:
+ * <ol>
+ *   <li>add a shadow column of the new type (metadata only),</li>
+ *   <li>keep it in sync with a row trigger while the backfill runs,</li>
+ *   <li>backfill it in keyset-paginated chunks over the primary key, one commit per chunk,
+ *       optionally throttled to a maximum number of rows per second,</li>
+ *   <li>swap the names in one short final transaction and drop the old column.</li>
+ * </ol>
+ * Supports PostgreSQL (plpgsql trigger) and H2 ({@link ShadowColumnTrigger}). The table needs a
+ * single-column primary key, and the column must not be indexed or part of a CHECK or foreign key
+ * constraint, since the swap would drop those with the old column. NOT NULL and the DEFAULT are carried
+ * over to the new column (on PostgreSQL, NOT NULL is proven by a check validated before the swap, so the
+ * swap does not scan the table).
+ * Adding the shadow column and trigger, and the swap, are short DDL transactions that go through the
+ * {@link LockGuard} when one is set ({@link #guarded}).
+ */
+class OnlineColumnMigrator {
+
+    static final String PROP_CHUNK_SIZE = "migration.online.chunkSize";
+    static final String PROP_MAX_ROWS_PER_SECOND = "migration.online.maxRowsPerSecond";
+
+    // CHECK constraints on the column (not NOT NULL, which PostgreSQL 18 also keeps in pg_constraint)
+    private static final String PG_CHECKS_SQL = "SELECT c.conname FROM pg_constraint c JOIN pg_class t ON t.oid = c.conrelid "
+            + "JOIN pg_namespace n ON n.oid = t.relnamespace JOIN pg_attribute a ON a.attrelid = c.conrelid AND a.attnum = ANY (c.conkey) "
+            + "WHERE c.contype = 'c' AND n.nspname = current_schema() AND t.relname = ? AND a.attname = ?";
+    private static final String H2_CHECKS_SQL = "SELECT u.CONSTRAINT_NAME FROM INFORMATION_SCHEMA.CONSTRAINT_COLUMN_USAGE u "
+            + "JOIN INFORMATION_SCHEMA.TABLE_CONSTRAINTS c ON c.CONSTRAINT_SCHEMA = u.CONSTRAINT_SCHEMA AND c.CONSTRAINT_NAME = u.CONSTRAINT_NAME "
+            + "WHERE c.CONSTRAINT_TYPE = 'CHECK' AND u.TABLE_SCHEMA = CURRENT_SCHEMA AND u.TABLE_NAME = ? AND u.COLUMN_NAME = ?";
+
+    private final boolean postgres;
+    private final int chunkSize;
+    private final long maxRowsPerSecond;
+    private LockGuard guard;
+    private Dialect dialect;
+    private CancelToken cancel = new CancelToken();
+    private PhaseTimings phases = new PhaseTimings();
+    private List<LockAttempt> lockAttempts = new ArrayList<>();
+
+    OnlineColumnMigrator(String db) {
+        this(db, Integer.getInteger(PROP_CHUNK_SIZE, 10_000), Long.getLong(PROP_MAX_ROWS_PER_SECOND, 0L));
+    }
+
+    OnlineColumnMigrator(String db, int chunkSize, long maxRowsPerSecond) {
+        this.postgres = db.contains("postgres");
+        if (!postgres && !db.contains("h2")) {
+            throw new IllegalArgumentException("Online column migration is not supported for " + db);
+        }
+        this.chunkSize = chunkSize;
+        this.maxRowsPerSecond = maxRowsPerSecond;
+    }
+
+    /** Runs the DDL steps through {@code guard} (null: unguarded), recording failed attempts in {@code lockAttempts}. */
+    OnlineColumnMigrator guarded(LockGuard guard, Dialect dialect, CancelToken cancel, PhaseTimings phases,
+                                 List<LockAttempt> lockAttempts) {
+        this.guard = guard;
+        this.dialect = dialect;
+        this.cancel = cancel;
+        this.phases = phases;
+        this.lockAttempts = lockAttempts;
+        return this;
+    }
+
+    static String shadowName(String column) {
+        return column + "__new";
+    }
+
+    /** What the new column takes over from the old one. */
+    private record Carried(boolean notNull, String defaultValue) {}
+
+    /**
+     * @param targetColumn name of the column after the swap (the same as {@code column} unless renamed)
+     */
+    BackfillProgress migrate(Connection conn, String table, String column, String targetColumn, String newType,
+                             List<StatementTiming> timings, Consumer<BackfillProgress> progress) throws SQLException {
+        refuseConstraints(conn, table, column);
+        String pk = singlePrimaryKey(conn, table, column);
+        Carried carried = carried(conn, table, column);
+        String shadow = shadowName(column);
+        String tbl = quote(table);
+        String notNullCheck = quote(shadow + "_not_null");
+        boolean orig = conn.getAutoCommit();
+        conn.setAutoCommit(true);
+        try (Statement st = conn.createStatement()) {
+            try {
+                List<String> prepare = new ArrayList<>();
+                prepare.add(String.format("ALTER TABLE %s ADD COLUMN %s %s", tbl, quote(shadow), newType));
+                if (postgres && carried.notNull()) {
+                    // holds for new rows at once (the trigger copies the NOT NULL column), for the old ones once backfilled
+                    prepare.add(String.format("ALTER TABLE %s ADD CONSTRAINT %s CHECK (%s IS NOT NULL) NOT VALID",
+                            tbl, notNullCheck, quote(shadow)));
+                }
+                prepare.addAll(createSyncTrigger(table, column, shadow, newType));
+                ddl(conn, table, prepare, timings);
+                BackfillProgress done = backfill(conn, table, pk, column, shadow, newType, timings, progress);
+                if (postgres && carried.notNull()) {
+                    // a full scan, but under SHARE UPDATE EXCLUSIVE: reads and writes go on
+                    ddl(conn, table, List.of(String.format("ALTER TABLE %s VALIDATE CONSTRAINT %s", tbl, notNullCheck)), timings);
+                }
+                ddl(conn, table, swap(table, column, shadow, targetColumn, newType, carried), timings);
+                return done;
+            } catch (SQLException | RuntimeException ex) {
+                cleanup(st, table, column, shadow, targetColumn);
+                throw ex;
+            }
+        } finally {
+            conn.setAutoCommit(orig);
+        }
+    }
+
+    private List<String> createSyncTrigger(String table, String column, String shadow, String newType) {
+        String trigger = quote(ShadowColumnTrigger.triggerName(table, column));
+        List<String> out = new ArrayList<>();
+        if (postgres) {
+            out.add(String.format("CREATE OR REPLACE FUNCTION %s() RETURNS trigger AS $$ BEGIN NEW.%s := CAST(NEW.%s AS %s); RETURN NEW; END $$ LANGUAGE plpgsql",
+                    trigger, quote(shadow), quote(column), newType));
+            out.add(String.format("CREATE TRIGGER %s BEFORE INSERT OR UPDATE ON %s FOR EACH ROW EXECUTE FUNCTION %s()",
+                    trigger, quote(table), trigger));
+        } else {
+            out.add(String.format("CREATE TRIGGER %s BEFORE INSERT, UPDATE ON %s FOR EACH ROW CALL '%s'",
+                    trigger, quote(table), ShadowColumnTrigger.class.getName()));
+        }
+        return out;
+    }
+
+    private BackfillProgress backfill(Connection conn, String table, String pk, String column, String shadow, String newType,
+                                      List<StatementTiming> timings, Consumer<BackfillProgress> progress) throws SQLException {
+        String tbl = quote(table);
+        String key = quote(pk);
+        String boundFirst = String.format("SELECT MAX(%s) FROM (SELECT %s FROM %s ORDER BY %s LIMIT %d) chunk", key, key, tbl, key, chunkSize);
+        String boundNext = String.format("SELECT MAX(%s) FROM (SELECT %s FROM %s WHERE %s > ? ORDER BY %s LIMIT %d) chunk", key, key, tbl, key, key, chunkSize);
+        String updateFirst = String.format("UPDATE %s SET %s = CAST(%s AS %s) WHERE %s <= ?", tbl, quote(shadow), quote(column), newType, key);
+        String updateNext = String.format("UPDATE %s SET %s = CAST(%s AS %s) WHERE %s > ? AND %s <= ?", tbl, quote(shadow), quote(column), newType, key, key);
+
+        long start = System.nanoTime();
+        long copied = 0;
+        int chunks = 0;
+        Object last = null;
+        while (true) {
+            // between chunks: a cancelled job stops here and the shadow column is dropped
+            cancel.check();
+            Object upper;
+            try (PreparedStatement ps = conn.prepareStatement(last == null ? boundFirst : boundNext)) {
+                if (last != null) ps.setObject(1, last);
+                try (ResultSet rs = ps.executeQuery()) {
+                    upper = rs.next() ? rs.getObject(1) : null;
+                }
+            }
+            if (upper == null) break;
+            try (PreparedStatement ps = conn.prepareStatement(last == null ? updateFirst : updateNext)) {
+                int i = 1;
+                if (last != null) ps.setObject(i++, last);
+                ps.setObject(i, upper);
+                copied += ps.executeUpdate();
+            }
+            last = upper;
+            chunks++;
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            progress.accept(new BackfillProgress(table, column, copied, elapsedMillis, false));
+            throttle(copied, elapsedMillis);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        timings.add(new StatementTiming(updateNext, chunks, elapsedMillis * 1_000));
+        BackfillProgress done = new BackfillProgress(table, column, copied, elapsedMillis, true);
+        progress.accept(done);
+        return done;
+    }
+
+    private void throttle(long copied, long elapsedMillis) {
+        if (maxRowsPerSecond <= 0) return;
+        long wait = copied * 1000 / maxRowsPerSecond - elapsedMillis;
+        if (wait <= 0) return;
+        try {
+            Thread.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Backfill interrupted", e);
+        }
+    }
+
+    /**
+     * One short transaction (PostgreSQL) or a handful of statements (H2, where SET NOT NULL checks the rows).
+     * The constraints taken over are set after the renames, on the new column.
+     */
+    private List<String> swap(String table, String column, String shadow, String target, String newType, Carried carried) {
+        String tbl = quote(table);
+        String old = column + "__old";
+        String trigger = quote(ShadowColumnTrigger.triggerName(table, column));
+        List<String> out = new ArrayList<>();
+        if (postgres) {
+            out.add(String.format("LOCK TABLE %s IN ACCESS EXCLUSIVE MODE", tbl));
+            out.add(String.format("DROP TRIGGER %s ON %s", trigger, tbl));
+            out.add(String.format("DROP FUNCTION %s()", trigger));
+            out.add(String.format("ALTER TABLE %s RENAME COLUMN %s TO %s", tbl, quote(column), quote(old)));
+            out.add(String.format("ALTER TABLE %s RENAME COLUMN %s TO %s", tbl, quote(shadow), quote(target)));
+        } else {
+            out.add(String.format("DROP TRIGGER %s", trigger));
+            out.add(String.format("ALTER TABLE %s ALTER COLUMN %s RENAME TO %s", tbl, quote(column), quote(old)));
+            out.add(String.format("ALTER TABLE %s ALTER COLUMN %s RENAME TO %s", tbl, quote(shadow), quote(target)));
+        }
+        if (carried.notNull()) {
+            // PostgreSQL takes the validated check as proof and skips the scan
+            out.add(String.format("ALTER TABLE %s ALTER COLUMN %s SET NOT NULL", tbl, quote(target)));
+            if (postgres) out.add(String.format("ALTER TABLE %s DROP CONSTRAINT %s", tbl, quote(shadow + "_not_null")));
+        }
+        if (carried.defaultValue() != null) {
+            // the old default is an expression of the old type
+            out.add(String.format("ALTER TABLE %s ALTER COLUMN %s SET DEFAULT CAST((%s) AS %s)",
+                    tbl, quote(target), carried.defaultValue(), newType));
+        }
+        out.add(String.format("ALTER TABLE %s DROP COLUMN %s", tbl, quote(old)));
+        return out;
+    }
+
+    /**
+     * Runs {@code steps} in one transaction, through the guard when there is one. Where DDL commits on its
+     * own (H2), a guarded retry resumes after the steps that went through.
+     */
+    private void ddl(Connection conn, String table, List<String> steps, List<StatementTiming> timings) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            boolean resumable = guard != null && conn.getMetaData().dataDefinitionCausesTransactionCommit();
+            int[] done = {0};
+            LockGuard.Ddl execute = st -> {
+                for (int i = done[0]; i < steps.size(); i++) {
+                    exec(st, steps.get(i), timings);
+                    if (resumable) done[0] = i + 1;
+                }
+            };
+            if (guard != null) {
+                guard.run(conn, dialect, table, cancel, phases, lockAttempts, execute);
+            } else {
+                try (Statement st = conn.createStatement(); CancelToken.Registration ignored = cancel.enter(st)) {
+                    execute.execute(st);
+                }
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Undoes what a failed migrate left behind. On H2 each swap statement commits on its own, so a failure
+     * part way through the swap is picked up from the columns: with the old column renamed but the target not
+     * there yet, the rename is undone; once the target exists, the swap is finished by dropping the old column.
+     */
+    private void cleanup(Statement st, String table, String column, String shadow, String target) {
+        String tbl = quote(table);
+        String old = column + "__old";
+        String trigger = quote(ShadowColumnTrigger.triggerName(table, column));
+        try {
+            Connection conn = st.getConnection();
+            if (columnExists(conn, table, old)) {
+                if (columnExists(conn, table, target)) {
+                    st.execute(String.format("ALTER TABLE %s DROP COLUMN %s", tbl, quote(old)));
+                    return;
+                }
+                st.execute(postgres ? String.format("ALTER TABLE %s RENAME COLUMN %s TO %s", tbl, quote(old), quote(column))
+                        : String.format("ALTER TABLE %s ALTER COLUMN %s RENAME TO %s", tbl, quote(old), quote(column)));
+            }
+            st.execute(postgres ? String.format("DROP TRIGGER IF EXISTS %s ON %s", trigger, tbl) : String.format("DROP TRIGGER IF EXISTS %s", trigger));
+            if (postgres) st.execute(String.format("DROP FUNCTION IF EXISTS %s()", trigger));
+            st.execute(String.format("ALTER TABLE %s DROP COLUMN IF EXISTS %s", tbl, quote(shadow)));
+        } catch (SQLException ignore) {}
+    }
+
+    private static boolean columnExists(Connection conn, String table, String column) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getColumns(conn.getCatalog(), null, table, column)) {
+            return rs.next();
+        }
+    }
+
+    private static String singlePrimaryKey(Connection conn, String table, String column) throws SQLException {
+        DatabaseMetaData md = conn.getMetaData();
+        List<String> pk = new ArrayList<>();
+        try (ResultSet rs = md.getPrimaryKeys(conn.getCatalog(), null, table)) {
+            while (rs.next()) pk.add(rs.getString("COLUMN_NAME"));
+        }
+        if (pk.size() != 1) {
+            throw new IllegalStateException("Online type change needs a single-column primary key on " + table + ", found " + pk);
+        }
+        if (pk.get(0).equals(column)) {
+            throw new IllegalStateException("Cannot change the primary key column " + table + "." + column + " online");
+        }
+        try (ResultSet rs = md.getIndexInfo(conn.getCatalog(), null, table, false, true)) {
+            while (rs.next()) {
+                if (column.equals(rs.getString("COLUMN_NAME"))) {
+                    throw new IllegalStateException("Column " + table + "." + column + " is indexed (" + rs.getString("INDEX_NAME")
+                            + "); an online type change would drop the index");
+                }
+            }
+        }
+        return pk.get(0);
+    }
+
+    /**
+     * CHECK and foreign key constraints on the column would be dropped with it (or, on H2, block the drop):
+     * such columns are refused like indexed ones.
+     */
+    private void refuseConstraints(Connection conn, String table, String column) throws SQLException {
+        DatabaseMetaData md = conn.getMetaData();
+        try (ResultSet rs = md.getImportedKeys(conn.getCatalog(), null, table)) {
+            while (rs.next()) {
+                if (column.equals(rs.getString("FKCOLUMN_NAME"))) {
+                    throw new IllegalStateException("Column " + table + "." + column + " is in foreign key " + rs.getString("FK_NAME")
+                            + "; an online type change would drop it");
+                }
+            }
+        }
+        try (ResultSet rs = md.getExportedKeys(conn.getCatalog(), null, table)) {
+            while (rs.next()) {
+                if (column.equals(rs.getString("PKCOLUMN_NAME"))) {
+                    throw new IllegalStateException("Column " + table + "." + column + " is referenced by foreign key "
+                            + rs.getString("FK_NAME") + "; an online type change would drop it");
+                }
+            }
+        }
+        try (PreparedStatement ps = conn.prepareStatement(postgres ? PG_CHECKS_SQL : H2_CHECKS_SQL)) {
+            ps.setString(1, table);
+            ps.setString(2, column);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    throw new IllegalStateException("Column " + table + "." + column + " is in CHECK constraint " + rs.getString(1)
+                            + "; an online type change would drop it");
+                }
+            }
+        }
+    }
+
+    private static Carried carried(Connection conn, String table, String column) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getColumns(conn.getCatalog(), null, table, column)) {
+            if (!rs.next()) throw new IllegalStateException("Column not found: " + table + "." + column);
+            String defaultValue = rs.getString("COLUMN_DEF");
+            return new Carried(rs.getInt("NULLABLE") == DatabaseMetaData.columnNoNulls,
+                    defaultValue == null || defaultValue.isBlank() ? null : defaultValue);
+        }
+    }
+
+    private static void exec(Statement st, String sql, List<StatementTiming> timings) throws SQLException {
+        long start = System.nanoTime();
+        st.execute(sql);
+        timings.add(new StatementTiming(sql, 1, (System.nanoTime() - start) / 1_000));
+    }
+}
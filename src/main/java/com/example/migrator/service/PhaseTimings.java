@@ -0,0 +1,83 @@
+package com.example.migrator.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time spent per phase of one scan or apply, returned as the {@code timings} section of the API
+ * response and recorded to the Micrometer timer {@code migrator.phase} (tag {@code phase}), which
+ * Actuator exposes under /actuator/metrics and /actuator/prometheus.
+ * Phases timed on several threads add up, so a parallel phase can exceed the elapsed total.
+ */
+public class PhaseTimings {
+
+    public static final String TIMER = "migrator.phase";
+
+    private final MeterRegistry registry;
+    private final long started = System.nanoTime();
+    private final Map<String, Phase> phases = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /** Records to the global registry, which Spring Boot binds its own registry to. */
+    public PhaseTimings() {
+        this(Metrics.globalRegistry);
+    }
+
+    public PhaseTimings(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    public void stop(String phase, long start) {
+        record(phase, System.nanoTime() - start);
+    }
+
+    public void record(String phase, long nanos) {
+        Phase p = phases.computeIfAbsent(phase, k -> new Phase(Timer.builder(TIMER).tag("phase", k).register(registry)));
+        p.nanos.add(nanos);
+        p.count.increment();
+        p.timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long nanos(String phase) {
+        Phase p = phases.get(phase);
+        return p != null ? p.nanos.sum() : 0;
+    }
+
+    /** {phase: {millis, count}, ..., totalMillis} in the order the phases first ran. */
+    public Map<String, Object> toMap() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        synchronized (phases) {
+            phases.forEach((name, p) -> out.put(name, Map.of("millis", millis(p.nanos.sum()), "count", p.count.sum())));
+        }
+        out.put("totalMillis", millis(System.nanoTime() - started));
+        return out;
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+
+    private static final class Phase {
+        final Timer timer;
+        final LongAdder nanos = new LongAdder();
+        final LongAdder count = new LongAdder();
+
+        Phase(Timer timer) {
+            this.timer = timer;
+        }
+    }
+}
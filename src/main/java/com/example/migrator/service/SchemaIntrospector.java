@@ -0,0 +1,232 @@
+package com.example.migrator.service;
+
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads the live schema in bulk (one getColumns call and one primary key query per schema) and
+ * caches it for the length of one operation: every apply, plan and diff starts from {@link #refresh},
+ * since anything else may have changed the schema in between. Within the operation, tables touched by
+ * a migration are invalidated and re-read individually on next use.
+ */
+@Service
+public class SchemaIntrospector {
+
+    // standard information_schema views, available on H2, PostgreSQL and MySQL
+    private static final String PRIMARY_KEYS_SQL =
+            "SELECT k.TABLE_NAME, k.COLUMN_NAME FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS t " +
+            "JOIN INFORMATION_SCHEMA.KEY_COLUMN_USAGE k ON k.CONSTRAINT_SCHEMA = t.CONSTRAINT_SCHEMA " +
+            "AND k.CONSTRAINT_NAME = t.CONSTRAINT_NAME AND k.TABLE_NAME = t.TABLE_NAME " +
+            "WHERE t.CONSTRAINT_TYPE = 'PRIMARY KEY' AND t.TABLE_SCHEMA = ? ORDER BY k.TABLE_NAME, k.ORDINAL_POSITION";
+
+    private static final Map<String, List<String>> JAVA_TO_SQL = Map.ofEntries(
+            Map.entry("String", List.of("VARCHAR(255)", "CHAR", "TEXT", "CLOB", "CHARACTER LARGE OBJECT")),
+            Map.entry("Long", List.of("BIGINT")), Map.entry("long", List.of("BIGINT")),
+            Map.entry("Integer", List.of("INTEGER")), Map.entry("int", List.of("INTEGER")),
+            Map.entry("Short", List.of("SMALLINT")), Map.entry("short", List.of("SMALLINT")),
+            Map.entry("BigDecimal", List.of("DECIMAL(19,2)")),
+            Map.entry("Boolean", List.of("BOOLEAN", "BIT")), Map.entry("boolean", List.of("BOOLEAN", "BIT")),
+            Map.entry("Double", List.of("DOUBLE PRECISION", "FLOAT")), Map.entry("double", List.of("DOUBLE PRECISION", "FLOAT")),
+            Map.entry("Float", List.of("REAL")), Map.entry("float", List.of("REAL")),
+            Map.entry("LocalDateTime", List.of("TIMESTAMP")),
+            Map.entry("OffsetDateTime", List.of("TIMESTAMPTZ", "TIMESTAMP")),
+            Map.entry("Instant", List.of("TIMESTAMPTZ", "TIMESTAMP")),
+            Map.entry("LocalDate", List.of("DATE")),
+            Map.entry("LocalTime", List.of("TIME")),
+            Map.entry("UUID", List.of("UUID")));
+
+    private final DataSource dataSource;
+    private volatile SchemaSnapshot cached;
+    private final Set<String> staleTables = ConcurrentHashMap.newKeySet();
+
+    public SchemaIntrospector(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public SchemaSnapshot snapshot() throws SQLException {
+        SchemaSnapshot s = cached;
+        if (s != null && staleTables.isEmpty()) return s;
+        try (Connection conn = dataSource.getConnection()) {
+            return snapshot(conn);
+        }
+    }
+
+    synchronized SchemaSnapshot snapshot(Connection conn) throws SQLException {
+        if (cached == null) {
+            staleTables.clear();
+            cached = load(conn);
+        }
+        for (String table : List.copyOf(staleTables)) {
+            staleTables.remove(table);
+            SchemaSnapshot.Table current = cached.table(table);
+            String name = current != null ? current.getName() : table;
+            cached = cached.withTable(name, loadTable(conn, cached.getSchema(), name));
+        }
+        return cached;
+    }
+
+    /** Reads the whole schema again; the start of every operation that decides against it. */
+    public SchemaSnapshot refresh() throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            return refresh(conn);
+        }
+    }
+
+    synchronized SchemaSnapshot refresh(Connection conn) throws SQLException {
+        cached = null;
+        return snapshot(conn);
+    }
+
+    public void invalidate() {
+        cached = null;
+    }
+
+    public void invalidateTable(String table) {
+        staleTables.add(table);
+    }
+
+    private SchemaSnapshot load(Connection conn) throws SQLException {
+        String schema = conn.getSchema();
+        DatabaseMetaData md = conn.getMetaData();
+        Map<String, Map<String, SchemaSnapshot.Column>> columns = new LinkedHashMap<>();
+        try (ResultSet rs = md.getColumns(conn.getCatalog(), schema, "%", "%")) {
+            while (rs.next()) {
+                columns.computeIfAbsent(rs.getString("TABLE_NAME"), k -> new LinkedHashMap<>())
+                        .put(rs.getString("COLUMN_NAME"), column(rs));
+            }
+        }
+        Map<String, List<String>> pks = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(PRIMARY_KEYS_SQL)) {
+            // MySQL has no schemas (getSchema() is null): its TABLE_SCHEMA is the database, i.e. the catalog
+            ps.setString(1, schema != null ? schema : conn.getCatalog());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    pks.computeIfAbsent(rs.getString(1), k -> new ArrayList<>()).add(rs.getString(2));
+                }
+            }
+        } catch (SQLException ex) {
+            pks.clear();
+        }
+        if (pks.isEmpty() && !columns.isEmpty()) {
+            // no information_schema, or a query that matched nothing: one metadata call per table
+            for (String table : columns.keySet()) {
+                pks.put(table, primaryKey(md, conn.getCatalog(), schema, table));
+            }
+        }
+        Map<String, SchemaSnapshot.Table> tables = new LinkedHashMap<>();
+        columns.forEach((table, cols) -> tables.put(table, new SchemaSnapshot.Table(table, cols, pks.getOrDefault(table, List.of()))));
+        return new SchemaSnapshot(schema, tables);
+    }
+
+    private SchemaSnapshot.Table loadTable(Connection conn, String schema, String table) throws SQLException {
+        DatabaseMetaData md = conn.getMetaData();
+        Map<String, SchemaSnapshot.Column> cols = new LinkedHashMap<>();
+        try (ResultSet rs = md.getColumns(conn.getCatalog(), schema, escape(md, table), "%")) {
+            while (rs.next()) {
+                cols.put(rs.getString("COLUMN_NAME"), column(rs));
+            }
+        }
+        if (cols.isEmpty()) return null;
+        return new SchemaSnapshot.Table(table, cols, primaryKey(md, conn.getCatalog(), schema, table));
+    }
+
+    private static SchemaSnapshot.Column column(ResultSet rs) throws SQLException {
+        return new SchemaSnapshot.Column(rs.getString("COLUMN_NAME"), rs.getString("TYPE_NAME"),
+                rs.getInt("COLUMN_SIZE"), rs.getInt("DECIMAL_DIGITS"), rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
+    }
+
+    private static List<String> primaryKey(DatabaseMetaData md, String catalog, String schema, String table) throws SQLException {
+        List<String> pk = new ArrayList<>();
+        try (ResultSet rs = md.getPrimaryKeys(catalog, schema, table)) {
+            while (rs.next()) pk.add(rs.getString("COLUMN_NAME"));
+        }
+        return pk;
+    }
+
+    private static String escape(DatabaseMetaData md, String name) throws SQLException {
+        String esc = md.getSearchStringEscape();
+        if (esc == null || esc.isEmpty()) return name;
+        return name.replace(esc, esc + esc).replace("_", esc + "_").replace("%", esc + "%");
+    }
+
+    /**
+     * Compares the scanned entity model ({@link EntityScannerService#scanAll()} entities) with the live
+     * schema. Missing columns come with a ready-to-apply change in the /api/apply payload format.
+     */
+    public List<Map<String, Object>> diff(List<Map<String, Object>> entities) throws SQLException {
+        SchemaSnapshot schema = refresh();
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (Map<String, Object> em : entities) {
+            String tableName = (String) em.get("tableName");
+            String qualifiedName = (String) em.get("qualifiedName");
+            SchemaSnapshot.Table table = schema.table(tableName);
+            if (table == null) {
+                out.add(difference("MISSING_TABLE", tableName, null, qualifiedName));
+                continue;
+            }
+            Set<String> mapped = new HashSet<>();
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> fields = (List<Map<String, Object>>) em.get("fields");
+            for (Map<String, Object> f : fields) {
+                String columnName = (String) f.get("columnName");
+                String javaType = (String) f.get("type");
+                SchemaSnapshot.Column column = table.column(columnName);
+                if (column == null) {
+                    Map<String, Object> d = difference("MISSING_COLUMN", tableName, columnName, qualifiedName);
+                    d.put("entityType", javaType);
+                    List<String> sqlTypes = JAVA_TO_SQL.get(javaType);
+                    if (sqlTypes != null) {
+                        Map<String, Object> change = new LinkedHashMap<>();
+                        // the live table name, so the generated ALTER matches its case
+                        change.put("table", table.getName());
+                        change.put("newColumn", columnName);
+                        change.put("newType", sqlTypes.get(0));
+                        change.put("qualifiedName", qualifiedName);
+                        change.put("fieldName", f.get("fieldName"));
+                        d.put("change", change);
+                    }
+                    out.add(d);
+                    continue;
+                }
+                mapped.add(column.getName());
+                List<String> sqlTypes = JAVA_TO_SQL.get(javaType);
+                if (sqlTypes != null && sqlTypes.stream().noneMatch(t -> sameBaseType(t, column))) {
+                    Map<String, Object> d = difference("TYPE_MISMATCH", tableName, columnName, qualifiedName);
+                    d.put("entityType", javaType);
+                    d.put("dbType", column.getSqlType());
+                    out.add(d);
+                }
+                if (Boolean.TRUE.equals(f.get("primaryKey")) != table.isPrimaryKey(column.getName())) {
+                    Map<String, Object> d = difference("PK_MISMATCH", tableName, columnName, qualifiedName);
+                    d.put("entityPrimaryKey", f.get("primaryKey"));
+                    out.add(d);
+                }
+            }
+            for (String column : table.getColumns().keySet()) {
+                if (!mapped.contains(column)) {
+                    out.add(difference("EXTRA_COLUMN", tableName, column, qualifiedName));
+                }
+            }
+        }
+        return out;
+    }
+
+    private static boolean sameBaseType(String sqlType, SchemaSnapshot.Column column) {
+        int paren = sqlType.indexOf('(');
+        String base = paren > 0 ? sqlType.substring(0, paren) : sqlType;
+        return SchemaSnapshot.Column.canonical(base).equals(SchemaSnapshot.Column.canonical(column.getTypeName()));
+    }
+
+    private static Map<String, Object> difference(String kind, String table, String column, String qualifiedName) {
+        Map<String, Object> d = new LinkedHashMap<>();
+        d.put("kind", kind);
+        d.put("table", table);
+        if (column != null) d.put("column", column);
+        d.put("qualifiedName", qualifiedName);
+        return d;
+    }
+}
@@ -1,98 +1,706 @@
 
 package com.example.migrator.service;
 
+import com.example.migrator.dialect.AlterStatement;
+import com.example.migrator.dialect.Dialect;
+import com.example.migrator.dialect.Dialects;
+import com.example.migrator.dto.BackfillProgress;
 import com.example.migrator.dto.ColumnChange;
+import com.example.migrator.dto.StatementTiming;
+import com.example.migrator.dto.TableMigrationResult;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 @Service
 public class SchemaMigrationService {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final String PROP_PARALLEL = "migration.parallel";
+    private static final String PROP_PARALLELISM = "migration.parallelism";
+    private static final String PROP_ONLINE = "migration.online";
+    private static final String TABLE_TIMER = "migrator.migration.table";
+    private static final String STATEMENT_TIMER = "migrator.migration.statement";
+    private static final String JOURNAL_STEP = MigrationJournal.DDL_STEP;
+
     private final DataSource dataSource;
+    private final SchemaIntrospector introspector;
+    // resolved once per DataSource instead of once per table
+    private volatile String databaseProduct;
+    private volatile Dialect dialect;
+    private volatile Boolean batchUpdates;
+    private final List<Consumer<BackfillProgress>> backfillListeners = new CopyOnWriteArrayList<>();
+    private final Map<String, BackfillTransform> backfillTransforms = new ConcurrentHashMap<>();
+    private final List<StatementListener> statementListeners = new CopyOnWriteArrayList<>();
+    private final ReentrantLock h2Ddl = new ReentrantLock();
+    private volatile LockGuard lockGuard;
+
+    /** Told around every DDL statement a migrate runs (a JDBC batch counts as one), on the migrating thread. */
+    public interface StatementListener {
+        void started(String table, String sql);
+
+        void finished(String table, String sql, boolean ok);
+    }
 
     public SchemaMigrationService(DataSource dataSource) {
+        this(dataSource, new SchemaIntrospector(dataSource));
+    }
+
+    @Autowired
+    public SchemaMigrationService(DataSource dataSource, SchemaIntrospector introspector) {
         this.dataSource = dataSource;
+        this.introspector = introspector;
+    }
+
+    /** Guards every table's DDL with {@code guard} instead of reading -Dmigration.guard on each migrate. */
+    void setLockGuard(LockGuard guard) {
+        this.lockGuard = guard;
+    }
+
+    /** BackfillTransform beans, by bean name. */
+    @Autowired(required = false)
+    public void setBackfillTransforms(Map<String, BackfillTransform> transforms) {
+        backfillTransforms.putAll(transforms);
+    }
+
+    /** Makes {@code transform} available to changes as {@code backfillTransform: name}. */
+    public void registerBackfillTransform(String name, BackfillTransform transform) {
+        backfillTransforms.put(name, transform);
     }
 
     public Map<String, String> applyChanges(List<ColumnChange> changes) {
-        Map<String, List<ColumnChange>> byTable = new HashMap<>();
+        return statuses(migrate(changes));
+    }
+
+    /**
+     * Applies the changes table by table. Each table runs in its own transaction; its statements
+     * are sent as a single JDBC batch when the driver supports it. With -Dmigration.parallel=true
+     * independent tables are migrated concurrently, see {@link #migrateConcurrently}.
+     */
+    public Map<String, TableMigrationResult> migrate(List<ColumnChange> changes) {
+        return migrate(changes, new PhaseTimings());
+    }
+
+    /** Same as {@link #migrate(List)}, with the time per phase (sql.*) added to the given timings. */
+    public Map<String, TableMigrationResult> migrate(List<ColumnChange> changes, PhaseTimings timings) {
+        return migrate(changes, timings, (table, r) -> {});
+    }
+
+    /**
+     * Same as {@link #migrate(List, PhaseTimings)}; {@code onTable} is called as soon as each table is
+     * finished (from the worker threads when tables run concurrently), e.g. to journal it.
+     */
+    public Map<String, TableMigrationResult> migrate(List<ColumnChange> changes, PhaseTimings timings,
+                                                     BiConsumer<String, TableMigrationResult> onTable) {
+        return migrate(changes, timings, onTable, new CancelToken());
+    }
+
+    private Map<String, TableMigrationResult> migrate(List<ColumnChange> changes, PhaseTimings timings,
+                                                      BiConsumer<String, TableMigrationResult> onTable, CancelToken cancel) {
+        return migrate(changes, currentSchema(timings), timings, onTable, cancel);
+    }
+
+    /** @param schema the live schema read at the start of this apply (null: unreadable, every change is sent) */
+    private Map<String, TableMigrationResult> migrate(List<ColumnChange> changes, SchemaSnapshot schema, PhaseTimings timings,
+                                                      BiConsumer<String, TableMigrationResult> onTable, CancelToken cancel) {
+        // changes the live schema already reflects are dropped before any DDL is sent
+        // only tables with an effective change or a backfill left are migrated
+        Map<String, List<ColumnChange>> byTable = new LinkedHashMap<>();
+        Map<String, List<String>> skipped = new HashMap<>();
+        for (ColumnChange c : changes) {
+            ColumnChange effective = schema == null ? c : minimal(schema, c);
+            if (effective == null) {
+                skipped.computeIfAbsent(c.getTable(), k -> new ArrayList<>()).add(describe(c));
+                // the DDL is in place but the backfill may not have finished: rerun it, it resumes from its checkpoints
+                if (hasBackfill(c)) byTable.computeIfAbsent(c.getTable(), k -> new ArrayList<>()).add(backfillOnly(c));
+            } else {
+                if (hasBackfill(c)) {
+                    effective.setBackfill(c.getBackfill());
+                    effective.setBackfillTransform(c.getBackfillTransform());
+                }
+                byTable.computeIfAbsent(c.getTable(), k -> new ArrayList<>()).add(effective);
+            }
+        }
+        Map<String, TableMigrationResult> migrated = byTable.isEmpty() ? Map.of()
+                : Boolean.getBoolean(PROP_PARALLEL) && byTable.size() > 1
+                ? migrateConcurrently(byTable, timings, onTable, cancel)
+                : migrateTables(new ArrayList<>(byTable.keySet()), byTable, timings, onTable, cancel, backfillWorkers(1));
+        Map<String, TableMigrationResult> result = new LinkedHashMap<>();
+        for (ColumnChange c : changes) {
+            String table = c.getTable();
+            if (result.containsKey(table)) continue;
+            TableMigrationResult r = migrated.get(table);
+            if (r == null) {
+                // nothing left to do: no connection, no DDL
+                r = new TableMigrationResult("OK");
+                r.getSkipped().addAll(skipped.get(table));
+                onTable.accept(table, r);
+            } else if (skipped.containsKey(table)) {
+                r.getSkipped().addAll(skipped.get(table));
+            }
+            result.put(table, r);
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #migrate(List, PhaseTimings)} as steps of a journal run, one per table: a table is
+     * recorded PLANNED before its DDL is sent and DONE or FAILED when it finishes, and tables an earlier
+     * attempt of the run already migrated are not sent again (status OK, listed under {@code skipped}).
+     * A table the journal calls done but whose DDL the live schema no longer reflects (reverted since) is
+     * migrated again.
+     */
+    public Map<String, TableMigrationResult> migrate(List<ColumnChange> changes, PhaseTimings timings, MigrationJournal.Run run) {
+        return migrate(changes, timings, run, (table, r) -> {}, new CancelToken());
+    }
+
+    /**
+     * Journaled migrate that also reports each finished table to {@code onTable} (tables skipped by the
+     * journal included) and can be stopped through {@code cancel}: the table in flight is rolled back
+     * and the remaining ones are not started (status CANCELLED).
+     */
+    public Map<String, TableMigrationResult> migrate(List<ColumnChange> changes, PhaseTimings timings, MigrationJournal.Run run,
+                                                     BiConsumer<String, TableMigrationResult> onTable, CancelToken cancel) {
+        Map<String, List<ColumnChange>> byTable = new LinkedHashMap<>();
         for (ColumnChange c : changes) {
             byTable.computeIfAbsent(c.getTable(), k -> new ArrayList<>()).add(c);
         }
-        Map<String, String> result = new HashMap<>();
-        for (Map.Entry<String, List<ColumnChange>> e : byTable.entrySet()) {
-            String table = e.getKey();
-            List<ColumnChange> ops = e.getValue();
-            try (Connection conn = dataSource.getConnection()) {
-                boolean orig = conn.getAutoCommit();
+        Map<String, String> checksums = new HashMap<>();
+        Map<String, TableMigrationResult> result = new LinkedHashMap<>();
+        List<ColumnChange> pending = new ArrayList<>();
+        SchemaSnapshot schema = currentSchema(timings);
+        byTable.forEach((table, tableChanges) -> {
+            String checksum = MigrationJournal.checksum(tableChanges);
+            if (reflected(schema, tableChanges) && run.skipIfDone(JOURNAL_STEP + table, checksum)) {
+                TableMigrationResult r = new TableMigrationResult("OK");
+                r.getSkipped().add("already applied by journal run " + run.getRunId());
+                result.put(table, r);
+                onTable.accept(table, r);
+            } else {
+                checksums.put(table, checksum);
+                run.planned(JOURNAL_STEP + table, checksum);
+                pending.addAll(tableChanges);
+                result.put(table, null);
+            }
+        });
+        if (!pending.isEmpty()) {
+            result.putAll(migrate(pending, schema, timings, (table, r) -> {
+                if ("OK".equals(r.getStatus())) run.done(JOURNAL_STEP + table, checksums.get(table), null);
+                else run.failed(JOURNAL_STEP + table, checksums.get(table), r.getStatus());
+                onTable.accept(table, r);
+            }, cancel));
+        }
+        return result;
+    }
+
+    /**
+     * Whether the live schema still has every DDL change of a table; backfill-only changes have no DDL to
+     * check and an unreadable schema leaves the decision to the journal.
+     */
+    private static boolean reflected(SchemaSnapshot schema, List<ColumnChange> changes) {
+        if (schema == null) return true;
+        for (ColumnChange c : changes) {
+            if (!isBackfillOnly(c) && minimal(schema, c) != null) return false;
+        }
+        return true;
+    }
+
+    /** Read afresh for every apply: another instance, tool or DBA may have changed the schema since the last one. */
+    private SchemaSnapshot currentSchema(PhaseTimings timings) {
+        long start = PhaseTimings.start();
+        try {
+            return introspector.refresh();
+        } catch (SQLException ex) {
+            return null;
+        } finally {
+            timings.stop("sql.snapshot", start);
+        }
+    }
+
+    /**
+     * Reduces a change to what the live schema still lacks.
+     * @return the change, a smaller change, or null when it is already in place
+     */
+    static ColumnChange minimal(SchemaSnapshot schema, ColumnChange c) {
+        SchemaSnapshot.Table t = schema.table(c.getTable());
+        if (t == null) return c;
+        if (isBlank(c.getColumn())) {
+            // ADD COLUMN
+            return !isBlank(c.getNewColumn()) && t.column(c.getNewColumn()) != null ? null : c;
+        }
+        SchemaSnapshot.Column from = t.column(c.getColumn());
+        boolean retype = !isBlank(c.getNewType());
+        if (!isBlank(c.getNewColumn()) && !c.getNewColumn().equals(c.getColumn())) {
+            SchemaSnapshot.Column to = t.column(c.getNewColumn());
+            if (from == null && to != null) {
+                // the rename already happened
+                if (!retype || to.hasType(c.getNewType())) return null;
+                ColumnChange typeOnly = new ColumnChange(c.getTable(), c.getNewColumn(), null, c.getNewType(), c.isPrimaryKey());
+                typeOnly.setOnline(c.isOnline());
+                return typeOnly;
+            }
+            return c;
+        }
+        return retype && from != null && from.hasType(c.getNewType()) ? null : c;
+    }
+
+    private static String describe(ColumnChange c) {
+        return String.format("%s -> %s %s (already applied)",
+                Objects.toString(c.getColumn(), ""), Objects.toString(c.getNewColumn(), ""), Objects.toString(c.getNewType(), "")).trim();
+    }
+
+    /**
+     * Tables linked by foreign keys form one group that is migrated sequentially, parents first;
+     * the groups themselves run on a bounded pool sized against the connection pool, counting the
+     * connections of their backfill workers. A group that fails outright reports its unfinished tables
+     * as FAILED; the other groups' results, committed tables of the failed group included, are kept.
+     * The returned map keeps the order of the incoming change set.
+     */
+    private Map<String, TableMigrationResult> migrateConcurrently(Map<String, List<ColumnChange>> byTable, PhaseTimings timings,
+                                                                  BiConsumer<String, TableMigrationResult> onTable, CancelToken cancel) {
+        List<List<String>> groups;
+        long start = PhaseTimings.start();
+        try {
+            groups = dependencyGroups(new ArrayList<>(byTable.keySet()));
+            timings.stop("sql.fkGraph", start);
+        } catch (SQLException ex) {
+            // without the FK graph we cannot tell which tables are independent
+            return migrateTables(new ArrayList<>(byTable.keySet()), byTable, timings, onTable, cancel, backfillWorkers(1));
+        }
+        // a group holds its table connection while a backfill of that table runs on at least one more
+        boolean backfills = byTable.values().stream().flatMap(List::stream).anyMatch(SchemaMigrationService::hasBackfill);
+        int threads = Math.min(groups.size(), Math.max(1, parallelism() / (backfills ? 2 : 1)));
+        if (threads <= 1) {
+            return migrateTables(new ArrayList<>(byTable.keySet()), byTable, timings, onTable, cancel, backfillWorkers(1));
+        }
+        int workers = backfillWorkers(threads);
+        Map<String, TableMigrationResult> merged = new ConcurrentHashMap<>();
+        BiConsumer<String, TableMigrationResult> finished = (table, r) -> {
+            merged.put(table, r);
+            onTable.accept(table, r);
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (List<String> group : groups) {
+                futures.add(pool.submit(() -> migrateTables(group, byTable, timings, finished, cancel, workers)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
                 try {
-                    conn.setAutoCommit(false);
-                    DatabaseMetaData md = conn.getMetaData();
-                    String db = md.getDatabaseProductName().toLowerCase();
-                    try (Statement st = conn.createStatement()) {
-                        for (ColumnChange c : ops) {
-                            List<String> stmts = buildSql(db, table, c);
-                            for (String s : stmts) {
-                                st.execute(s);
-                            }
-                        }
+                    futures.get(i).get();
+                } catch (ExecutionException ex) {
+                    String status = "FAILED: " + ex.getCause().getMessage();
+                    for (String table : groups.get(i)) {
+                        if (!merged.containsKey(table)) finished.accept(table, new TableMigrationResult(status));
                     }
-                    conn.commit();
-                    result.put(table, "OK");
-                } catch (Exception ex) {
-                    try { conn.rollback(); } catch (SQLException ignore) {}
-                    result.put(table, "FAILED: " + ex.getMessage());
+                }
+            }
+            Map<String, TableMigrationResult> result = new LinkedHashMap<>();
+            for (String table : byTable.keySet()) {
+                result.put(table, merged.get(table));
+            }
+            return result;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while migrating tables", ex);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the given tables one after another over one reused connection.
+     * @param backfillWorkers connections a backfill of one of these tables may open besides that one
+     */
+    private Map<String, TableMigrationResult> migrateTables(List<String> tables, Map<String, List<ColumnChange>> byTable, PhaseTimings timings,
+                                                            BiConsumer<String, TableMigrationResult> onTable, CancelToken cancel,
+                                                            int backfillWorkers) {
+        Map<String, TableMigrationResult> result = new LinkedHashMap<>();
+        Connection conn = null;
+        boolean suspect = false;
+        try {
+            for (String table : tables) {
+                if (cancel.isCancelled()) {
+                    TableMigrationResult cancelled = new TableMigrationResult(CancelToken.CANCELLED);
+                    result.put(table, cancelled);
+                    onTable.accept(table, cancelled);
+                    continue;
+                }
+                long start = PhaseTimings.start();
+                try {
+                    // only pay for a validity round trip after something went wrong
+                    if (conn != null && suspect && !conn.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                        closeQuietly(conn);
+                        conn = null;
+                    }
+                    if (conn == null) {
+                        conn = dataSource.getConnection();
+                    }
+                } catch (SQLException ex) {
+                    closeQuietly(conn);
+                    conn = null;
+                    TableMigrationResult failed = new TableMigrationResult("FAILED-CONN: " + ex.getMessage());
+                    result.put(table, failed);
+                    onTable.accept(table, failed);
+                    continue;
                 } finally {
-                    conn.setAutoCommit(orig);
+                    timings.stop("sql.connect", start);
                 }
-            } catch (SQLException ex) {
-                result.put(table, "FAILED-CONN: " + ex.getMessage());
+                TableMigrationResult r = migrateTable(conn, table, byTable.get(table), timings, cancel, backfillWorkers);
+                introspector.invalidateTable(table);
+                r.setElapsedMicros(micros(start));
+                // tagged by outcome only: a tag per table name would grow the series without bound; the table's own
+                // time is in its result (elapsedMicros)
+                Timer.builder(TABLE_TIMER).tag("outcome", "OK".equals(r.getStatus()) ? "OK" : "FAILED")
+                        .register(timings.getRegistry()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                suspect = !"OK".equals(r.getStatus());
+                result.put(table, r);
+                onTable.accept(table, r);
             }
+        } finally {
+            closeQuietly(conn);
         }
         return result;
     }
 
-    private List<String> buildSql(String db, String table, ColumnChange c) {
-        boolean isPg = db.contains("postgres");
-        boolean isH2 = db.contains("h2");
-        List<String> out = new ArrayList<>();
-        String tbl = quote(table);
-        if (c.getNewColumn() != null && !c.getNewColumn().isEmpty() && !c.getNewColumn().equals(c.getColumn())) {
-            if (isPg) {
-                out.add(String.format("ALTER TABLE %s RENAME COLUMN %s TO %s", tbl, quote(c.getColumn()), quote(c.getNewColumn())));
-                if (c.getNewType() != null && !c.getNewType().isEmpty()) {
-                    out.add(String.format("ALTER TABLE %s ALTER COLUMN %s TYPE %s USING %s::%s", tbl, quote(c.getNewColumn()), c.getNewType(), quote(c.getNewColumn()), c.getNewType()));
-                }
-                return out;
-            } else if (isH2) {
-                out.add(String.format("ALTER TABLE %s ALTER COLUMN %s RENAME TO %s", tbl, quote(c.getColumn()), quote(c.getNewColumn())));
-                if (c.getNewType() != null && !c.getNewType().isEmpty()) {
-                    out.add(String.format("ALTER TABLE %s ALTER COLUMN %s SET DATA TYPE %s", tbl, quote(c.getNewColumn()), c.getNewType()));
+    /**
+     * Splits the tables into connected components of the FK graph (read from DatabaseMetaData) and
+     * orders each component so referenced tables come before the tables referencing them.
+     * Change-set names are resolved to the stored ones like {@link SchemaSnapshot#table} does (H2 keeps
+     * unquoted names upper-case), and referenced tables are mapped back to change-set names.
+     */
+    List<List<String>> dependencyGroups(List<String> tables) throws SQLException {
+        SchemaSnapshot schema = introspector.snapshot();
+        Map<String, String> byStoredName = new LinkedHashMap<>();
+        for (String table : tables) {
+            SchemaSnapshot.Table stored = schema.table(table);
+            byStoredName.put(stored != null ? stored.getName() : table, table);
+        }
+        Map<String, Set<String>> parents = new HashMap<>();
+        try (Connection conn = dataSource.getConnection()) {
+            DatabaseMetaData md = conn.getMetaData();
+            for (Map.Entry<String, String> e : byStoredName.entrySet()) {
+                String table = e.getValue();
+                try (ResultSet rs = md.getImportedKeys(conn.getCatalog(), schema.getSchema(), e.getKey())) {
+                    while (rs.next()) {
+                        String parent = byStoredName.get(rs.getString("PKTABLE_NAME"));
+                        if (parent != null && !parent.equals(table)) {
+                            parents.computeIfAbsent(table, k -> new LinkedHashSet<>()).add(parent);
+                        }
+                    }
                 }
-                return out;
             }
         }
-        if (c.getNewType() != null && !c.getNewType().isEmpty() && (c.getNewColumn() == null || c.getNewColumn().isEmpty())) {
-            if (isPg) {
-                out.add(String.format("ALTER TABLE %s ALTER COLUMN %s TYPE %s USING %s::%s", tbl, quote(c.getColumn()), c.getNewType(), quote(c.getColumn()), c.getNewType()));
-            } else if (isH2) {
-                out.add(String.format("ALTER TABLE %s ALTER COLUMN %s SET DATA TYPE %s", tbl, quote(c.getColumn()), c.getNewType()));
+
+        // union-find over FK edges
+        Map<String, String> root = new HashMap<>();
+        for (String t : tables) root.put(t, t);
+        parents.forEach((child, ps) -> ps.forEach(p -> root.put(find(root, child), find(root, p))));
+        Map<String, List<String>> components = new LinkedHashMap<>();
+        for (String t : tables) {
+            components.computeIfAbsent(find(root, t), k -> new ArrayList<>()).add(t);
+        }
+
+        List<List<String>> groups = new ArrayList<>();
+        for (List<String> component : components.values()) {
+            groups.add(parentsFirst(component, parents));
+        }
+        return groups;
+    }
+
+    private static String find(Map<String, String> root, String t) {
+        while (!root.get(t).equals(t)) {
+            t = root.get(t);
+        }
+        return t;
+    }
+
+    /** Kahn's algorithm; ties and FK cycles fall back to the incoming order. */
+    private static List<String> parentsFirst(List<String> component, Map<String, Set<String>> parents) {
+        List<String> ordered = new ArrayList<>();
+        Set<String> done = new HashSet<>();
+        List<String> remaining = new ArrayList<>(component);
+        while (!remaining.isEmpty()) {
+            String next = remaining.stream()
+                    .filter(t -> done.containsAll(parents.getOrDefault(t, Set.of()).stream().filter(component::contains).toList()))
+                    .findFirst()
+                    .orElse(remaining.get(0));
+            remaining.remove(next);
+            done.add(next);
+            ordered.add(next);
+        }
+        return ordered;
+    }
+
+    private int parallelism() {
+        int requested = Integer.getInteger(PROP_PARALLELISM, Runtime.getRuntime().availableProcessors());
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                // leave one connection for the rest of the application
+                int poolSize = dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+                return Math.max(1, Math.min(requested, poolSize - 1));
             }
-            return out;
+        } catch (SQLException ignore) {}
+        return Math.max(1, requested);
+    }
+
+    /** What is left of {@link #parallelism()} per migrating thread once that thread's table connection is taken. */
+    private int backfillWorkers(int threads) {
+        return Math.max(1, parallelism() / threads - 1);
+    }
+
+    public static Map<String, String> statuses(Map<String, TableMigrationResult> results) {
+        Map<String, String> out = new LinkedHashMap<>();
+        results.forEach((table, r) -> out.put(table, r.getStatus()));
+        return out;
+    }
+
+    private TableMigrationResult migrateTable(Connection conn, String table, List<ColumnChange> ops, PhaseTimings timings, CancelToken cancel,
+                                              int backfillWorkers) {
+        TableMigrationResult r = new TableMigrationResult();
+        try {
+            boolean orig = conn.getAutoCommit();
+            try {
+                conn.setAutoCommit(false);
+                String db = databaseProduct(conn);
+                Dialect dialect = dialect(conn);
+                long start = PhaseTimings.start();
+                List<ColumnChange> ddl = new ArrayList<>();
+                List<ColumnChange> online = new ArrayList<>();
+                Map<ColumnChange, BackfillTransform> backfills = new LinkedHashMap<>();
+                for (ColumnChange c : ops) {
+                    if (hasBackfill(c)) {
+                        // resolved before any DDL so an unknown transform fails the table untouched
+                        backfills.put(c, backfillTransform(c));
+                        if (isBackfillOnly(c)) continue;
+                    }
+                    if (isOnline(db, c)) {
+                        online.add(c);
+                    } else {
+                        ddl.add(c);
+                    }
+                }
+                // one dialect call per table, so it can fold the column operations into fewer ALTER TABLEs
+                List<String> stmts = ddl.isEmpty() ? List.of()
+                        : dialect.alterStatements(conn, table, ddl).stream().map(AlterStatement::sql).toList();
+                timings.stop("sql.build", start);
+                start = PhaseTimings.start();
+                LockGuard configured = lockGuard != null ? lockGuard : LockGuard.fromProperties();
+                LockGuard guard = stmts.isEmpty() ? null : configured;
+                // where DDL commits on its own, a guarded retry resumes after the statements that went through
+                boolean resumable = guard != null && conn.getMetaData().dataDefinitionCausesTransactionCommit();
+                int[] done = {0};
+                LockGuard.Ddl execute = st -> {
+                    if (stmts.size() > 1 && !resumable && supportsBatchUpdates(conn)) {
+                        for (String s : stmts) {
+                            st.addBatch(s);
+                        }
+                        String batch = String.join(";\n", stmts);
+                        int[][] counts = new int[1][];
+                        long batchStart = System.nanoTime();
+                        notifying(table, batch, () -> counts[0] = st.executeBatch());
+                        // one aggregate row: the driver times the batch as a whole, the counts are per statement
+                        r.getStatements().add(StatementTiming.batch(stmts, counts[0], micros(batchStart)));
+                        recordStatement(timings, "batch", batchStart);
+                    } else {
+                        for (int i = done[0]; i < stmts.size(); i++) {
+                            String sql = stmts.get(i);
+                            long statementStart = System.nanoTime();
+                            notifying(table, sql, () -> st.execute(sql));
+                            r.getStatements().add(new StatementTiming(sql, 1, micros(statementStart)));
+                            recordStatement(timings, "single", statementStart);
+                            if (resumable) done[0] = i + 1;
+                        }
+                    }
+                };
+                // H2 sessions sending DDL at the same time can deadlock on its schema lock (SYS): the groups of a
+                // concurrent migrate take turns there, which costs nothing as H2 runs one DDL at a time anyway. Taken
+                // per attempt, so a guarded table backing off from a lock timeout does not hold the others up; H2's
+                // DDL commits on its own, so the commit below has nothing left to serialize.
+                LockGuard.Ddl attempt = !"h2".equals(dialect.name()) ? execute : st -> {
+                    h2Ddl.lock();
+                    try {
+                        execute.execute(st);
+                    } finally {
+                        h2Ddl.unlock();
+                    }
+                };
+                if (guard != null) {
+                    guard.run(conn, dialect, table, cancel, timings, r.getLockAttempts(), attempt);
+                } else {
+                    try (Statement st = conn.createStatement(); CancelToken.Registration ignored = cancel.enter(st)) {
+                        attempt.execute(st);
+                    }
+                }
+                timings.stop("sql.execute", start);
+                // a cancel that arrived between statements still rolls the table back
+                cancel.check();
+                start = PhaseTimings.start();
+                conn.commit();
+                timings.stop("sql.commit", start);
+                // online type changes commit chunk by chunk on their own
+                start = PhaseTimings.start();
+                for (ColumnChange c : online) {
+                    String target = isBlank(c.getNewColumn()) ? c.getColumn() : c.getNewColumn();
+                    OnlineColumnMigrator migrator = new OnlineColumnMigrator(db).guarded(configured, dialect, cancel, timings, r.getLockAttempts());
+                    r.getBackfills().add(migrator.migrate(conn, table, c.getColumn(), target, c.getNewType(),
+                            r.getStatements(), p -> backfillListeners.forEach(l -> l.accept(p))));
+                }
+                if (!online.isEmpty()) timings.stop("sql.online", start);
+                // data backfills run last, over the committed columns, in chunks on their own connections
+                start = PhaseTimings.start();
+                for (Map.Entry<ColumnChange, BackfillTransform> b : backfills.entrySet()) {
+                    ColumnChange c = b.getKey();
+                    String target = isBlank(c.getNewColumn()) ? c.getColumn() : c.getNewColumn();
+                    r.getBackfills().add(new BackfillEngine(dataSource, dialect, backfillWorkers).cancellable(cancel).run(table, target,
+                            isBlank(c.getBackfill()) ? null : c.getBackfill(), c.getBackfillTransform(), b.getValue(),
+                            r.getStatements(), p -> backfillListeners.forEach(l -> l.accept(p))));
+                }
+                if (!backfills.isEmpty()) timings.stop("sql.backfill", start);
+                r.setStatus("OK");
+            } catch (Exception ex) {
+                try { conn.rollback(); } catch (SQLException ignore) {}
+                r.setStatus(cancel.isCancelled() ? CancelToken.CANCELLED : "FAILED: " + ex.getMessage());
+            } finally {
+                conn.setAutoCommit(orig);
+            }
+        } catch (SQLException ex) {
+            r.setStatus("FAILED-CONN: " + ex.getMessage());
+        }
+        return r;
+    }
+
+    static boolean isOnline(String db, ColumnChange c) {
+        return (c.isOnline() || Boolean.getBoolean(PROP_ONLINE))
+                && !isBlank(c.getColumn()) && !isBlank(c.getNewType())
+                && (db.contains("postgres") || db.contains("h2"));
+    }
+
+    static boolean hasBackfill(ColumnChange c) {
+        return !isBlank(c.getBackfill()) || !isBlank(c.getBackfillTransform());
+    }
+
+    /** Fills an existing column; no DDL. */
+    static boolean isBackfillOnly(ColumnChange c) {
+        return hasBackfill(c) && isBlank(c.getNewType()) && (isBlank(c.getNewColumn()) || c.getNewColumn().equals(c.getColumn()));
+    }
+
+    private static ColumnChange backfillOnly(ColumnChange c) {
+        ColumnChange b = new ColumnChange(c.getTable(), isBlank(c.getNewColumn()) ? c.getColumn() : c.getNewColumn(), null, null, false);
+        b.setBackfill(c.getBackfill());
+        b.setBackfillTransform(c.getBackfillTransform());
+        return b;
+    }
+
+    /** @return the registered transform, or null when the change backfills from a SQL expression */
+    private BackfillTransform backfillTransform(ColumnChange c) {
+        if (!isBlank(c.getBackfill()) && !isBlank(c.getBackfillTransform())) {
+            throw new IllegalArgumentException("Set either backfill or backfillTransform on " + c.getTable() + ", not both");
         }
-        if ((c.getColumn() == null || c.getColumn().isEmpty()) && c.getNewColumn() != null && !c.getNewColumn().isEmpty()) {
-            String typ = c.getNewType() != null && !c.getNewType().isEmpty() ? c.getNewType() : (isPg ? "TEXT" : "VARCHAR(255)"); 
-            out.add(String.format("ALTER TABLE %s ADD COLUMN %s %s", tbl, quote(c.getNewColumn()), typ));
-            return out;
+        if (isBlank(c.getBackfillTransform())) return null;
+        BackfillTransform t = backfillTransforms.get(c.getBackfillTransform());
+        if (t == null) throw new IllegalArgumentException("Unknown backfill transform: " + c.getBackfillTransform());
+        return t;
+    }
+
+    static boolean isBlank(String s) {
+        return s == null || s.isEmpty();
+    }
+
+    /** Receives rows/sec progress of online type changes and data backfills after every chunk. */
+    public void addBackfillListener(Consumer<BackfillProgress> listener) {
+        backfillListeners.add(listener);
+    }
+
+    public void removeBackfillListener(Consumer<BackfillProgress> listener) {
+        backfillListeners.remove(listener);
+    }
+
+    public void addStatementListener(StatementListener listener) {
+        statementListeners.add(listener);
+    }
+
+    public void removeStatementListener(StatementListener listener) {
+        statementListeners.remove(listener);
+    }
+
+    private interface SqlCall {
+        void run() throws SQLException;
+    }
+
+    private void notifying(String table, String sql, SqlCall call) throws SQLException {
+        statementListeners.forEach(l -> l.started(table, sql));
+        boolean ok = false;
+        try {
+            call.run();
+            ok = true;
+        } finally {
+            boolean succeeded = ok;
+            statementListeners.forEach(l -> l.finished(table, sql, succeeded));
+        }
+    }
+
+    /** Resolved once per DataSource, like the product name. */
+    Dialect dialect(Connection conn) throws SQLException {
+        Dialect d = dialect;
+        if (d == null) {
+            d = Dialects.forProduct(databaseProduct(conn));
+            dialect = d;
         }
-        throw new IllegalArgumentException("Unsupported change: " + c.getTable() + "/" + c.getColumn());
+        return d;
+    }
+
+    String databaseProduct(Connection conn) throws SQLException {
+        String db = databaseProduct;
+        if (db == null) {
+            db = conn.getMetaData().getDatabaseProductName().toLowerCase();
+            databaseProduct = db;
+        }
+        return db;
+    }
+
+    private boolean supportsBatchUpdates(Connection conn) throws SQLException {
+        Boolean batch = batchUpdates;
+        if (batch == null) {
+            batch = conn.getMetaData().supportsBatchUpdates();
+            batchUpdates = batch;
+        }
+        return batch;
+    }
+
+    private static void recordStatement(PhaseTimings timings, String kind, long startNanos) {
+        Timer.builder(STATEMENT_TIMER).tag("kind", kind)
+                .register(timings.getRegistry()).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static long micros(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000;
+    }
+
+    private static void closeQuietly(Connection conn) {
+        if (conn == null) return;
+        try { conn.close(); } catch (SQLException ignore) {}
     }
 
-    private String quote(String id) {
+    static String quote(String id) {
         return "\"" + id + "\"";
     }
+}
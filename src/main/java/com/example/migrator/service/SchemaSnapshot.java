@@ -0,0 +1,146 @@
+package com.example.migrator.service;
+
+import java.util.*;
+
+/**
+ * Immutable view of the tables, columns, types and primary keys of one database schema,
+ * as read by {@link SchemaIntrospector}.
+ */
+public class SchemaSnapshot {
+
+    private final String schema;
+    private final Map<String, Table> tables;
+
+    SchemaSnapshot(String schema, Map<String, Table> tables) {
+        this.schema = schema;
+        this.tables = Collections.unmodifiableMap(tables);
+    }
+
+    public String getSchema() { return schema; }
+    public Map<String, Table> getTables() { return tables; }
+
+    /** Exact name first; unquoted identifiers are stored upper/lower-cased, so fall back to ignoring case. */
+    public Table table(String name) {
+        Table t = tables.get(name);
+        if (t != null) return t;
+        for (Table candidate : tables.values()) {
+            if (candidate.name.equalsIgnoreCase(name)) return candidate;
+        }
+        return null;
+    }
+
+    SchemaSnapshot withTable(String name, Table table) {
+        Map<String, Table> copy = new LinkedHashMap<>(tables);
+        copy.remove(name);
+        if (table != null) copy.put(table.name, table);
+        return new SchemaSnapshot(schema, copy);
+    }
+
+    public static class Table {
+        private final String name;
+        private final Map<String, Column> columns;
+        private final List<String> primaryKey;
+
+        Table(String name, Map<String, Column> columns, List<String> primaryKey) {
+            this.name = name;
+            this.columns = Collections.unmodifiableMap(columns);
+            this.primaryKey = List.copyOf(primaryKey);
+        }
+
+        public String getName() { return name; }
+        public Map<String, Column> getColumns() { return columns; }
+        public List<String> getPrimaryKey() { return primaryKey; }
+
+        public Column column(String name) {
+            if (name == null) return null;
+            Column c = columns.get(name);
+            if (c != null) return c;
+            for (Column candidate : columns.values()) {
+                if (candidate.name.equalsIgnoreCase(name)) return candidate;
+            }
+            return null;
+        }
+
+        public boolean isPrimaryKey(String column) {
+            return primaryKey.stream().anyMatch(pk -> pk.equalsIgnoreCase(column));
+        }
+    }
+
+    public static class Column {
+        private static final Map<String, String> ALIASES = Map.ofEntries(
+                Map.entry("CHARACTER VARYING", "VARCHAR"), Map.entry("VARCHAR2", "VARCHAR"),
+                Map.entry("CHARACTER", "CHAR"), Map.entry("BPCHAR", "CHAR"),
+                Map.entry("INT", "INTEGER"), Map.entry("INT4", "INTEGER"), Map.entry("SERIAL", "INTEGER"),
+                Map.entry("INT8", "BIGINT"), Map.entry("BIGSERIAL", "BIGINT"),
+                Map.entry("INT2", "SMALLINT"),
+                Map.entry("NUMERIC", "DECIMAL"),
+                Map.entry("BOOL", "BOOLEAN"),
+                Map.entry("TIMESTAMP WITHOUT TIME ZONE", "TIMESTAMP"),
+                Map.entry("TIMESTAMP WITH TIME ZONE", "TIMESTAMPTZ"),
+                Map.entry("DOUBLE", "DOUBLE PRECISION"), Map.entry("FLOAT8", "DOUBLE PRECISION"),
+                Map.entry("FLOAT4", "REAL"));
+
+        private final String name;
+        private final String typeName;
+        private final int size;
+        private final int decimalDigits;
+        private final boolean nullable;
+
+        Column(String name, String typeName, int size, int decimalDigits, boolean nullable) {
+            this.name = name;
+            this.typeName = typeName;
+            this.size = size;
+            this.decimalDigits = decimalDigits;
+            this.nullable = nullable;
+        }
+
+        public String getName() { return name; }
+        public String getTypeName() { return typeName; }
+        public int getSize() { return size; }
+        public int getDecimalDigits() { return decimalDigits; }
+        public boolean isNullable() { return nullable; }
+
+        /** The column type the way it would be written in DDL, e.g. VARCHAR(100) or DECIMAL(13,2). */
+        public String getSqlType() {
+            String base = canonical(typeName);
+            return switch (base) {
+                case "VARCHAR", "CHAR" -> base + "(" + size + ")";
+                case "DECIMAL" -> base + "(" + size + "," + decimalDigits + ")";
+                default -> base;
+            };
+        }
+
+        /**
+         * Whether a type as declared in a ColumnChange (e.g. "varchar(200)", "INT") is what the column
+         * already has. Unknown spellings never match, so a change is only skipped when we are sure.
+         */
+        public boolean hasType(String declared) {
+            if (declared == null || declared.isBlank()) return false;
+            String d = declared.trim().toUpperCase(Locale.ROOT);
+            String base = d;
+            String[] args = new String[0];
+            int paren = d.indexOf('(');
+            if (paren > 0 && d.endsWith(")")) {
+                base = d.substring(0, paren).trim();
+                args = d.substring(paren + 1, d.length() - 1).split(",");
+            }
+            String canonical = canonical(base);
+            if (!canonical.equals(canonical(typeName))) return false;
+            try {
+                return switch (canonical) {
+                    case "VARCHAR", "CHAR" -> args.length == 1 && Integer.parseInt(args[0].trim()) == size;
+                    case "DECIMAL" -> args.length >= 1 && Integer.parseInt(args[0].trim()) == size
+                            && (args.length < 2 ? 0 : Integer.parseInt(args[1].trim())) == decimalDigits;
+                    default -> args.length == 0;
+                };
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        static String canonical(String typeName) {
+            String t = typeName.trim().toUpperCase(Locale.ROOT);
+            return ALIASES.getOrDefault(t, t);
+        }
+    }
+}
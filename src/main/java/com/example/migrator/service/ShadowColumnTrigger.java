@@ -0,0 +1,54 @@
+package com.example.migrator.service;
+
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * H2 counterpart of the PostgreSQL sync function created by {@link OnlineColumnMigrator}:
+ * copies the source column into its shadow column on every insert/update during a backfill.
+ * The trigger is named {@code <table>$<column>$sync}, which is how it finds its columns.
+ */
+public class ShadowColumnTrigger implements Trigger {
+
+    static final String SUFFIX = "$sync";
+
+    private int source = -1;
+    private int shadow = -1;
+
+    static String triggerName(String table, String column) {
+        return table + "$" + column + SUFFIX;
+    }
+
+    @Override
+    public void init(Connection conn, String schemaName, String triggerName, String tableName, boolean before, int type) throws SQLException {
+        String column = triggerName.substring(tableName.length() + 1, triggerName.length() - SUFFIX.length());
+        String shadowName = OnlineColumnMigrator.shadowName(column);
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT COLUMN_NAME, ORDINAL_POSITION FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?")) {
+            ps.setString(1, schemaName);
+            ps.setString(2, tableName);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString(1);
+                    if (name.equals(column)) source = rs.getInt(2) - 1;
+                    if (name.equals(shadowName)) shadow = rs.getInt(2) - 1;
+                }
+            }
+        }
+        if (source < 0 || shadow < 0) {
+            throw new SQLException("Columns " + column + "/" + shadowName + " not found on " + tableName);
+        }
+    }
+
+    @Override
+    public void fire(Connection conn, Object[] oldRow, Object[] newRow) {
+        if (newRow != null) {
+            // H2 converts the value to the shadow column's type when the row is stored
+            newRow[shadow] = newRow[source];
+        }
+    }
+}
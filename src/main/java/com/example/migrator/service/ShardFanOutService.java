@@ -0,0 +1,157 @@
+package com.example.migrator.service;
+
+import com.example.migrator.dto.ColumnChange;
+import com.example.migrator.dto.ShardTarget;
+import com.example.migrator.dto.TableMigrationResult;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Applies one change set to many databases with the same schema (tenant shards) in waves:
+ * <ul>
+ *   <li>a canary wave of the first -Dmigration.shards.canary shards (default 1) runs alone,</li>
+ *   <li>the rest follow in waves of -Dmigration.shards.waveSize (default 0: all remaining at once),</li>
+ *   <li>within a wave at most -Dmigration.shards.concurrency shards (default 8) migrate at the same time,
+ *       each through its own small pool and {@link SchemaMigrationService},</li>
+ *   <li>a wave with a failed shard stops the rollout; the shards not reached are reported SKIPPED.</li>
+ * </ul>
+ * The result is a matrix {shards: {shard: {status, tables: {table: status}, elapsedMillis}}, waves, summary}.
+ */
+@Service
+public class ShardFanOutService {
+
+    private static final String PROP_CANARY = "migration.shards.canary";
+    private static final String PROP_WAVE_SIZE = "migration.shards.waveSize";
+    private static final String PROP_CONCURRENCY = "migration.shards.concurrency";
+    private static final String PROP_POOL_SIZE = "migration.shards.poolSize";
+    static final String SKIPPED = "SKIPPED";
+
+    private final int canary;
+    private final int waveSize;
+    private final int concurrency;
+
+    public ShardFanOutService() {
+        this(Integer.getInteger(PROP_CANARY, 1), Integer.getInteger(PROP_WAVE_SIZE, 0), Integer.getInteger(PROP_CONCURRENCY, 8));
+    }
+
+    ShardFanOutService(int canary, int waveSize, int concurrency) {
+        this.canary = canary;
+        this.waveSize = waveSize;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /** A JSON array of {name, url, user, password}. */
+    public static List<ShardTarget> loadRegistry(Path file) throws IOException {
+        return new ObjectMapper().readValue(file.toFile(), new TypeReference<List<ShardTarget>>() {});
+    }
+
+    public Map<String, Object> apply(List<ColumnChange> changes, List<ShardTarget> shards) {
+        List<List<ShardTarget>> waves = waves(shards);
+        Map<String, Map<String, Object>> results = new LinkedHashMap<>();
+        for (ShardTarget shard : shards) {
+            results.put(shard.getName(), shardResult(SKIPPED, Map.of(), 0));
+        }
+        // virtual threads for the waiting, the semaphore for the limit on concurrently migrating shards
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        Semaphore permits = new Semaphore(concurrency);
+        boolean halted = false;
+        String haltedAfter = null;
+        try {
+            for (int w = 0; w < waves.size() && !halted; w++) {
+                Map<String, Future<Map<String, Object>>> futures = new LinkedHashMap<>();
+                for (ShardTarget shard : waves.get(w)) {
+                    futures.put(shard.getName(), executor.submit(() -> {
+                        permits.acquire();
+                        try {
+                            return migrateShard(shard, changes);
+                        } finally {
+                            permits.release();
+                        }
+                    }));
+                }
+                for (Map.Entry<String, Future<Map<String, Object>>> f : futures.entrySet()) {
+                    Map<String, Object> r;
+                    try {
+                        r = f.getValue().get();
+                    } catch (ExecutionException ex) {
+                        r = shardResult("FAILED: " + ex.getCause().getMessage(), Map.of(), 0);
+                    }
+                    results.put(f.getKey(), r);
+                    if (!"OK".equals(r.get("status"))) {
+                        halted = true;
+                        haltedAfter = w == 0 ? "canary" : "wave " + w;
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while migrating shards", ex);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Map<String, Integer> summary = new TreeMap<>();
+        results.values().forEach(r -> summary.merge(outcome((String) r.get("status")), 1, Integer::sum));
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("shards", results);
+        out.put("waves", waves.stream().map(wave -> wave.stream().map(ShardTarget::getName).toList()).toList());
+        out.put("summary", summary);
+        if (haltedAfter != null) out.put("haltedAfter", haltedAfter);
+        return out;
+    }
+
+    /** Canary wave first, then the rest in fixed-size waves (or all together). */
+    List<List<ShardTarget>> waves(List<ShardTarget> shards) {
+        List<List<ShardTarget>> waves = new ArrayList<>();
+        int first = Math.min(Math.max(canary, 0), shards.size());
+        if (first > 0) waves.add(shards.subList(0, first));
+        int size = waveSize > 0 ? waveSize : Math.max(1, shards.size() - first);
+        for (int i = first; i < shards.size(); i += size) {
+            waves.add(shards.subList(i, Math.min(i + size, shards.size())));
+        }
+        return waves;
+    }
+
+    private Map<String, Object> migrateShard(ShardTarget shard, List<ColumnChange> changes) {
+        long start = System.nanoTime();
+        try (HikariDataSource ds = new HikariDataSource()) {
+            ds.setJdbcUrl(shard.getUrl());
+            ds.setUsername(shard.getUser());
+            ds.setPassword(shard.getPassword());
+            ds.setMaximumPoolSize(Integer.getInteger(PROP_POOL_SIZE, 2));
+            ds.setMinimumIdle(0);
+            ds.setPoolName("entity-migrator-shard-" + shard.getName());
+            Map<String, TableMigrationResult> migration = new SchemaMigrationService(ds).migrate(changes);
+            Map<String, String> tables = SchemaMigrationService.statuses(migration);
+            boolean ok = tables.values().stream().allMatch("OK"::equals);
+            return shardResult(ok ? "OK" : "FAILED", tables, start);
+        } catch (RuntimeException ex) {
+            // pool start-up fails fast when the shard is unreachable
+            return shardResult("FAILED-CONN: " + ex.getMessage(), Map.of(), start);
+        }
+    }
+
+    private static Map<String, Object> shardResult(String status, Map<String, String> tables, long startNanos) {
+        Map<String, Object> r = new LinkedHashMap<>();
+        r.put("status", status);
+        r.put("tables", tables);
+        r.put("elapsedMillis", startNanos == 0 ? 0 : (System.nanoTime() - startNanos) / 1_000_000);
+        return r;
+    }
+
+    private static String outcome(String status) {
+        int colon = status.indexOf(':');
+        return colon < 0 ? status : status.substring(0, colon);
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.migrator.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * History of {@link ModelSnapshot}s: after every scan and every apply the entity model and the live
+ * schema are written to -Dmigration.snapshots.dir (default build/snapshots), one file per snapshot,
+ * keeping the last -Dmigration.snapshots.retain (default 50). Loading maps the file instead of reading
+ * it, so any two snapshots can be diffed without a scan or a database round trip.
+ * Unless -Dmigration.snapshots.warmStart=false, the latest entity model is handed to the scanner at
+ * startup, so the first scanAll answers from it instead of scanning; the schema is always read live.
+ */
+@Service
+public class SnapshotStore {
+
+    static final String PROP_DIR = "migration.snapshots.dir";
+    static final String PROP_RETAIN = "migration.snapshots.retain";
+    static final String PROP_WARM_START = "migration.snapshots.warmStart";
+    static final String EXTENSION = ".emsn";
+
+    private final Path dir;
+    private final int retain;
+    private final SchemaIntrospector introspector;
+    // the entity model of the last snapshot; an apply changes the schema, not the scanned classes
+    private volatile List<Map<String, Object>> lastEntities;
+    private volatile String lastError;
+
+    @Autowired
+    public SnapshotStore(EntityScannerService scanner, SchemaIntrospector introspector) {
+        this(Paths.get(System.getProperty(PROP_DIR, System.getProperty("user.dir") + "/build/snapshots")),
+                Integer.getInteger(PROP_RETAIN, 50), introspector);
+        if (Boolean.parseBoolean(System.getProperty(PROP_WARM_START, "true"))) {
+            try {
+                ModelSnapshot latest = latest();
+                if (latest != null) scanner.preload(latest.entities(), new Date(latest.getCreatedAt()).toString());
+            } catch (IOException | RuntimeException ex) {
+                // an unreadable history only costs the warm start
+                lastError = String.valueOf(ex.getMessage());
+            }
+        }
+        scanner.addChangeListener(scan -> recordQuietly("scan", entitiesOf(scan)));
+    }
+
+    SnapshotStore(Path dir, int retain, SchemaIntrospector introspector) {
+        this.dir = dir;
+        this.retain = retain;
+        this.introspector = introspector;
+    }
+
+    /**
+     * Writes a snapshot of {@code entities} (the previous snapshot's model when null) and the current schema.
+     * The file is written under a temporary name and moved into place, so a crash never leaves a torn snapshot.
+     * @return the id of the new snapshot
+     */
+    public synchronized String record(String reason, List<Map<String, Object>> entities) throws IOException {
+        if (entities == null) entities = lastEntities;
+        if (entities == null) {
+            ModelSnapshot latest = latest();
+            entities = latest != null ? latest.entities() : List.of();
+        }
+        SchemaSnapshot schema = null;
+        if (introspector != null) {
+            try {
+                schema = introspector.refresh();
+            } catch (SQLException ex) {
+                // the entity model is still worth keeping; the snapshot just has no schema
+                lastError = "schema not recorded: " + ex.getMessage();
+            }
+        }
+        long now = System.currentTimeMillis();
+        Files.createDirectories(dir);
+        String id;
+        // ids sort by time; two snapshots in the same millisecond take the next one
+        while (Files.exists(file(id = String.format("%013d-%s", now, reason)))) now++;
+        Path tmp = dir.resolve(id + ".tmp");
+        Files.write(tmp, ModelSnapshot.encode(entities, schema, now, reason));
+        Files.move(tmp, file(id), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        lastEntities = entities;
+        prune();
+        return id;
+    }
+
+    /** For callers that must not fail because the history could not be written. */
+    public void recordQuietly(String reason, List<Map<String, Object>> entities) {
+        try {
+            record(reason, entities);
+        } catch (IOException | RuntimeException ex) {
+            lastError = String.valueOf(ex.getMessage());
+        }
+    }
+
+    /** @return {dir, snapshots: [{id, createdAt, reason, entities, tables, hasSchema}], lastError} newest first */
+    public Map<String, Object> list() throws IOException {
+        List<Map<String, Object>> snapshots = new ArrayList<>();
+        for (String id : ids().reversed()) {
+            ModelSnapshot s = ModelSnapshot.map(file(id));
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("id", id);
+            m.put("createdAt", new Date(s.getCreatedAt()).toString());
+            m.put("reason", s.getReason());
+            m.put("entities", s.entityCount());
+            m.put("tables", s.tableCount());
+            m.put("hasSchema", s.hasSchema());
+            snapshots.add(m);
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("dir", dir.toString());
+        out.put("snapshots", snapshots);
+        out.put("lastError", lastError);
+        return out;
+    }
+
+    /** @return null when there is no snapshot with this id */
+    public ModelSnapshot load(String id) throws IOException {
+        Path file = file(id);
+        if (!file.getParent().equals(dir.normalize()) || !Files.exists(file)) return null;
+        return ModelSnapshot.map(file);
+    }
+
+    /** @return null when nothing was recorded yet */
+    public ModelSnapshot latest() throws IOException {
+        List<String> ids = ids();
+        return ids.isEmpty() ? null : ModelSnapshot.map(file(ids.get(ids.size() - 1)));
+    }
+
+    /**
+     * Diff from snapshot {@code fromId} to {@code toId} (the latest when null), plus {from, to, elapsedMicros}.
+     * @throws IllegalArgumentException when either snapshot does not exist
+     */
+    public Map<String, Object> diff(String fromId, String toId) throws IOException {
+        long start = System.nanoTime();
+        if (toId == null) {
+            List<String> ids = ids();
+            if (ids.isEmpty()) throw new IllegalArgumentException("No snapshots recorded");
+            toId = ids.get(ids.size() - 1);
+        }
+        ModelSnapshot from = load(fromId);
+        ModelSnapshot to = load(toId);
+        if (from == null || to == null) throw new IllegalArgumentException("Unknown snapshot: " + (from == null ? fromId : toId));
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("from", fromId);
+        out.put("to", toId);
+        out.putAll(to.diff(from));
+        out.put("elapsedMicros", (System.nanoTime() - start) / 1_000);
+        return out;
+    }
+
+    private List<String> ids() throws IOException {
+        if (!Files.isDirectory(dir)) return List.of();
+        try (var files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(EXTENSION))
+                    .map(n -> n.substring(0, n.length() - EXTENSION.length()))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private void prune() throws IOException {
+        List<String> ids = ids();
+        for (int i = 0; i < ids.size() - retain; i++) {
+            Files.deleteIfExists(file(ids.get(i)));
+        }
+    }
+
+    private Path file(String id) {
+        return dir.resolve(id + EXTENSION).normalize();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> entitiesOf(Map<String, Object> scan) {
+        return (List<Map<String, Object>>) scan.get("entities");
+    }
+}
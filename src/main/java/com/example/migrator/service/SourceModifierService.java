@@ -1,86 +1,324 @@
 
 package com.example.migrator.service;
 
-import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
 import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.AnnotationExpr;
 import com.github.javaparser.ast.expr.NormalAnnotationExpr;
 import com.github.javaparser.ast.expr.MemberValuePair;
 import com.github.javaparser.ast.expr.StringLiteralExpr;
+import com.github.javaparser.ast.nodeTypes.NodeWithAnnotations;
+import com.github.javaparser.ast.type.Type;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
-import java.util.Optional;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
 
 @Service
 public class SourceModifierService {
 
-    // assumes source root in the running project
-    private final String SOURCE_ROOT = System.getProperty("user.dir") + "/src/main/java";
+    private static final String PROP_PARALLELISM = "source.parallelism";
+    // the scanner's root: entity sources are looked up under it like the scanned classes
+    private static final String PROP_SOURCE_ROOT = "scan.source.root";
+
+    private final String SOURCE_ROOT;
+
+    private final EntitySourceCache sources;
+
+    private FileMover mover = (staged, target) ->
+            Files.move(staged, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    public SourceModifierService() {
+        this(new EntitySourceCache());
+    }
+
+    @Autowired
+    public SourceModifierService(EntitySourceCache sources) {
+        // resolved per edit from -Dscan.source.root, see sourceRoot()
+        this(sources, null);
+    }
+
+    SourceModifierService(EntitySourceCache sources, String sourceRoot) {
+        this.sources = sources;
+        this.SOURCE_ROOT = sourceRoot;
+    }
+
+    /**
+     * The root entity sources are resolved under: the one given to the constructor, else -Dscan.source.root
+     * (read on each edit, as the scanner does), else src/main/java of the working directory.
+     */
+    private String sourceRoot() {
+        if (SOURCE_ROOT != null) return SOURCE_ROOT;
+        String configured = System.getProperty(PROP_SOURCE_ROOT);
+        if (configured != null && !configured.isBlank()) return configured;
+        return System.getProperty("user.dir") + "/src/main/java";
+    }
+
+    /** Replaces the final move of staged files into place, e.g. to fail one in tests. */
+    SourceModifierService moving(FileMover mover) {
+        this.mover = mover;
+        return this;
+    }
 
     public void applyEntityChanges(String qualifiedClassName, List<FieldChange> fieldChanges, String newTableName) throws Exception {
-        // find file path from qualified class name
-        String path = SOURCE_ROOT + "/" + qualifiedClassName.replace('.', '/') + ".java";
-        File f = new File(path);
-        if (!f.exists()) throw new IllegalArgumentException("Source file not found: " + path);
-        FileInputStream in = new FileInputStream(f);
-        CompilationUnit cu = StaticJavaParser.parse(in, StandardCharsets.UTF_8);
-        in.close();
-
-        Optional<ClassOrInterfaceDeclaration> clsOpt = cu.getClassByName(qualifiedClassName.substring(qualifiedClassName.lastIndexOf('.')+1));
-        if (clsOpt.isEmpty()) throw new IllegalArgumentException("Class not found in source: " + qualifiedClassName);
-        ClassOrInterfaceDeclaration cls = clsOpt.get();
+        applyBulk(List.of(new EntityEdit(qualifiedClassName, fieldChanges, newTableName)));
+    }
 
-        // update @Table name if needed
-        if (newTableName != null && !newTableName.isEmpty()) {
-            cls.getAnnotationByName("Table").ifPresentOrElse(a -> {
-                if (a.isNormalAnnotationExpr()) {
-                    NormalAnnotationExpr nae = a.asNormalAnnotationExpr();
-                    Optional<MemberValuePair> pair = nae.getPairs().stream().filter(p -> p.getNameAsString().equals("name")).findFirst();
-                    if (pair.isPresent()) {
-                        pair.get().setValue(new StringLiteralExpr(newTableName));
-                    } else {
-                        nae.addPair("name", new StringLiteralExpr(newTableName));
+    /**
+     * Rewrites many entity files at once: files are parsed and transformed in parallel and staged to
+     * temp files next to their targets; only when every file succeeded are they moved into place with
+     * atomic moves. If anything fails before that, no source file is touched.
+     */
+    public void applyBulk(List<EntityEdit> edits) throws Exception {
+        applyBulk(edits, new PhaseTimings());
+    }
+
+    /** Same as {@link #applyBulk(List)}, with the time per phase (source.*) added to the given timings. */
+    public void applyBulk(List<EntityEdit> edits, PhaseTimings timings) throws Exception {
+        // several edits for the same class (Outer$Inner and Outer.Inner alike) are merged into one rewrite
+        Map<String, EntityEdit> byClass = new LinkedHashMap<>();
+        for (EntityEdit e : edits) {
+            byClass.merge(EntitySourceCache.sourceName(e.getQualifiedName()), e, EntityEdit::merge);
+        }
+        Map<String, SourceEdit> transforms = new LinkedHashMap<>();
+        byClass.forEach((qualifiedName, e) -> transforms.put(qualifiedName, src -> rename(src, e)));
+        rewrite(transforms, timings);
+    }
+
+    /**
+     * Applies one entity edit from the UI form.
+     * @param entityMap {"qualifiedName", "newTableName", "fields":[{fieldName, newColumnName, newType, primaryKey}]}
+     *                  where newType is the Java type of the field and primaryKey adds a missing @Id
+     */
+    public void updateEntity(Map<String, Object> entityMap) throws Exception {
+        String qualifiedName = (String) entityMap.get("qualifiedName");
+        if (qualifiedName == null || qualifiedName.isBlank()) throw new IllegalArgumentException("qualifiedName missing");
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> fields = (List<Map<String, Object>>) entityMap.getOrDefault("fields", List.of());
+        List<FieldChange> renames = new ArrayList<>();
+        for (Map<String, Object> f : fields) {
+            String newColumn = (String) f.get("newColumnName");
+            if (newColumn != null && !newColumn.isBlank()) renames.add(new FieldChange((String) f.get("fieldName"), newColumn, null));
+        }
+        EntityEdit edit = new EntityEdit(qualifiedName, renames, (String) entityMap.get("newTableName"));
+
+        rewrite(Map.of(qualifiedName, src -> {
+            rename(src, edit);
+            for (Map<String, Object> f : fields) {
+                String fieldName = (String) f.get("fieldName");
+                FieldDeclaration fd = src.field(qualifiedName, fieldName);
+                if (fd == null) throw new IllegalArgumentException("Field not found: " + qualifiedName + "." + fieldName);
+                String newType = (String) f.get("newType");
+                if (newType != null && !newType.isBlank()) {
+                    Type type = EntitySourceCache.parser().parseType(newType.trim()).getResult()
+                            .orElseThrow(() -> new IllegalArgumentException("Invalid type: " + newType));
+                    for (VariableDeclarator var : fd.getVariables()) {
+                        if (var.getNameAsString().equals(fieldName)) var.setType(type.clone());
                     }
                 }
-            }, () -> {
-                // add @Table(name="...")
-                cls.addAnnotation("Table(name=\"" + newTableName + "\")");
-            });
-        }
-
-        for (FieldChange fc : fieldChanges) {
-            for (FieldDeclaration fd : cls.getFields()) {
-                fd.getVariables().forEach(var -> {
-                    if (var.getNameAsString().equals(fc.getFieldName())) {
-                        fd.getAnnotationByName("Column").ifPresentOrElse(a -> {
-                            if (a.isNormalAnnotationExpr()) {
-                                NormalAnnotationExpr nae = a.asNormalAnnotationExpr();
-                                Optional<MemberValuePair> pair = nae.getPairs().stream().filter(p -> p.getNameAsString().equals("name")).findFirst();
-                                if (pair.isPresent()) {
-                                    pair.get().setValue(new StringLiteralExpr(fc.getNewColumn()));
-                                } else {
-                                    nae.addPair("name", new StringLiteralExpr(fc.getNewColumn()));
-                                }
-                            } else {
-                                a.replace(StaticJavaParser.parseAnnotation("@Column(name=\"" + fc.getNewColumn() + "\")"));
-                            }
-                        }, () -> {
-                            fd.addAnnotation("Column(name=\"" + fc.getNewColumn() + "\")");
-                        });
+                if (Boolean.TRUE.equals(f.get("primaryKey")) && fd.getAnnotationByName("Id").isEmpty()) {
+                    fd.addAnnotation(parseAnnotation("@Id"));
+                    addPersistenceImport(src.getUnit(), "Id");
+                }
+            }
+        }), new PhaseTimings());
+    }
+
+    /** Parses (or takes from the cache), transforms, stages and then atomically commits every file. */
+    private void rewrite(Map<String, SourceEdit> transforms, PhaseTimings timings) throws Exception {
+        // 1. parse, transform and stage
+        List<StagedFile> staged = new ArrayList<>();
+        Map<String, String> failures = new LinkedHashMap<>();
+        int threads = Math.max(1, Math.min(transforms.size(), Integer.getInteger(PROP_PARALLELISM, Runtime.getRuntime().availableProcessors())));
+        if (threads == 1) {
+            for (Map.Entry<String, SourceEdit> e : transforms.entrySet()) {
+                try {
+                    staged.add(stage(e.getKey(), e.getValue(), timings));
+                } catch (Exception ex) {
+                    failures.put(e.getKey(), ex.getMessage());
+                }
+            }
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                Map<String, Future<StagedFile>> futures = new LinkedHashMap<>();
+                transforms.forEach((qualifiedName, edit) -> futures.put(qualifiedName, pool.submit(() -> stage(qualifiedName, edit, timings))));
+                for (Map.Entry<String, Future<StagedFile>> f : futures.entrySet()) {
+                    try {
+                        staged.add(f.getValue().get());
+                    } catch (ExecutionException ex) {
+                        failures.put(f.getKey(), ex.getCause().getMessage());
                     }
-                });
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        // units that are not checked back in are dropped from the cache with their half-applied edits
+        if (!failures.isEmpty()) {
+            for (StagedFile sf : staged) {
+                Files.deleteIfExists(sf.temp);
             }
+            throw new IllegalStateException("Source rewrite failed, no files modified: " + failures);
+        }
+
+        // 2. commit; a failing move puts the already committed files back
+        long start = PhaseTimings.start();
+        List<StagedFile> committed = new ArrayList<>();
+        try {
+            for (StagedFile sf : staged) {
+                mover.move(sf.temp, sf.source.getPath());
+                committed.add(sf);
+            }
+        } catch (IOException ex) {
+            for (StagedFile sf : committed) {
+                Path target = sf.source.getPath();
+                Path restore = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".restore");
+                Files.writeString(restore, sf.source.getText(), StandardCharsets.UTF_8);
+                Files.move(restore, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            for (StagedFile sf : staged) {
+                Files.deleteIfExists(sf.temp);
+            }
+            throw ex;
+        }
+        for (StagedFile sf : staged) {
+            sources.checkin(sf.source, sf.text);
+        }
+        timings.stop("source.commit", start);
+    }
+
+    private StagedFile stage(String qualifiedClassName, SourceEdit edit, PhaseTimings timings) throws IOException {
+        long start = PhaseTimings.start();
+        Path target = sources.locate(sourceRoot(), qualifiedClassName);
+        if (!Files.exists(target)) throw new IllegalArgumentException("Source file not found: " + target);
+        EntitySourceCache.ParsedSource src = sources.checkout(target);
+        timings.stop("source.parse", start);
+        if (src.type(qualifiedClassName) == null) throw new IllegalArgumentException("Class not found in source: " + qualifiedClassName);
+        start = PhaseTimings.start();
+        edit.apply(src);
+        String rewritten = src.print();
+        timings.stop("source.transform", start);
+        // same directory as the target so the final move can be atomic
+        start = PhaseTimings.start();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        Files.writeString(temp, rewritten, StandardCharsets.UTF_8);
+        timings.stop("source.stage", start);
+        return new StagedFile(src, temp, rewritten);
+    }
+
+    private static void rename(EntitySourceCache.ParsedSource src, EntityEdit edit) {
+        String qualifiedClassName = edit.getQualifiedName();
+        ClassOrInterfaceDeclaration cls = src.type(qualifiedClassName);
+
+        // update @Table name if needed
+        String newTableName = edit.getNewTableName();
+        if (newTableName != null && !newTableName.isEmpty()) {
+            setNameAttribute(src.getUnit(), cls, "Table", newTableName);
+        }
+
+        // field lookups go through the symbol index instead of walking the class
+        for (FieldChange fc : edit.getFieldChanges()) {
+            if (fc.getNewColumn() == null) continue;
+            FieldDeclaration fd = src.field(qualifiedClassName, fc.getFieldName());
+            if (fd != null) {
+                setNameAttribute(src.getUnit(), fd, "Column", fc.getNewColumn());
+            }
+        }
+    }
+
+    private static AnnotationExpr parseAnnotation(String annotation) {
+        return EntitySourceCache.parser().parseAnnotation(annotation).getResult()
+                .orElseThrow(() -> new IllegalArgumentException("Invalid annotation: " + annotation));
+    }
+
+    /** Sets name="..." on the given annotation, adding the pair or the annotation itself when missing. */
+    private static void setNameAttribute(CompilationUnit cu, NodeWithAnnotations<?> node, String annotation, String value) {
+        Optional<AnnotationExpr> existing = node.getAnnotationByName(annotation);
+        if (existing.isEmpty()) {
+            node.addAnnotation(parseAnnotation("@" + annotation + "(name=\"" + value + "\")"));
+            addPersistenceImport(cu, annotation);
+            return;
+        }
+        AnnotationExpr a = existing.get();
+        if (!a.isNormalAnnotationExpr()) {
+            a.replace(parseAnnotation("@" + annotation + "(name=\"" + value + "\")"));
+            return;
+        }
+        NormalAnnotationExpr nae = a.asNormalAnnotationExpr();
+        for (MemberValuePair pair : nae.getPairs()) {
+            if (pair.getNameAsString().equals("name")) {
+                pair.setValue(new StringLiteralExpr(value));
+                return;
+            }
+        }
+        nae.addPair("name", new StringLiteralExpr(value));
+    }
+
+    private static void addPersistenceImport(CompilationUnit cu, String annotation) {
+        String pkg = "jakarta.persistence";
+        for (ImportDeclaration imp : cu.getImports()) {
+            String name = imp.getNameAsString();
+            if (name.equals("javax.persistence") || name.startsWith("javax.persistence.")) pkg = "javax.persistence";
+            if (imp.isAsterisk() ? name.endsWith("persistence") : name.endsWith("persistence." + annotation)) return;
+        }
+        cu.addImport(pkg + "." + annotation);
+    }
+
+    private interface SourceEdit {
+        void apply(EntitySourceCache.ParsedSource source);
+    }
+
+    interface FileMover {
+        void move(Path staged, Path target) throws IOException;
+    }
+
+    private static final class StagedFile {
+        final EntitySourceCache.ParsedSource source;
+        final Path temp;
+        final String text;
+
+        StagedFile(EntitySourceCache.ParsedSource source, Path temp, String text) {
+            this.source = source;
+            this.temp = temp;
+            this.text = text;
+        }
+    }
+
+    public static class EntityEdit {
+        private String qualifiedName;
+        private List<FieldChange> fieldChanges = new ArrayList<>();
+        private String newTableName;
+
+        public EntityEdit() {}
+
+        public EntityEdit(String qualifiedName, List<FieldChange> fieldChanges, String newTableName) {
+            this.qualifiedName = qualifiedName;
+            this.fieldChanges = fieldChanges;
+            this.newTableName = newTableName;
+        }
+
+        EntityEdit merge(EntityEdit other) {
+            List<FieldChange> all = new ArrayList<>(fieldChanges);
+            all.addAll(other.fieldChanges);
+            return new EntityEdit(qualifiedName, all, other.newTableName != null ? other.newTableName : newTableName);
         }
 
-        FileOutputStream out = new FileOutputStream(f);
-        out.write(cu.toString().getBytes(StandardCharsets.UTF_8));
-        out.close();
+        public String getQualifiedName() { return qualifiedName; }
+        public void setQualifiedName(String qualifiedName) { this.qualifiedName = qualifiedName; }
+        public List<FieldChange> getFieldChanges() { return fieldChanges; }
+        public void setFieldChanges(List<FieldChange> fieldChanges) { this.fieldChanges = fieldChanges; }
+        public String getNewTableName() { return newTableName; }
+        public void setNewTableName(String newTableName) { this.newTableName = newTableName; }
     }
 
     public static class FieldChange {
@@ -103,3 +341,4 @@ public class SourceModifierService {
         public String getNewType() { return newType; }
         public void setNewType(String newType) { this.newType = newType; }
     }
+}
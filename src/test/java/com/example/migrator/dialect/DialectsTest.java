@@ -0,0 +1,107 @@
+package com.example.migrator.dialect;
+
+import com.example.migrator.dto.ColumnChange;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DialectsTest {
+
+    private static final List<ColumnChange> CHANGES = List.of(
+            new ColumnChange("t", "a", "b", null, false),
+            new ColumnChange("t", "c", null, "BIGINT", false),
+            new ColumnChange("t", null, "d", null, false),
+            new ColumnChange("t", "e", "f", "INT", false));
+
+    @Test
+    void postgresCombinesAdjacentClausesButRenames() {
+        assertEquals(List.of(
+                "ALTER TABLE \"t\" RENAME COLUMN \"a\" TO \"b\"",
+                "ALTER TABLE \"t\" ALTER COLUMN \"c\" TYPE BIGINT USING \"c\"::BIGINT, ADD COLUMN \"d\" TEXT",
+                "ALTER TABLE \"t\" RENAME COLUMN \"e\" TO \"f\"",
+                "ALTER TABLE \"t\" ALTER COLUMN \"f\" TYPE INT USING \"f\"::INT"),
+                Dialects.forProduct("postgresql").alterTable("t", CHANGES));
+    }
+
+    @Test
+    void statementsKeepTheOrderOfTheChanges() {
+        List<ColumnChange> retypeThenRename = List.of(
+                new ColumnChange("t", "x", null, "BIGINT", false),
+                new ColumnChange("t", "x", "y", null, false));
+        assertEquals(List.of(
+                "ALTER TABLE \"t\" ALTER COLUMN \"x\" TYPE BIGINT USING \"x\"::BIGINT",
+                "ALTER TABLE \"t\" RENAME COLUMN \"x\" TO \"y\""),
+                Dialects.forProduct("postgresql").alterTable("t", retypeThenRename));
+
+        // one MySQL statement sees the table as before it, so the renamed column is changed in the next one
+        List<ColumnChange> renameThenRetype = List.of(
+                new ColumnChange("t", "x", "y", null, false),
+                new ColumnChange("t", "y", null, "BIGINT", false));
+        List<AlterStatement> statements = Dialects.forProduct("mysql").alterStatements("t", renameThenRetype);
+        assertEquals(List.of("ALTER TABLE `t` RENAME COLUMN `x` TO `y`", "ALTER TABLE `t` MODIFY COLUMN `y` BIGINT"),
+                statements.stream().map(AlterStatement::sql).toList());
+        assertEquals(AlterStatement.Operation.RETYPE, statements.get(1).clauses().get(0).operation());
+        assertSame(renameThenRetype.get(1), statements.get(1).clauses().get(0).change());
+    }
+
+    @Test
+    void mysqlUsesOneStatement() {
+        assertEquals(List.of("ALTER TABLE `t` RENAME COLUMN `a` TO `b`, MODIFY COLUMN `c` BIGINT, ADD COLUMN `d` VARCHAR(255), "
+                        + "CHANGE COLUMN `e` `f` INT"),
+                Dialects.forProduct("mysql").alterTable("t", CHANGES));
+    }
+
+    @Test
+    void mysqlRetypesRepeatWhatTheColumnHadBesidesItsType() {
+        Map<String, MySqlDialect.Column> current = Map.of(
+                "id", new MySqlDialect.Column(false, null, "auto_increment", "", null),
+                "qty", new MySqlDialect.Column(false, "0", "", "", null),
+                "name", new MySqlDialect.Column(true, "n/a", "", "shown 'as is'", "utf8mb4_bin"),
+                "created", new MySqlDialect.Column(false, "CURRENT_TIMESTAMP", "DEFAULT_GENERATED on update CURRENT_TIMESTAMP", "", null),
+                "x", new MySqlDialect.Column(false, "1", "", "", null));
+        List<ColumnChange> changes = List.of(
+                new ColumnChange("t", "id", null, "BIGINT", false),
+                new ColumnChange("t", "qty", null, "BIGINT", false),
+                new ColumnChange("t", "name", "label", "VARCHAR(80)", false),
+                new ColumnChange("t", "created", null, "DATETIME(3)", false),
+                new ColumnChange("t", "x", "y", null, false),
+                // the renamed column keeps what x had; a type that says NULL itself is left alone
+                new ColumnChange("t", "y", null, "INT NULL", false));
+
+        assertEquals(List.of("ALTER TABLE `t` MODIFY COLUMN `id` BIGINT NOT NULL AUTO_INCREMENT, "
+                        + "MODIFY COLUMN `qty` BIGINT NOT NULL DEFAULT '0', "
+                        + "CHANGE COLUMN `name` `label` VARCHAR(80) COLLATE utf8mb4_bin DEFAULT 'n/a' COMMENT 'shown ''as is''', "
+                        + "MODIFY COLUMN `created` DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP, "
+                        + "RENAME COLUMN `x` TO `y`",
+                        "ALTER TABLE `t` MODIFY COLUMN `y` INT NULL DEFAULT '1'"),
+                new MySqlDialect().alterStatements("t", changes, current).stream().map(AlterStatement::sql).toList());
+    }
+
+    @Test
+    void mysqlRefusesToRedefineAGeneratedColumn() {
+        Map<String, MySqlDialect.Column> current = Map.of("total", new MySqlDialect.Column(true, null, "STORED GENERATED", "", null));
+        assertThrows(IllegalArgumentException.class, () -> new MySqlDialect().alterStatements("t",
+                List.of(new ColumnChange("t", "total", null, "BIGINT", false)), current));
+    }
+
+    @Test
+    void h2KeepsOneStatementPerOperation() {
+        assertEquals(List.of(
+                "ALTER TABLE \"t\" ALTER COLUMN \"a\" RENAME TO \"b\"",
+                "ALTER TABLE \"t\" ALTER COLUMN \"c\" SET DATA TYPE BIGINT",
+                "ALTER TABLE \"t\" ADD COLUMN \"d\" VARCHAR(255)",
+                "ALTER TABLE \"t\" ALTER COLUMN \"e\" RENAME TO \"f\"",
+                "ALTER TABLE \"t\" ALTER COLUMN \"f\" SET DATA TYPE INT"),
+                Dialects.forProduct("h2").alterTable("t", CHANGES));
+    }
+
+    @Test
+    void unknownDatabaseIsAnError() {
+        assertThrows(IllegalStateException.class, () -> Dialects.forProduct("informix"));
+        assertThrows(IllegalArgumentException.class,
+                () -> Dialects.forProduct("h2").alterTable("t", List.of(new ColumnChange("t", "a", null, null, false))));
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.migrator.service;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ApplyJobServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void streamsTableProgressAndCancelsRemainingTables() throws Exception {
+        JdbcDataSource ds = dataSource();
+        List<Map<String, Object>> changes = addExtra(ds, "t1", "t2", "t3");
+        SchemaMigrationService schema = new SchemaMigrationService(ds);
+        ApplyJobService jobs = jobs(schema, ds);
+
+        List<Map<String, Object>> events = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        CountDownLatch submitted = new CountDownLatch(1);
+        ApplyJob[] job = new ApplyJob[1];
+        // stop once the first table has gone through; told on the migrating thread
+        schema.addStatementListener(new SchemaMigrationService.StatementListener() {
+            @Override
+            public void started(String table, String sql) {
+                if (!"t2".equals(table)) return;
+                try {
+                    submitted.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                job[0].cancel();
+            }
+
+            @Override
+            public void finished(String table, String sql, boolean ok) {}
+        });
+        job[0] = jobs.submit(Map.of("changes", changes), event -> {
+            events.add(event);
+            if ("done".equals(event.get("type"))) done.countDown();
+        });
+        submitted.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertEquals(CancelToken.CANCELLED, job[0].getStatus());
+        assertEquals("OK", events.get(0).get("status"));
+        assertEquals(List.of(CancelToken.CANCELLED, CancelToken.CANCELLED),
+                events.subList(1, 3).stream().map(e -> e.get("status")).toList());
+        assertSame(job[0], jobs.get(job[0].getId()));
+        jobs.shutdown();
+    }
+
+    @Test
+    void aStalledSubscriberDoesNotHoldTheJob() throws Exception {
+        JdbcDataSource ds = dataSource();
+        List<Map<String, Object>> changes = addExtra(ds, "t1", "t2");
+        ApplyJobService jobs = jobs(new SchemaMigrationService(ds), ds);
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        List<Map<String, Object>> events = new CopyOnWriteArrayList<>();
+        ApplyJob job = jobs.submit(Map.of("changes", changes), event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add(event);
+            if ("done".equals(event.get("type"))) done.countDown();
+        });
+
+        for (int i = 0; i < 200 && !job.isFinished(); i++) Thread.sleep(50);
+        assertTrue(job.isFinished());
+        assertEquals(ApplyJob.DONE, job.getStatus());
+        assertTrue(events.isEmpty());
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of("table", "table", "done"), events.stream().map(e -> e.get("type")).toList());
+        // a late subscriber gets the replay
+        List<Map<String, Object>> replay = new CopyOnWriteArrayList<>();
+        CountDownLatch replayed = new CountDownLatch(1);
+        job.subscribe(event -> {
+            replay.add(event);
+            if ("done".equals(event.get("type"))) replayed.countDown();
+        });
+        assertTrue(replayed.await(10, TimeUnit.SECONDS));
+        assertEquals(events, replay);
+        jobs.shutdown();
+    }
+
+    private static JdbcDataSource dataSource() {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        return ds;
+    }
+
+    private static List<Map<String, Object>> addExtra(JdbcDataSource ds, String... tables) throws SQLException {
+        List<Map<String, Object>> changes = new ArrayList<>();
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            for (String t : tables) {
+                st.execute("CREATE TABLE \"" + t + "\" (\"id\" BIGINT PRIMARY KEY)");
+                changes.add(Map.of("table", t, "newColumn", "extra", "newType", "INT"));
+            }
+        }
+        return changes;
+    }
+
+    private ApplyJobService jobs(SchemaMigrationService schema, JdbcDataSource ds) {
+        return new ApplyJobService(schema, new SourceModifierService(new EntitySourceCache(), dir.toString()),
+                new MigrationJournal(ds, dir.resolve("journal.log")));
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.migrator.service;
+
+import com.example.migrator.dialect.H2Dialect;
+import com.example.migrator.dto.BackfillProgress;
+import com.example.migrator.dto.ColumnChange;
+import com.example.migrator.dto.TableMigrationResult;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackfillEngineTest {
+
+    private JdbcDataSource ds;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE \"users\" (\"id\" BIGINT PRIMARY KEY, \"name\" VARCHAR(20), \"name_upper\" VARCHAR(20))");
+            st.execute("INSERT INTO \"users\" (\"id\", \"name\") SELECT X, 'user' || X FROM SYSTEM_RANGE(1, 1000)");
+        }
+    }
+
+    @Test
+    void fillsFromExpressionWithParallelWorkers() throws SQLException {
+        List<BackfillProgress> progress = new ArrayList<>();
+        BackfillProgress done = new BackfillEngine(ds, new H2Dialect(), 100, 4, 0).run("users", "name_upper", "UPPER(\"name\")", null, null,
+                new ArrayList<>(), p -> { synchronized (progress) { progress.add(p); } });
+
+        assertTrue(done.isDone());
+        assertEquals(1000, done.getRowsCopied());
+        // 4 ranges of 250 rows, 3 chunks each, plus the final report
+        assertEquals(13, progress.size());
+        assertEquals(0, count("SELECT COUNT(*) FROM \"users\" WHERE \"name_upper\" IS NULL OR \"name_upper\" <> UPPER(\"name\")"));
+        assertEquals(0, count("SELECT COUNT(*) FROM " + BackfillEngine.CHECKPOINT_TABLE));
+    }
+
+    @Test
+    void resumesFromCheckpointAfterFailure() throws SQLException {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicBoolean fail = new AtomicBoolean(true);
+        BackfillTransform transform = BackfillTransform.of(List.of("name"), row -> {
+            calls.incrementAndGet();
+            if (fail.get() && "user550".equals(row.get("name"))) throw new IllegalStateException("boom");
+            return ((String) row.get("name")).toUpperCase();
+        });
+        BackfillEngine engine = new BackfillEngine(ds, new H2Dialect(), 100, 1, 0);
+
+        assertThrows(IllegalStateException.class,
+                () -> engine.run("users", "name_upper", null, "upper", transform, new ArrayList<>(), p -> {}));
+        // the five committed chunks stay, the failed one rolled back
+        assertEquals(500, count("SELECT COUNT(*) FROM \"users\" WHERE \"name_upper\" IS NOT NULL"));
+        assertEquals(500, count("SELECT ROWS_DONE FROM " + BackfillEngine.CHECKPOINT_TABLE));
+
+        fail.set(false);
+        calls.set(0);
+        BackfillProgress done = engine.run("users", "name_upper", null, "upper", transform, new ArrayList<>(), p -> {});
+
+        assertEquals(1000, done.getRowsCopied());
+        assertEquals(500, calls.get());
+        assertEquals(0, count("SELECT COUNT(*) FROM \"users\" WHERE \"name_upper\" IS NULL"));
+        assertEquals(0, count("SELECT COUNT(*) FROM " + BackfillEngine.CHECKPOINT_TABLE));
+    }
+
+    @Test
+    void startsOverWhenTheCheckpointsBelongToAnotherExpression() throws SQLException {
+        BackfillTransform failing = BackfillTransform.of(List.of("name"), row -> {
+            if ("user550".equals(row.get("name"))) throw new IllegalStateException("boom");
+            return "x";
+        });
+        BackfillEngine engine = new BackfillEngine(ds, new H2Dialect(), 100, 1, 0);
+        assertThrows(IllegalStateException.class,
+                () -> engine.run("users", "name_upper", null, "x", failing, new ArrayList<>(), p -> {}));
+        assertEquals(500, count("SELECT ROWS_DONE FROM " + BackfillEngine.CHECKPOINT_TABLE));
+
+        BackfillProgress done = engine.run("users", "name_upper", "UPPER(\"name\")", null, null, new ArrayList<>(), p -> {});
+
+        assertEquals(1000, done.getRowsCopied());
+        assertEquals(0, count("SELECT COUNT(*) FROM \"users\" WHERE \"name_upper\" <> UPPER(\"name\")"));
+        assertEquals(0, count("SELECT COUNT(*) FROM " + BackfillEngine.CHECKPOINT_TABLE));
+    }
+
+    @Test
+    void refusesKeysThatDoNotSurviveTheCheckpointAsText() throws SQLException {
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE \"events\" (\"id\" UUID PRIMARY KEY, \"kind\" VARCHAR(20))");
+        }
+        BackfillEngine engine = new BackfillEngine(ds, new H2Dialect(), 100, 1, 0);
+
+        IllegalStateException ex = assertThrows(IllegalStateException.class,
+                () -> engine.run("events", "kind", "'k'", null, null, new ArrayList<>(), p -> {}));
+        assertTrue(ex.getMessage().contains("integer or character primary key"), ex.getMessage());
+    }
+
+    @Test
+    void stopsBetweenChunksWhenCancelled() throws SQLException {
+        CancelToken cancel = new CancelToken();
+        BackfillEngine engine = new BackfillEngine(ds, new H2Dialect(), 100, 1, 0).cancellable(cancel);
+
+        SQLException ex = assertThrows(SQLException.class, () -> engine.run("users", "name_upper", "UPPER(\"name\")", null, null,
+                new ArrayList<>(), p -> { if (p.getRowsCopied() == 300) cancel.cancel(); }));
+
+        assertEquals(CancelToken.CANCELLED, ex.getMessage());
+        assertEquals(300, count("SELECT COUNT(*) FROM \"users\" WHERE \"name_upper\" IS NOT NULL"));
+        assertEquals(300, count("SELECT ROWS_DONE FROM " + BackfillEngine.CHECKPOINT_TABLE));
+    }
+
+    @Test
+    void addsColumnAndBackfillsThroughSchemaMigrationService() throws SQLException {
+        SchemaMigrationService service = new SchemaMigrationService(ds);
+        service.registerBackfillTransform("initial", BackfillTransform.of(List.of("name"), row -> ((String) row.get("name")).substring(0, 1)));
+        ColumnChange change = new ColumnChange("users", null, "initial", "VARCHAR(1)", false);
+        change.setBackfillTransform("initial");
+
+        TableMigrationResult r = service.migrate(List.of(change)).get("users");
+
+        assertEquals("OK", r.getStatus());
+        assertEquals(1000, r.getBackfills().get(0).getRowsCopied());
+        assertEquals(1000, count("SELECT COUNT(*) FROM \"users\" WHERE \"initial\" = 'u'"));
+
+        // already added: only the backfill runs again
+        Map<String, TableMigrationResult> again = service.migrate(List.of(change));
+        assertEquals("OK", again.get("users").getStatus());
+        assertEquals(1, again.get("users").getSkipped().size());
+
+        ColumnChange unknown = new ColumnChange("users", "name", null, null, false);
+        unknown.setBackfillTransform("missing");
+        assertTrue(service.migrate(List.of(unknown)).get("users").getStatus().contains("Unknown backfill transform"));
+    }
+
+    private long count(String sql) throws SQLException {
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
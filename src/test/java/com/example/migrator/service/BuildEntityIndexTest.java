@@ -0,0 +1,175 @@
+package com.example.migrator.service;
+
+import com.example.migrator.entity.Customer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BuildEntityIndexTest {
+
+    @TempDir
+    Path dir;
+    private Path moduleRoot;
+    private Path classFile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        moduleRoot = Files.createDirectories(dir.resolve("app/build/classes/java/main"));
+        classFile = moduleRoot.resolve("com/example/migrator/entity/Customer.class");
+        Files.createDirectories(classFile.getParent());
+        try (InputStream in = Customer.class.getResourceAsStream("Customer.class")) {
+            Files.write(classFile, in.readAllBytes());
+        }
+        // tableName differs from the bytecode, so the test can tell which one was read
+        Path idx = moduleRoot.resolve(BuildEntityIndex.LOCATION);
+        Files.createDirectories(idx.getParent());
+        Files.writeString(idx, String.join("\n",
+                "entity-migrator-index 1",
+                "E\tcom/example/migrator/entity/Customer.class\tcom.example.migrator.entity.Customer\tCustomer\tfrom_index",
+                "F\tid\tLong\tid\t1",
+                "F\tcreatedAt\tLocalDateTime\tcreated_at\t0", ""));
+        System.setProperty("scan.source.root", dir.toString());
+        System.setProperty("scan.index.file", dir.resolve("entity-scan.idx").toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("scan.source.root");
+        System.clearProperty("scan.index.file");
+        System.clearProperty("scan.buildIndex");
+    }
+
+    @Test
+    void readsEntitiesFromTheBuildIndexInsteadOfClassFiles() throws Exception {
+        Map<String, Object> scan = new EntityScannerService().rescan();
+
+        Map<String, Object> customer = single(scan);
+        assertEquals("from_index", customer.get("tableName"));
+        assertEquals(Map.of("fieldName", "id", "type", "Long", "columnName", "id", "primaryKey", true),
+                ((List<?>) customer.get("fields")).get(0));
+        assertFalse(((Map<?, ?>) scan.get("timings")).containsKey("scan.extract"));
+    }
+
+    @Test
+    void fallsBackToClassFilesWhenTheIndexIsStale() throws Exception {
+        EntityScannerService scanner = new EntityScannerService();
+        assertEquals("from_index", single(scanner.rescan()).get("tableName"));
+
+        // recompiled without the processor: the class file changes, the index does not
+        Files.setLastModifiedTime(classFile, FileTime.fromMillis(Files.getLastModifiedTime(classFile).toMillis() + 5000));
+        assertEquals("customer", single(scanner.rescan()).get("tableName"));
+        assertEquals("customer", single(new EntityScannerService().rescan()).get("tableName"));
+
+        // rewritten index is trusted again
+        Path idx = moduleRoot.resolve(BuildEntityIndex.LOCATION);
+        Files.writeString(idx, Files.readString(idx).replace("from_index", "rewritten"));
+        assertEquals("rewritten", single(scanner.rescan()).get("tableName"));
+    }
+
+    @Test
+    void scansClassFilesWhenDisabled() throws Exception {
+        System.setProperty("scan.buildIndex", "false");
+
+        assertEquals("customer", single(new EntityScannerService().rescan()).get("tableName"));
+    }
+
+    @Test
+    void parallelScanTreatsTheSourceRootItselfAsAModuleRoot() throws Exception {
+        // as the CLI passes it: --classes build/classes/java/main
+        System.setProperty("scan.source.root", moduleRoot.toString());
+        System.setProperty("scan.parallel", "true");
+        try {
+            assertEquals("from_index", single(new EntityScannerService().rescan()).get("tableName"));
+            // class files under the root are scanned as well (fresh scan index, so nothing comes from the first run)
+            System.setProperty("scan.buildIndex", "false");
+            System.setProperty("scan.index.file", dir.resolve("entity-scan-2.idx").toString());
+            assertEquals("customer", single(new EntityScannerService().rescan()).get("tableName"));
+        } finally {
+            System.clearProperty("scan.parallel");
+        }
+    }
+
+    @Test
+    void aSlowStreamingClientDoesNotHoldTheScanner() throws Exception {
+        EntityScannerService scanner = new EntityScannerService();
+        CountDownLatch inSink = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Map<String, Object>> stream = CompletableFuture.supplyAsync(() -> {
+            try {
+                return scanner.scanStream(entity -> {
+                    inSink.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        assertTrue(inSink.await(10, TimeUnit.SECONDS));
+
+        // the client is still stuck on the first entity
+        assertEquals("from_index", single(CompletableFuture.supplyAsync(() -> {
+            try {
+                return scanner.rescan();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).get(10, TimeUnit.SECONDS)).get("tableName"));
+
+        release.countDown();
+        assertEquals(1, stream.get(10, TimeUnit.SECONDS).get("count"));
+    }
+
+    @Test
+    void aDisconnectedStreamingClientStopsTheScan() throws Exception {
+        StringBuilder idx = new StringBuilder("entity-migrator-index 1\n");
+        for (int i = 0; i < 20; i++) {
+            Path copy = classFile.resolveSibling("Customer" + i + ".class");
+            Files.copy(classFile, copy);
+            idx.append("E\tcom/example/migrator/entity/Customer").append(i).append(".class\tcom.example.migrator.entity.Customer")
+                    .append(i).append("\tCustomer").append(i).append("\tc").append(i).append('\n');
+        }
+        Files.writeString(moduleRoot.resolve(BuildEntityIndex.LOCATION), idx);
+        System.setProperty("scan.stream.buffer", "1");
+        EntityScannerService scanner = new EntityScannerService();
+        List<Map<String, Object>> published = new CopyOnWriteArrayList<>();
+        scanner.addChangeListener(published::add);
+        try {
+            IllegalStateException gone = assertThrows(IllegalStateException.class,
+                    () -> scanner.scanStream(entity -> { throw new IllegalStateException("broken pipe"); }));
+            assertEquals("broken pipe", gone.getMessage());
+
+            // waits for the scanner lock, so the abandoned scan has ended by now: it did not run to the end and publish
+            scanner.rescan();
+            assertEquals(1, published.size());
+        } finally {
+            System.clearProperty("scan.stream.buffer");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> single(Map<String, Object> scan) {
+        List<Map<String, Object>> entities = (List<Map<String, Object>>) scan.get("entities");
+        assertEquals(1, entities.size());
+        return entities.get(0);
+    }
+}
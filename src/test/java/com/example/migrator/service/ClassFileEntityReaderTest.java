@@ -0,0 +1,54 @@
+package com.example.migrator.service;
+
+import com.example.migrator.entity.Customer;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClassFileEntityReaderTest {
+
+    @Test
+    void readsEntityMetadataWithoutLoadingTheClass() throws Exception {
+        Map<String, Object> em = ClassFileEntityReader.read(classBytes(Customer.class));
+
+        assertNotNull(em);
+        assertEquals("Customer", em.get("className"));
+        assertEquals("com.example.migrator.entity.Customer", em.get("qualifiedName"));
+        assertEquals("customer", em.get("tableName"));
+
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> fields = (List<Map<String, Object>>) em.get("fields");
+        assertEquals(List.of("id", "username", "email", "createdAt"), fields.stream().map(f -> f.get("fieldName")).toList());
+        assertEquals(Map.of("fieldName", "id", "type", "Long", "columnName", "id", "primaryKey", true), fields.get(0));
+        assertEquals(Map.of("fieldName", "createdAt", "type", "LocalDateTime", "columnName", "created_at", "primaryKey", false), fields.get(3));
+    }
+
+    @Test
+    void returnsNullForNonEntities() throws Exception {
+        assertNull(ClassFileEntityReader.read(classBytes(ClassFileEntityReaderTest.class)));
+    }
+
+    @Test
+    void rejectsTruncatedClassFiles() throws Exception {
+        byte[] bytes = classBytes(Customer.class);
+        byte[] truncated = java.util.Arrays.copyOf(bytes, bytes.length / 2);
+        assertThrows(IllegalArgumentException.class, () -> ClassFileEntityReader.read(truncated));
+    }
+
+    @Test
+    void mapsDescriptorsToSimpleNames() {
+        assertEquals("int", ClassFileEntityReader.simpleTypeName("I"));
+        assertEquals("byte[]", ClassFileEntityReader.simpleTypeName("[B"));
+        assertEquals("Inner[][]", ClassFileEntityReader.simpleTypeName("[[Lcom/example/Outer$Inner;"));
+    }
+
+    private static byte[] classBytes(Class<?> cls) throws Exception {
+        try (InputStream in = cls.getResourceAsStream(cls.getSimpleName() + ".class")) {
+            return in.readAllBytes();
+        }
+    }
+}
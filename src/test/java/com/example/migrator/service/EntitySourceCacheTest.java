@@ -0,0 +1,94 @@
+package com.example.migrator.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntitySourceCacheTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void reusesTheParsedUnitUntilTheFileChanges() throws IOException {
+        EntitySourceCache cache = new EntitySourceCache();
+        Path file = write("A", "class A { int a; }");
+
+        EntitySourceCache.ParsedSource first = checkedIn(cache, file);
+        assertSame(first, checkedIn(cache, file));
+
+        write("A", "class A { int a; int b; }");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 5_000));
+        EntitySourceCache.ParsedSource changed = cache.checkout(file);
+        assertNotSame(first, changed);
+        assertNotNull(changed.field("com.example.A", "b"));
+    }
+
+    @Test
+    void invalidateDropsTheEntry() throws IOException {
+        EntitySourceCache cache = new EntitySourceCache();
+        Path file = write("A", "class A { int a; }");
+        EntitySourceCache.ParsedSource first = checkedIn(cache, file);
+
+        cache.invalidate(file);
+
+        assertEquals(0, cache.size());
+        assertNotSame(first, cache.checkout(file));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedFileBeyondTheBound() throws IOException {
+        System.setProperty("source.cache.maxFiles", "2");
+        EntitySourceCache cache;
+        try {
+            cache = new EntitySourceCache();
+        } finally {
+            System.clearProperty("source.cache.maxFiles");
+        }
+        Path a = write("A", "class A {}");
+        Path b = write("B", "class B {}");
+        Path c = write("C", "class C {}");
+        EntitySourceCache.ParsedSource parsedA = checkedIn(cache, a);
+        EntitySourceCache.ParsedSource parsedB = checkedIn(cache, b);
+        // A is used again, so B is the eldest when C comes in
+        assertSame(parsedA, checkedIn(cache, a));
+        checkedIn(cache, c);
+
+        assertEquals(2, cache.size());
+        assertSame(parsedA, checkedIn(cache, a));
+        assertNotSame(parsedB, cache.checkout(b));
+    }
+
+    @Test
+    void findsNestedClassesByBinaryAndSourceName() throws IOException {
+        EntitySourceCache cache = new EntitySourceCache();
+        Path file = write("Outer", "class Outer { static class Inner { int a; } }");
+
+        // before the file is parsed: by the path of the top-level class
+        assertEquals(file, cache.locate(root.toString(), "com.example.Outer$Inner"));
+        assertEquals(file, cache.locate(root.toString(), "com.example.Outer.Inner"));
+
+        EntitySourceCache.ParsedSource parsed = cache.checkout(file);
+        assertNotNull(parsed.type("com.example.Outer$Inner"));
+        assertSame(parsed.field("com.example.Outer.Inner", "a"), parsed.field("com.example.Outer$Inner", "a"));
+        assertEquals(file, cache.locate(root.toString(), "com.example.Outer$Inner"));
+    }
+
+    private static EntitySourceCache.ParsedSource checkedIn(EntitySourceCache cache, Path file) throws IOException {
+        EntitySourceCache.ParsedSource source = cache.checkout(file);
+        cache.checkin(source, source.getText());
+        return source;
+    }
+
+    private Path write(String className, String body) throws IOException {
+        Path file = root.resolve("com/example/" + className + ".java").toAbsolutePath().normalize();
+        Files.createDirectories(file.getParent());
+        return Files.writeString(file, "package com.example;\n\n" + body + "\n");
+    }
+}
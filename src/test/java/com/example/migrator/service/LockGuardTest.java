@@ -0,0 +1,156 @@
+package com.example.migrator.service;
+
+import com.example.migrator.dto.ColumnChange;
+import com.example.migrator.dto.LockAttempt;
+import com.example.migrator.dto.TableMigrationResult;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LockGuardTest {
+
+    private JdbcDataSource ds;
+    private Connection blocker;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE \"orders\" (\"id\" BIGINT PRIMARY KEY, \"total\" INT)");
+            st.execute("INSERT INTO \"orders\" VALUES (1, 10)");
+        }
+        // a long transaction holding the table
+        blocker = ds.getConnection();
+        blocker.setAutoCommit(false);
+        try (Statement st = blocker.createStatement()) {
+            st.execute("UPDATE \"orders\" SET \"total\" = 11");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        blocker.close();
+    }
+
+    @Test
+    void givesUpAfterTheRetriesAndReportsTheBlockingSession() {
+        TableMigrationResult r = guarded(2).migrate(List.of(addNote())).get("orders");
+
+        assertTrue(r.getStatus().startsWith("FAILED"), r.getStatus());
+        // the first attempt and both retries
+        assertEquals(3, r.getLockAttempts().size());
+        LockAttempt first = r.getLockAttempts().get(0);
+        assertEquals(1, first.getAttempt());
+        assertTrue(first.getWaitedMicros() >= 100_000, "waited " + first.getWaitedMicros());
+        assertTrue(first.getBackoffMillis() >= 10 && first.getBackoffMillis() <= 20);
+        assertEquals(1, first.getBlockers().size());
+        assertNotNull(first.getBlockers().get(0).get("session"));
+        LockAttempt last = r.getLockAttempts().get(2);
+        assertEquals(3, last.getAttempt());
+        assertEquals(0, last.getBackoffMillis());
+    }
+
+    @Test
+    void retriesUntilTheBlockingTransactionEnds() throws Exception {
+        CompletableFuture<Void> commit = CompletableFuture.runAsync(() -> {
+            try {
+                Thread.sleep(250);
+                blocker.commit();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        TableMigrationResult r = guarded(20).migrate(List.of(addNote())).get("orders");
+        commit.get();
+
+        assertEquals("OK", r.getStatus());
+        assertFalse(r.getLockAttempts().isEmpty());
+        assertEquals(1, r.getStatements().size());
+    }
+
+    @Test
+    void backoffGrowsExponentiallyWithinTheCap() {
+        LockGuard guard = new LockGuard(0, 0, 5, 100, 1_000);
+        for (int i = 0; i < 50; i++) {
+            long first = guard.backoffMillis(1);
+            long third = guard.backoffMillis(3);
+            long capped = guard.backoffMillis(10);
+            assertTrue(first >= 50 && first <= 100, "first " + first);
+            assertTrue(third >= 200 && third <= 400, "third " + third);
+            assertTrue(capped >= 500 && capped <= 1_000, "capped " + capped);
+        }
+    }
+
+    @Test
+    void guardsTheDdlOfOnlineTypeChanges() throws SQLException {
+        ColumnChange retype = new ColumnChange("orders", "total", "total", "BIGINT", false);
+        retype.setOnline(true);
+
+        TableMigrationResult r = guarded(1).migrate(List.of(retype)).get("orders");
+
+        assertTrue(r.getStatus().startsWith("FAILED"), r.getStatus());
+        assertEquals(2, r.getLockAttempts().size());
+        blocker.rollback();
+        try (Connection c = ds.getConnection();
+             ResultSet rs = c.getMetaData().getColumns(null, null, "orders", "total__new")) {
+            assertFalse(rs.next());
+        }
+    }
+
+    @Test
+    void aTableBackingOffDoesNotHoldUpTheDdlOfOthers() throws Exception {
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE \"items\" (\"id\" BIGINT PRIMARY KEY)");
+        }
+        SchemaMigrationService service = new SchemaMigrationService(ds);
+        // a backoff of at least 1.5s after the first failed attempt
+        service.setLockGuard(new LockGuard(100, 0, 1, 3_000, 3_000));
+        CountDownLatch backingOff = new CountDownLatch(1);
+        service.addStatementListener(new SchemaMigrationService.StatementListener() {
+            @Override
+            public void started(String table, String sql) {}
+
+            @Override
+            public void finished(String table, String sql, boolean ok) {
+                if (!ok) backingOff.countDown();
+            }
+        });
+        CompletableFuture<TableMigrationResult> orders = CompletableFuture.supplyAsync(
+                () -> service.migrate(List.of(addNote())).get("orders"));
+        assertTrue(backingOff.await(10, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        TableMigrationResult items = service.migrate(List.of(new ColumnChange("items", null, "note", "VARCHAR(20)", false))).get("items");
+        long tookMillis = (System.nanoTime() - start) / 1_000_000;
+        blocker.commit();
+
+        assertEquals("OK", items.getStatus());
+        assertTrue(tookMillis < 1_000, "took " + tookMillis + " ms");
+        assertEquals("OK", orders.get(10, TimeUnit.SECONDS).getStatus());
+    }
+
+    private SchemaMigrationService guarded(int retries) {
+        SchemaMigrationService service = new SchemaMigrationService(ds);
+        service.setLockGuard(new LockGuard(100, 0, retries, 20, 10_000));
+        return service;
+    }
+
+    private static ColumnChange addNote() {
+        return new ColumnChange("orders", null, "note", "VARCHAR(20)", false);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.migrator.service;
+
+import com.example.migrator.dto.ColumnChange;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MigrationImpactHarnessTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reportsLatencyPerPhaseAroundEachStatement() throws Exception {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+        MigrationImpactHarness harness = new MigrationImpactHarness(ds, 2, 20, 50, 100);
+        harness.createSchema("schema-h2.sql");
+        Map<String, Long> rows = new LinkedHashMap<>();
+        rows.put("customer", 500L);
+        rows.put("product", 500L);
+
+        assertEquals(rows, harness.seed(rows));
+        Path log = dir.resolve("impact.hlog");
+        Map<String, Object> report = harness.run(List.of(
+                new ColumnChange("customer", null, "nickname", "VARCHAR(50)", false),
+                new ColumnChange("product", "stock", null, "BIGINT", false)), log);
+
+        assertEquals(Map.of("customer", "OK", "product", "OK"), report.get("migration"));
+        List<Map<String, Object>> phases = (List<Map<String, Object>>) report.get("phases");
+        assertEquals(List.of("before", "setup", "during", "after", "during", "after"), phases.stream().map(p -> p.get("phase")).toList());
+        assertEquals("ALTER TABLE \"customer\" ADD COLUMN \"nickname\" VARCHAR(50)", phases.get(2).get("statement"));
+        Map<String, Object> before = (Map<String, Object>) phases.get(0).get("reads");
+        assertTrue((Long) before.get("count") > 0);
+        assertTrue((Long) before.get("p99") <= (Long) before.get("max"));
+        assertTrue(Files.readString(log).contains("Tag=5-after-writes"));
+    }
+}
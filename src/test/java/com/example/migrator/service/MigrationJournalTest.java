@@ -0,0 +1,117 @@
+package com.example.migrator.service;
+
+import com.example.migrator.dto.ColumnChange;
+import com.example.migrator.dto.TableMigrationResult;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MigrationJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private JdbcDataSource ds;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE \"a\" (\"id\" BIGINT PRIMARY KEY)");
+            st.execute("CREATE TABLE \"b\" (\"id\" BIGINT PRIMARY KEY)");
+        }
+    }
+
+    @Test
+    void rerunSkipsCompletedTablesAndReportsInterruptedOnes() throws Exception {
+        List<ColumnChange> changes = List.of(
+                new ColumnChange("a", null, "x", "INT", false),
+                new ColumnChange("b", null, "y", "INT", false));
+        String runId = MigrationJournal.runId(changes, List.of());
+        Path file = dir.resolve("journal.log");
+
+        // a first attempt that died after planning b
+        MigrationJournal.Run crashed = new MigrationJournal(ds, file).open(runId, false);
+        crashed.planned("sql:a", MigrationJournal.checksum(changes.subList(0, 1)));
+        execute(ds, "ALTER TABLE \"a\" ADD COLUMN \"x\" INT");
+        crashed.done("sql:a", MigrationJournal.checksum(changes.subList(0, 1)), null);
+        crashed.planned("sql:b", MigrationJournal.checksum(changes.subList(1, 2)));
+
+        MigrationJournal.Run run = new MigrationJournal(ds, file).open(runId, false);
+        assertEquals(List.of("sql:b"), run.getInterrupted());
+        Map<String, TableMigrationResult> results = new SchemaMigrationService(ds).migrate(changes, new PhaseTimings(), run);
+        run.complete();
+
+        assertEquals(List.of("sql:a"), run.getResumed());
+        assertEquals("OK", results.get("b").getStatus());
+        assertEquals(1, results.get("b").getStatements().size());
+        assertTrue(results.get("a").getStatements().isEmpty());
+        assertEquals(6, Files.readAllLines(file).size());
+
+        // the database copy alone is enough, e.g. for a rerun on another machine
+        MigrationJournal.Run elsewhere = new MigrationJournal(ds, dir.resolve("other.log")).open(runId, false);
+        assertTrue(elsewhere.skipIfDone("sql:b", MigrationJournal.checksum(changes.subList(1, 2))));
+        assertTrue(elsewhere.getInterrupted().isEmpty());
+
+        MigrationJournal.Run fresh = new MigrationJournal(ds, file).open(runId, true);
+        assertFalse(fresh.skipIfDone("sql:a", MigrationJournal.checksum(changes.subList(0, 1))));
+    }
+
+    @Test
+    void sharedFileDoesNotSkipDdlOnAnotherDatabase() throws Exception {
+        JdbcDataSource second = new JdbcDataSource();
+        second.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        execute(second, "CREATE TABLE \"a\" (\"id\" BIGINT PRIMARY KEY)");
+        List<ColumnChange> changes = List.of(new ColumnChange("a", null, "x", "INT", false));
+        String runId = MigrationJournal.runId(changes, List.of());
+        Path file = dir.resolve("journal.log");
+
+        assertEquals("OK", apply(ds, file, runId, changes).get("a").getStatus());
+
+        MigrationJournal.Run run = new MigrationJournal(second, file).open(runId, false);
+        Map<String, TableMigrationResult> results = new SchemaMigrationService(second).migrate(changes, new PhaseTimings(), run);
+        assertTrue(run.getResumed().isEmpty());
+        assertEquals(1, results.get("a").getStatements().size());
+        assertTrue(run.getInterrupted().isEmpty());
+    }
+
+    @Test
+    void revertedDdlIsAppliedAgain() throws Exception {
+        List<ColumnChange> changes = List.of(new ColumnChange("a", null, "x", "INT", false));
+        String runId = MigrationJournal.runId(changes, List.of());
+        Path file = dir.resolve("journal.log");
+        apply(ds, file, runId, changes);
+        execute(ds, "ALTER TABLE \"a\" DROP COLUMN \"x\"");
+
+        MigrationJournal.Run run = new MigrationJournal(ds, file).open(runId, false);
+        Map<String, TableMigrationResult> results = new SchemaMigrationService(ds).migrate(changes, new PhaseTimings(), run);
+        assertTrue(run.getResumed().isEmpty());
+        assertEquals(1, results.get("a").getStatements().size());
+    }
+
+    private static Map<String, TableMigrationResult> apply(JdbcDataSource ds, Path file, String runId, List<ColumnChange> changes) {
+        MigrationJournal.Run run = new MigrationJournal(ds, file).open(runId, false);
+        Map<String, TableMigrationResult> results = new SchemaMigrationService(ds).migrate(changes, new PhaseTimings(), run);
+        run.complete();
+        return results;
+    }
+
+    private static void execute(JdbcDataSource ds, String sql) throws SQLException {
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            st.execute(sql);
+        }
+    }
+}
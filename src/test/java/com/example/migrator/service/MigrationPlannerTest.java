@@ -0,0 +1,90 @@
+package com.example.migrator.service;
+
+import com.example.migrator.dialect.AlterStatement;
+import com.example.migrator.dto.ColumnChange;
+import com.example.migrator.dto.PlannedStatement;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MigrationPlannerTest {
+
+    private JdbcDataSource ds;
+    private SchemaSnapshot.Table orders;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE \"orders\" (\"id\" BIGINT PRIMARY KEY, \"note\" VARCHAR(20), \"qty\" INT)");
+            st.execute("INSERT INTO \"orders\" (\"id\") SELECT X FROM SYSTEM_RANGE(1, 10)");
+        }
+        orders = new SchemaIntrospector(ds).snapshot().table("orders");
+    }
+
+    @Test
+    void plansH2StatementsWithTheirLocksAndSize() throws SQLException {
+        SchemaMigrationService service = new SchemaMigrationService(ds);
+        List<PlannedStatement> plan = new MigrationPlanner(ds, new SchemaIntrospector(ds), service).plan(List.of(
+                new ColumnChange("orders", null, "a", "INT", false),
+                new ColumnChange("orders", "note", "remark", null, false),
+                new ColumnChange("orders", "qty", null, "INT", false)));
+
+        assertEquals(List.of("NO_OP", "ADD_COLUMN", "RENAME"), plan.stream().map(PlannedStatement::getOperation).toList());
+        PlannedStatement add = plan.get(1);
+        assertEquals("EXCLUSIVE", add.getLockLevel());
+        assertEquals(Boolean.TRUE, add.getTableRewrite());
+        assertEquals(10, add.getEstimatedRows());
+        assertEquals(Boolean.FALSE, plan.get(2).getTableRewrite());
+    }
+
+    @Test
+    void mySqlAddsAndRenamesInstantlyAndCopiesForATypeChange() {
+        MigrationPlanner.Impact add = MigrationPlanner.impact("mysql", add("a", "INT"), orders);
+        assertEquals(Boolean.FALSE, add.rewrite());
+        assertTrue(add.lockLevel().contains("INSTANT"));
+        assertEquals(Boolean.FALSE, MigrationPlanner.impact("mysql", rename("note", "remark"), orders).rewrite());
+
+        MigrationPlanner.Impact retype = MigrationPlanner.impact("mysql", retype("qty", "BIGINT"), orders);
+        assertEquals(Boolean.TRUE, retype.rewrite());
+        assertTrue(retype.lockLevel().startsWith("SHARED"));
+        // in place or not depends on the column's character set
+        assertNull(MigrationPlanner.impact("mysql", retype("note", "VARCHAR(40)"), orders).rewrite());
+    }
+
+    @Test
+    void postgresRewritesOnlyForTypeChangesThatDoNotWiden() {
+        assertEquals(Boolean.FALSE, MigrationPlanner.impact("postgresql", add("a", "INT"), orders).rewrite());
+        assertEquals(Boolean.FALSE, MigrationPlanner.impact("postgresql", retype("note", "VARCHAR(40)"), orders).rewrite());
+        assertEquals(Boolean.TRUE, MigrationPlanner.impact("postgresql", retype("qty", "BIGINT"), orders).rewrite());
+        assertEquals("ACCESS EXCLUSIVE", MigrationPlanner.impact("postgresql", rename("note", "remark"), orders).lockLevel());
+    }
+
+    @Test
+    void anUnmodeledDialectIsUnknownRatherThanGuessed() {
+        MigrationPlanner.Impact impact = MigrationPlanner.impact("sqlite", add("a", "INT"), orders);
+        assertEquals(MigrationPlanner.UNKNOWN, impact.lockLevel());
+        assertNull(impact.rewrite());
+    }
+
+    private static AlterStatement.Clause add(String column, String type) {
+        return new AlterStatement.Clause(AlterStatement.Operation.ADD, new ColumnChange("orders", null, column, type, false));
+    }
+
+    private static AlterStatement.Clause rename(String column, String newColumn) {
+        return new AlterStatement.Clause(AlterStatement.Operation.RENAME, new ColumnChange("orders", column, newColumn, null, false));
+    }
+
+    private static AlterStatement.Clause retype(String column, String type) {
+        return new AlterStatement.Clause(AlterStatement.Operation.RETYPE, new ColumnChange("orders", column, null, type, false));
+    }
+}
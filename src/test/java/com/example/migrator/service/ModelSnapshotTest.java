@@ -0,0 +1,107 @@
+package com.example.migrator.service;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelSnapshotTest {
+
+    @TempDir
+    Path dir;
+    private JdbcDataSource ds;
+    private SchemaIntrospector introspector;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        execute("CREATE TABLE \"customer\" (\"id\" BIGINT PRIMARY KEY, \"name\" VARCHAR(50) NOT NULL)");
+        introspector = new SchemaIntrospector(ds);
+    }
+
+    @Test
+    void roundTripsTheEntityModelAndTheSchema() throws Exception {
+        List<Map<String, Object>> entities = List.of(entity("customer", field("id", "Long", "id", true), field("name", "String", "name", false)));
+        ModelSnapshot s = ModelSnapshot.wrap(ModelSnapshot.encode(entities, introspector.snapshot(), 42L, "scan"));
+
+        assertEquals(42L, s.getCreatedAt());
+        assertEquals("scan", s.getReason());
+        assertEquals(entities, s.entities());
+        SchemaSnapshot.Table customer = s.schema().table("customer");
+        assertEquals(List.of("id"), customer.getPrimaryKey());
+        assertEquals("VARCHAR(50)", customer.column("name").getSqlType());
+        assertFalse(customer.column("name").isNullable());
+        assertThrows(IllegalArgumentException.class, () -> ModelSnapshot.wrap(new byte[64]));
+    }
+
+    @Test
+    void diffsRecordedSnapshotsAndPrunesTheOldest() throws Exception {
+        SnapshotStore store = new SnapshotStore(dir, 2, introspector);
+        String first = store.record("scan", List.of(entity("customer", field("id", "Long", "id", true))));
+
+        execute("ALTER TABLE \"customer\" ADD COLUMN \"email\" VARCHAR(100)");
+        execute("ALTER TABLE \"customer\" ALTER COLUMN \"name\" VARCHAR(80)");
+        introspector.invalidate();
+        String second = store.record("apply", null);
+
+        Map<String, Object> diff = store.diff(first, null);
+        assertEquals(second, diff.get("to"));
+        assertEquals(Map.of("added", List.of(), "removed", List.of(), "changed", List.of()), diff.get("entities"));
+        Map<?, ?> table = (Map<?, ?>) ((List<?>) ((Map<?, ?>) diff.get("schema")).get("changed")).get(0);
+        assertEquals("customer", table.get("table"));
+        assertEquals(List.of("email"), table.get("addedColumns"));
+        assertEquals(List.of(Map.of("name", "name", "from", "VARCHAR(50) NOT NULL", "to", "VARCHAR(80) NOT NULL")),
+                table.get("changedColumns"));
+
+        store.record("scan", List.of(entity("customer", field("id", "Long", "customer_id", true))));
+        List<?> listed = (List<?>) store.list().get("snapshots");
+        assertEquals(2, listed.size());
+        assertNull(store.load(first));
+        try (var files = Files.list(dir)) {
+            assertEquals(2, files.count());
+        }
+        Map<?, ?> changed = (Map<?, ?>) ((List<?>) ((Map<?, ?>) store.diff(second, null).get("entities")).get("changed")).get(0);
+        assertEquals(List.of(Map.of("name", "id", "from", "Long id PK", "to", "Long customer_id PK")), changed.get("changedFields"));
+    }
+
+    @Test
+    void scannerStartsWarmFromThePreloadedModel() throws Exception {
+        EntityScannerService scanner = new EntityScannerService();
+        List<Map<String, Object>> entities = List.of(entity("customer", field("id", "Long", "id", true)));
+        scanner.preload(entities, "earlier");
+
+        Map<String, Object> scan = scanner.scanAll();
+        assertEquals(Boolean.TRUE, scan.get("preloaded"));
+        assertEquals(entities, scan.get("entities"));
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            st.execute(sql);
+        }
+    }
+
+    @SafeVarargs
+    private static Map<String, Object> entity(String table, Map<String, Object>... fields) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("className", "Customer");
+        m.put("qualifiedName", "com.example.Customer");
+        m.put("tableName", table);
+        m.put("fields", List.of(fields));
+        return m;
+    }
+
+    private static Map<String, Object> field(String name, String type, String column, boolean pk) {
+        return Map.of("fieldName", name, "type", type, "columnName", column, "primaryKey", pk);
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.migrator.service;
+
+import com.example.migrator.dto.BackfillProgress;
+import com.example.migrator.dto.ColumnChange;
+import com.example.migrator.dto.StatementTiming;
+import com.example.migrator.dto.TableMigrationResult;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OnlineColumnMigratorTest {
+
+    private JdbcDataSource ds;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE \"orders\" (\"id\" BIGINT PRIMARY KEY, \"amount\" VARCHAR(20), \"note\" VARCHAR(20))");
+            st.execute("INSERT INTO \"orders\" SELECT X, CAST(X * 10 AS VARCHAR), 'n' FROM SYSTEM_RANGE(1, 1000)");
+        }
+    }
+
+    @Test
+    void backfillsInChunksAndKeepsConcurrentWritesInSync() throws SQLException {
+        List<StatementTiming> timings = new ArrayList<>();
+        List<BackfillProgress> progress = new ArrayList<>();
+        try (Connection conn = ds.getConnection(); Connection other = ds.getConnection()) {
+            BackfillProgress done = new OnlineColumnMigrator("h2", 100, 0).migrate(conn, "orders", "amount", "amount", "INT", timings, p -> {
+                progress.add(p);
+                if (progress.size() == 1) {
+                    // writes racing with the backfill go through the sync trigger
+                    try (Statement st = other.createStatement()) {
+                        st.execute("INSERT INTO \"orders\" (\"id\", \"amount\", \"note\") VALUES (5000, '7', 'late')");
+                        st.execute("UPDATE \"orders\" SET \"amount\" = '1' WHERE \"id\" = 999");
+                    } catch (SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+
+            assertTrue(done.isDone());
+            assertEquals(1001, done.getRowsCopied());
+            assertEquals(12, progress.size());
+            assertEquals("INTEGER", columnType(conn, "amount"));
+            assertEquals(Map.of(1L, 10, 999L, 1, 5000L, 7), amounts(conn, 1, 999, 5000));
+            assertFalse(columnExists(conn, "amount__new"));
+            assertFalse(columnExists(conn, "amount__old"));
+        }
+    }
+
+    @Test
+    void runsThroughSchemaMigrationServiceWithRename() throws SQLException {
+        ColumnChange change = new ColumnChange("orders", "amount", "amount_cents", "BIGINT", false);
+        change.setOnline(true);
+
+        TableMigrationResult r = new SchemaMigrationService(ds).migrate(List.of(change)).get("orders");
+
+        assertEquals("OK", r.getStatus());
+        assertEquals(1, r.getBackfills().size());
+        assertEquals(1000, r.getBackfills().get(0).getRowsCopied());
+        try (Connection conn = ds.getConnection()) {
+            assertEquals("BIGINT", columnType(conn, "amount_cents"));
+            assertFalse(columnExists(conn, "amount"));
+        }
+    }
+
+    @Test
+    void stopsBetweenChunksWhenCancelledAndDropsTheShadowColumn() throws SQLException {
+        CancelToken cancel = new CancelToken();
+        OnlineColumnMigrator migrator = new OnlineColumnMigrator("h2", 100, 0)
+                .guarded(null, null, cancel, new PhaseTimings(), new ArrayList<>());
+        try (Connection conn = ds.getConnection()) {
+            SQLException ex = assertThrows(SQLException.class, () -> migrator.migrate(conn, "orders", "amount", "amount", "INT",
+                    new ArrayList<>(), p -> cancel.cancel()));
+
+            assertEquals(CancelToken.CANCELLED, ex.getMessage());
+            assertEquals("CHARACTER VARYING", columnType(conn, "amount"));
+            assertFalse(columnExists(conn, "amount__new"));
+        }
+    }
+
+    @Test
+    void refusesIndexedColumnsAndCleansUp() throws SQLException {
+        try (Connection conn = ds.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("CREATE INDEX \"orders_note\" ON \"orders\" (\"note\")");
+            OnlineColumnMigrator migrator = new OnlineColumnMigrator("h2", 100, 0);
+            assertThrows(IllegalStateException.class,
+                    () -> migrator.migrate(conn, "orders", "note", "note", "VARCHAR(50)", new ArrayList<>(), p -> {}));
+            assertFalse(columnExists(conn, "note__new"));
+        }
+    }
+
+    @Test
+    void carriesNotNullAndTheDefaultOverToTheNewColumn() throws SQLException {
+        try (Connection conn = ds.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("ALTER TABLE \"orders\" ALTER COLUMN \"amount\" SET DEFAULT '5'");
+            st.execute("ALTER TABLE \"orders\" ALTER COLUMN \"amount\" SET NOT NULL");
+
+            new OnlineColumnMigrator("h2", 100, 0).migrate(conn, "orders", "amount", "amount", "INT", new ArrayList<>(), p -> {});
+
+            try (ResultSet rs = conn.getMetaData().getColumns(null, null, "orders", "amount")) {
+                assertTrue(rs.next());
+                assertEquals("INTEGER", rs.getString("TYPE_NAME"));
+                assertEquals("NO", rs.getString("IS_NULLABLE"));
+            }
+            st.execute("INSERT INTO \"orders\" (\"id\", \"note\") VALUES (5000, 'defaulted')");
+            assertEquals(Map.of(5000L, 5), amounts(conn, 5000));
+            assertThrows(SQLException.class, () -> st.execute("INSERT INTO \"orders\" (\"id\", \"amount\") VALUES (5001, NULL)"));
+        }
+    }
+
+    @Test
+    void refusesColumnsInCheckOrForeignKeyConstraints() throws SQLException {
+        try (Connection conn = ds.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("ALTER TABLE \"orders\" ADD CONSTRAINT \"orders_note_check\" CHECK (\"note\" <> '')");
+            st.execute("CREATE TABLE \"customer\" (\"id\" BIGINT PRIMARY KEY)");
+            st.execute("ALTER TABLE \"orders\" ADD COLUMN \"customer_id\" BIGINT");
+            // the referencing column has no index of its own on PostgreSQL
+            st.execute("ALTER TABLE \"orders\" ADD CONSTRAINT \"orders_customer\" FOREIGN KEY (\"customer_id\") REFERENCES \"customer\" (\"id\")");
+            OnlineColumnMigrator migrator = new OnlineColumnMigrator("h2", 100, 0);
+
+            IllegalStateException check = assertThrows(IllegalStateException.class,
+                    () -> migrator.migrate(conn, "orders", "note", "note", "VARCHAR(50)", new ArrayList<>(), p -> {}));
+            assertTrue(check.getMessage().contains("CHECK constraint orders_note_check"), check.getMessage());
+            IllegalStateException fk = assertThrows(IllegalStateException.class,
+                    () -> migrator.migrate(conn, "orders", "customer_id", "customer_id", "INT", new ArrayList<>(), p -> {}));
+            assertTrue(fk.getMessage().contains("foreign key orders_customer"), fk.getMessage());
+            assertFalse(columnExists(conn, "note__new"));
+            assertFalse(columnExists(conn, "customer_id__new"));
+        }
+    }
+
+    @Test
+    void aSwapFailingBeforeTheNewColumnIsInPlacePutsTheOldOneBack() throws SQLException {
+        // H2 commits each swap statement: fail right after the old column was renamed away
+        List<StatementTiming> timings = failingAfter("RENAME TO \"amount__old\"");
+        try (Connection conn = ds.getConnection()) {
+            assertThrows(IllegalStateException.class, () -> new OnlineColumnMigrator("h2", 100, 0)
+                    .migrate(conn, "orders", "amount", "amount", "INT", timings, p -> {}));
+
+            assertEquals("CHARACTER VARYING", columnType(conn, "amount"));
+            assertFalse(columnExists(conn, "amount__old"));
+            assertFalse(columnExists(conn, "amount__new"));
+            try (Statement st = conn.createStatement()) {
+                // the sync trigger is gone with the shadow column
+                st.execute("INSERT INTO \"orders\" (\"id\", \"amount\") VALUES (5000, '7')");
+            }
+        }
+    }
+
+    @Test
+    void aSwapFailingAfterTheNewColumnIsInPlaceDropsTheOldOne() throws SQLException {
+        List<StatementTiming> timings = failingAfter("\"amount__new\" RENAME TO \"amount_cents\"");
+        try (Connection conn = ds.getConnection()) {
+            assertThrows(IllegalStateException.class, () -> new OnlineColumnMigrator("h2", 100, 0)
+                    .migrate(conn, "orders", "amount", "amount_cents", "INT", timings, p -> {}));
+
+            assertEquals("INTEGER", columnType(conn, "amount_cents"));
+            assertFalse(columnExists(conn, "amount"));
+            assertFalse(columnExists(conn, "amount__old"));
+            assertEquals(Map.of(999L, 9990), amounts(conn, "amount_cents", 999));
+        }
+    }
+
+    /** Records statement timings, and fails once the statement containing {@code sql} went through. */
+    private static List<StatementTiming> failingAfter(String sql) {
+        return new ArrayList<>() {
+            @Override
+            public boolean add(StatementTiming t) {
+                super.add(t);
+                if (t.getSql().contains(sql)) throw new IllegalStateException("injected after " + t.getSql());
+                return true;
+            }
+        };
+    }
+
+    private static String columnType(Connection conn, String column) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getColumns(null, null, "orders", column)) {
+            assertTrue(rs.next(), column);
+            return rs.getString("TYPE_NAME");
+        }
+    }
+
+    private static boolean columnExists(Connection conn, String column) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getColumns(null, null, "orders", column)) {
+            return rs.next();
+        }
+    }
+
+    private static Map<Long, Integer> amounts(Connection conn, long... ids) throws SQLException {
+        return amounts(conn, "amount", ids);
+    }
+
+    private static Map<Long, Integer> amounts(Connection conn, String column, long... ids) throws SQLException {
+        Map<Long, Integer> out = new java.util.HashMap<>();
+        for (long id : ids) {
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT \"" + column + "\" FROM \"orders\" WHERE \"id\" = " + id)) {
+                rs.next();
+                out.put(id, rs.getInt(1));
+            }
+        }
+        return out;
+    }
+}
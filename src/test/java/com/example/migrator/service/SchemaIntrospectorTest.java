@@ -0,0 +1,122 @@
+package com.example.migrator.service;
+
+import com.example.migrator.dto.ColumnChange;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaIntrospectorTest {
+
+    private JdbcDataSource ds;
+    private SchemaIntrospector introspector;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            // unquoted: stored as CUSTOMER (ID, NAME, AGE)
+            st.execute("CREATE TABLE customer (id BIGINT PRIMARY KEY, name VARCHAR(50), age INT)");
+            st.execute("CREATE TABLE \"orders\" (\"id\" BIGINT PRIMARY KEY, \"total_cents\" INT)");
+        }
+        introspector = new SchemaIntrospector(ds);
+    }
+
+    @Test
+    void minimalDropsWhatIsAlreadyPresent() throws SQLException {
+        SchemaSnapshot schema = introspector.snapshot();
+
+        assertNull(SchemaMigrationService.minimal(schema, new ColumnChange("orders", null, "total_cents", "INT", false)));
+        assertNull(SchemaMigrationService.minimal(schema, new ColumnChange("orders", "total_cents", null, "INTEGER", false)));
+        ColumnChange missing = new ColumnChange("orders", null, "note", "VARCHAR(20)", false);
+        assertSame(missing, SchemaMigrationService.minimal(schema, missing));
+    }
+
+    @Test
+    void minimalKeepsTheRetypeOfAnAlreadyRenamedColumn() throws SQLException {
+        SchemaSnapshot schema = introspector.snapshot();
+
+        ColumnChange renamed = SchemaMigrationService.minimal(schema, new ColumnChange("orders", "total", "total_cents", "BIGINT", false));
+
+        assertEquals("total_cents", renamed.getColumn());
+        assertNull(renamed.getNewColumn());
+        assertEquals("BIGINT", renamed.getNewType());
+        assertNull(SchemaMigrationService.minimal(schema, new ColumnChange("orders", "total", "total_cents", "INT", false)));
+    }
+
+    @Test
+    void minimalMatchesColumnsRegardlessOfCase() throws SQLException {
+        SchemaSnapshot schema = introspector.snapshot();
+
+        assertNull(SchemaMigrationService.minimal(schema, new ColumnChange("customer", null, "name", "VARCHAR(50)", false)));
+        assertNull(SchemaMigrationService.minimal(schema, new ColumnChange("Customer", "age", null, "INT", false)));
+        ColumnChange widen = new ColumnChange("customer", "name", null, "VARCHAR(80)", false);
+        assertSame(widen, SchemaMigrationService.minimal(schema, widen));
+    }
+
+    @Test
+    void diffReportsOnlyWhatTheSchemaLacks() throws SQLException {
+        Map<String, Object> entity = Map.of("tableName", "customer", "qualifiedName", "com.example.Customer", "fields", List.of(
+                field("id", "Long", "id", true),
+                field("name", "String", "name", false),
+                field("age", "String", "age", false),
+                field("email", "String", "email", false)));
+
+        List<Map<String, Object>> diff = introspector.diff(List.of(entity));
+
+        assertEquals(List.of("TYPE_MISMATCH:age", "MISSING_COLUMN:email"),
+                diff.stream().map(d -> d.get("kind") + ":" + d.get("column")).toList());
+        Map<?, ?> change = (Map<?, ?>) diff.get(1).get("change");
+        // the live table name, so the generated ALTER hits the unquoted table
+        assertEquals("CUSTOMER", change.get("table"));
+        assertEquals("VARCHAR(255)", change.get("newType"));
+
+        Map<String, Object> orders = Map.of("tableName", "orders", "qualifiedName", "com.example.Order",
+                "fields", List.of(field("id", "Long", "id", true)));
+        assertEquals(List.of(Map.of("kind", "EXTRA_COLUMN", "table", "orders", "column", "total_cents", "qualifiedName", "com.example.Order")),
+                introspector.diff(List.of(orders)));
+    }
+
+    @Test
+    void readsPrimaryKeysWhenTheDriverHasNoSchema() throws SQLException {
+        // like MySQL Connector/J: getSchema() is null, the database is the catalog
+        DataSource noSchema = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(ds, method, args);
+                    if (!method.getName().equals("getConnection")) return result;
+                    Connection conn = (Connection) result;
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                            (p, m, a) -> m.getName().equals("getSchema") ? null : invoke(conn, m, a));
+                });
+
+        SchemaSnapshot schema = new SchemaIntrospector(noSchema).snapshot();
+
+        assertEquals(List.of("ID"), schema.table("customer").getPrimaryKey());
+        assertEquals(List.of("id"), schema.table("orders").getPrimaryKey());
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Map<String, Object> field(String name, String type, String column, boolean pk) {
+        return Map.of("fieldName", name, "type", type, "columnName", column, "primaryKey", pk);
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.migrator.service;
+
+import com.example.migrator.dto.ColumnChange;
+import com.example.migrator.dto.StatementTiming;
+import com.example.migrator.dto.TableMigrationResult;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaMigrationServiceTest {
+
+    private JdbcDataSource ds;
+
+    @BeforeEach
+    void setUp() {
+        ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+    }
+
+    @Test
+    void groupsUnquotedTablesByForeignKeyParentsFirst() throws SQLException {
+        // stored as PARENT, CHILD and OTHER
+        execute("CREATE TABLE parent (id BIGINT PRIMARY KEY)",
+                "CREATE TABLE child (id BIGINT PRIMARY KEY, parent_id BIGINT REFERENCES parent (id))",
+                "CREATE TABLE other (id BIGINT PRIMARY KEY)");
+
+        List<List<String>> groups = new SchemaMigrationService(ds).dependencyGroups(List.of("child", "other", "parent"));
+
+        assertEquals(List.of(List.of("parent", "child"), List.of("other")), groups);
+    }
+
+    @Test
+    void aFailedGroupKeepsTheResultsOfTheOtherTables() throws SQLException {
+        // the groups' DDL queues on H2's schema lock, which gives up after a second by default
+        ds.setURL(ds.getURL() + ";LOCK_TIMEOUT=30000");
+        execute("CREATE TABLE \"parent\" (\"id\" BIGINT PRIMARY KEY)",
+                "CREATE TABLE \"child\" (\"id\" BIGINT PRIMARY KEY, \"parent_id\" BIGINT REFERENCES \"parent\" (\"id\"))",
+                "CREATE TABLE \"other\" (\"id\" BIGINT PRIMARY KEY)");
+        List<ColumnChange> changes = List.of(new ColumnChange("parent", null, "a", "INT", false),
+                new ColumnChange("child", null, "a", "INT", false), new ColumnChange("other", null, "a", "INT", false));
+        System.setProperty("migration.parallel", "true");
+        System.setProperty("migration.parallelism", "4");
+        Map<String, TableMigrationResult> result;
+        try {
+            result = new SchemaMigrationService(ds).migrate(changes, new PhaseTimings(new SimpleMeterRegistry()), (table, r) -> {
+                if ("parent".equals(table)) throw new IllegalStateException("journal unavailable");
+            });
+        } finally {
+            System.clearProperty("migration.parallel");
+            System.clearProperty("migration.parallelism");
+        }
+
+        assertEquals(List.of("parent", "child", "other"), List.copyOf(result.keySet()));
+        assertEquals("OK", result.get("parent").getStatus());
+        assertEquals("FAILED: journal unavailable", result.get("child").getStatus());
+        assertEquals("OK", result.get("other").getStatus());
+    }
+
+    @Test
+    void tablesWithNothingLeftToDoAreNotMigrated() throws SQLException {
+        execute("CREATE TABLE \"orders\" (\"id\" BIGINT PRIMARY KEY, \"note\" VARCHAR(20))");
+        SchemaMigrationService service = new SchemaMigrationService(ds);
+        List<String> sent = new ArrayList<>();
+        service.addStatementListener(new SchemaMigrationService.StatementListener() {
+            @Override
+            public void started(String table, String sql) {
+                sent.add(sql);
+            }
+
+            @Override
+            public void finished(String table, String sql, boolean ok) {}
+        });
+
+        PhaseTimings timings = new PhaseTimings(new SimpleMeterRegistry());
+
+        TableMigrationResult r = service.migrate(List.of(new ColumnChange("orders", null, "note", "VARCHAR(20)", false)), timings).get("orders");
+
+        assertEquals("OK", r.getStatus());
+        assertEquals(1, r.getSkipped().size());
+        assertTrue(r.getStatements().isEmpty());
+        assertTrue(sent.isEmpty());
+        // not even a connection or a commit for the table
+        assertEquals(0, timings.nanos("sql.connect"));
+        assertEquals(0, timings.nanos("sql.commit"));
+    }
+
+    @Test
+    void aSchemaChangedBehindTheIntrospectorsBackIsReadAgain() throws SQLException {
+        execute("CREATE TABLE \"orders\" (\"id\" BIGINT PRIMARY KEY, \"note\" VARCHAR(20))");
+        SchemaMigrationService service = new SchemaMigrationService(ds);
+        List<ColumnChange> changes = List.of(new ColumnChange("orders", null, "note", "VARCHAR(20)", false));
+        assertEquals(1, service.migrate(changes).get("orders").getSkipped().size());
+
+        // another tool drops the column; the migrator did not touch the table, so nothing told it
+        execute("ALTER TABLE \"orders\" DROP COLUMN \"note\"");
+        TableMigrationResult r = service.migrate(changes).get("orders");
+
+        assertEquals("OK", r.getStatus());
+        assertTrue(r.getSkipped().isEmpty());
+        assertEquals(1, r.getStatements().size());
+        try (Connection c = ds.getConnection(); var rs = c.getMetaData().getColumns(null, null, "orders", "note")) {
+            assertTrue(rs.next());
+        }
+    }
+
+    @Test
+    void aBatchIsOneAggregateRowWithEachStatementsResult() throws SQLException {
+        execute("CREATE TABLE \"orders\" (\"id\" BIGINT PRIMARY KEY)");
+
+        TableMigrationResult r = new SchemaMigrationService(ds).migrate(List.of(
+                new ColumnChange("orders", null, "a", "INT", false),
+                new ColumnChange("orders", null, "b", "INT", false))).get("orders");
+
+        assertEquals("OK", r.getStatus());
+        assertEquals(1, r.getStatements().size());
+        StatementTiming batch = r.getStatements().get(0);
+        assertTrue(batch.isBatch());
+        assertEquals(2, batch.getStatementCount());
+        assertEquals(List.of("ALTER TABLE \"orders\" ADD COLUMN \"a\" INT", "ALTER TABLE \"orders\" ADD COLUMN \"b\" INT"),
+                batch.getBatchStatements());
+        assertEquals(2, batch.getUpdateCounts().length);
+    }
+
+    @Test
+    void tableTimerIsNotTaggedPerTable() throws SQLException {
+        execute("CREATE TABLE \"orders\" (\"id\" BIGINT PRIMARY KEY)", "CREATE TABLE \"items\" (\"id\" BIGINT PRIMARY KEY)");
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        new SchemaMigrationService(ds).migrate(List.of(new ColumnChange("orders", null, "a", "INT", false),
+                new ColumnChange("items", null, "a", "INT", false)), new PhaseTimings(registry));
+
+        Timer timer = registry.get("migrator.migration.table").timer();
+        assertEquals(List.of(Tag.of("outcome", "OK")), timer.getId().getTags());
+        assertEquals(2, timer.count());
+    }
+
+    private void execute(String... sql) throws SQLException {
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            for (String s : sql) st.execute(s);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.migrator.service;
+
+import com.example.migrator.dto.ColumnChange;
+import com.example.migrator.dto.ShardTarget;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardFanOutServiceTest {
+
+    private static final List<ColumnChange> CHANGES = List.of(new ColumnChange("orders", null, "region", "VARCHAR(10)", false));
+
+    @Test
+    void migratesAllShardsAfterTheCanary() throws SQLException {
+        List<ShardTarget> shards = shards(5, -1);
+
+        Map<String, Object> result = new ShardFanOutService(1, 2, 2).apply(CHANGES, shards);
+
+        assertEquals(List.of(List.of("s0"), List.of("s1", "s2"), List.of("s3", "s4")), result.get("waves"));
+        assertEquals(Map.of("OK", 5), result.get("summary"));
+        Map<String, Map<String, Object>> matrix = shardMatrix(result);
+        assertEquals(Map.of("orders", "OK"), matrix.get("s4").get("tables"));
+        for (ShardTarget s : shards) {
+            assertTrue(hasColumn(s, "region"), s.getName());
+        }
+    }
+
+    @Test
+    void failedWaveStopsTheRollout() throws SQLException {
+        // s1 has no orders table
+        List<ShardTarget> shards = shards(4, 1);
+
+        Map<String, Object> result = new ShardFanOutService(1, 1, 4).apply(CHANGES, shards);
+
+        Map<String, Map<String, Object>> matrix = shardMatrix(result);
+        assertEquals("OK", matrix.get("s0").get("status"));
+        assertEquals("FAILED", matrix.get("s1").get("status"));
+        assertEquals(ShardFanOutService.SKIPPED, matrix.get("s2").get("status"));
+        assertEquals("wave 1", result.get("haltedAfter"));
+        assertFalse(hasColumn(shards.get(3), "region"));
+    }
+
+    private static List<ShardTarget> shards(int count, int withoutTable) throws SQLException {
+        List<ShardTarget> shards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String url = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+            try (Connection c = DriverManager.getConnection(url); Statement st = c.createStatement()) {
+                if (i != withoutTable) st.execute("CREATE TABLE \"orders\" (\"id\" BIGINT PRIMARY KEY)");
+            }
+            shards.add(new ShardTarget("s" + i, url, null, null));
+        }
+        return shards;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Map<String, Object>> shardMatrix(Map<String, Object> result) {
+        return (Map<String, Map<String, Object>>) result.get("shards");
+    }
+
+    private static boolean hasColumn(ShardTarget shard, String column) throws SQLException {
+        try (Connection c = DriverManager.getConnection(shard.getUrl())) {
+            try (var rs = c.getMetaData().getColumns(null, null, "orders", column)) {
+                return rs.next();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.migrator.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourceModifierServiceTest {
+
+    private static final String CUSTOMER = """
+            package com.example.shop;
+
+            import jakarta.persistence.*;
+
+            // keep this comment
+            @Entity
+            @Table(name = "customer")
+            public class Customer {
+
+                @Id   private Long id;
+
+                /** the name */
+                @Column(name="name", length = 50)
+                private String name;
+
+                private    String note; // odd spacing
+            }
+            """;
+
+    private static final String ORDER = """
+            package com.example.shop;
+
+            import jakarta.persistence.*;
+
+            @Entity
+            public class PurchaseOrder {
+                @Id
+                private Long id;
+
+                private String status;
+            }
+            """;
+
+    @TempDir
+    Path root;
+
+    @Test
+    void renamesColumnsAndKeepsTheRestOfTheFileAsWritten() throws Exception {
+        Path file = write("com/example/shop/Customer.java", CUSTOMER);
+
+        service().applyEntityChanges("com.example.shop.Customer",
+                List.of(new SourceModifierService.FieldChange("name", "full_name", null)), "customers");
+
+        assertEquals(CUSTOMER.replace("@Table(name = \"customer\")", "@Table(name = \"customers\")")
+                .replace("@Column(name=\"name\"", "@Column(name=\"full_name\""), Files.readString(file));
+    }
+
+    @Test
+    void aFailedMovePutsTheCommittedFilesBack() throws Exception {
+        Path customer = write("com/example/shop/Customer.java", CUSTOMER);
+        Path order = write("com/example/shop/PurchaseOrder.java", ORDER);
+        AtomicInteger moves = new AtomicInteger();
+        SourceModifierService service = service().moving((staged, target) -> {
+            if (moves.incrementAndGet() == 2) throw new IOException("disk full");
+            Files.move(staged, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        });
+
+        IOException failure = assertThrows(IOException.class, () -> service.applyBulk(List.of(
+                new SourceModifierService.EntityEdit("com.example.shop.Customer", List.of(), "customers"),
+                new SourceModifierService.EntityEdit("com.example.shop.PurchaseOrder",
+                        List.of(new SourceModifierService.FieldChange("status", "state", null)), null))));
+
+        assertEquals("disk full", failure.getMessage());
+        assertEquals(CUSTOMER, Files.readString(customer));
+        assertEquals(ORDER, Files.readString(order));
+        try (var files = Files.list(customer.getParent())) {
+            assertEquals(2, files.count(), "no staged or restore files left behind");
+        }
+    }
+
+    @Test
+    void editsANestedEntityByItsScannedName() throws Exception {
+        Path file = write("com/example/shop/Catalog.java", """
+                package com.example.shop;
+
+                import jakarta.persistence.*;
+
+                public class Catalog {
+                    @Entity
+                    public static class Item {
+                        @Id
+                        private Long id;
+                        private String label;
+                    }
+                }
+                """);
+
+        service().applyEntityChanges("com.example.shop.Catalog$Item",
+                List.of(new SourceModifierService.FieldChange("label", "title", null)), null);
+
+        assertTrue(Files.readString(file).contains("@Column(name = \"title\")"));
+    }
+
+    @Test
+    void findsSourcesUnderTheScannersConfiguredRoot() throws Exception {
+        Path file = write("com/example/shop/Customer.java", CUSTOMER);
+        System.setProperty("scan.source.root", root.toString());
+        try {
+            new SourceModifierService(new EntitySourceCache()).applyEntityChanges("com.example.shop.Customer", List.of(), "customers");
+        } finally {
+            System.clearProperty("scan.source.root");
+        }
+
+        assertTrue(Files.readString(file).contains("@Table(name = \"customers\")"));
+    }
+
+    private SourceModifierService service() {
+        return new SourceModifierService(new EntitySourceCache(), root.toString());
+    }
+
+    private Path write(String relative, String text) throws IOException {
+        Path file = root.resolve(relative);
+        Files.createDirectories(file.getParent());
+        return Files.writeString(file, text);
+    }
+}